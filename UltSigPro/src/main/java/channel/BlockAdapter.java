@@ -0,0 +1,132 @@
+package channel;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Converts a stream of sample packages of one size into blocks of another
+ * size. The samples are accumulated in a ring buffer. This allows every
+ * {@link Channel} to process its signals with its own block size,
+ * independent of the package size of the devices.<br/>
+ * <br/>
+ * The adapter isn't thread safe.
+ * 
+ * @author roland
+ *
+ */
+public class BlockAdapter {
+
+	private final int inputSize;
+	private final int outputSize;
+	private final double[] ring;
+
+	private int readPosition = 0;
+	private int available = 0;
+
+	/**
+	 * Creates a new adapter.
+	 * 
+	 * @param inputSize
+	 *            The size of the packages which will be written.
+	 * @param outputSize
+	 *            The size of the blocks which will be read.
+	 */
+	public BlockAdapter(int inputSize, int outputSize) {
+		this.inputSize = inputSize;
+		this.outputSize = outputSize;
+		// A block is read as soon as it is complete, so the ring never holds
+		// more than one incomplete block and one package
+		this.ring = new double[inputSize + outputSize];
+	}
+
+	/**
+	 * Appends a package to the ring.
+	 * 
+	 * @param data
+	 *            The samples. Must not be null.
+	 * @throws IllegalStateException
+	 *             if the ring is full because the complete blocks haven't been
+	 *             read.
+	 */
+	public void write(@Nonnull double[] data) {
+
+		if (available + data.length > ring.length) {
+			throw new IllegalStateException("The complete blocks have to be read before writing new data");
+		}
+
+		int writePosition = (readPosition + available) % ring.length;
+		int firstPart = Math.min(data.length, ring.length - writePosition);
+
+		System.arraycopy(data, 0, ring, writePosition, firstPart);
+		System.arraycopy(data, firstPart, ring, 0, data.length - firstPart);
+
+		available += data.length;
+	}
+
+	/**
+	 * Reads the next complete block from the ring into the given array.
+	 * 
+	 * @param block
+	 *            Receives the block. Must not be null and must have the size
+	 *            of the blocks.
+	 * @return true if a block has been read, false if there isn't a complete
+	 *         block.
+	 */
+	public boolean read(@Nonnull double[] block) {
+
+		if (available < outputSize) {
+			return false;
+		}
+
+		int firstPart = Math.min(outputSize, ring.length - readPosition);
+
+		System.arraycopy(ring, readPosition, block, 0, firstPart);
+		System.arraycopy(ring, 0, block, firstPart, outputSize - firstPart);
+
+		readPosition = (readPosition + outputSize) % ring.length;
+		available -= outputSize;
+
+		return true;
+	}
+
+	/**
+	 * The size of the blocks which are read.
+	 * 
+	 * @return the block size in samples
+	 */
+	public int getOutputSize() {
+		return outputSize;
+	}
+
+	/**
+	 * Discards all buffered samples.
+	 */
+	public void clear() {
+		readPosition = 0;
+		available = 0;
+	}
+
+	/**
+	 * The worst case time a sample stays within the adapter, measured in
+	 * samples of the input stream. A sample has to wait until the package
+	 * which completes its block has been written.
+	 * 
+	 * @return the latency in samples
+	 */
+	public int getLatency() {
+
+		// Blocks always start at a multiple of the greatest common divisor
+		// within a package
+		int latestStart = inputSize - gcd(inputSize, outputSize);
+
+		return (latestStart + outputSize - 1) / inputSize * inputSize;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
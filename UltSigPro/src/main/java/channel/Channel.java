@@ -2,39 +2,129 @@ package channel;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+import channel.dataflow.AudioWorkerPool;
+import channel.dataflow.ControlEventQueue;
+import channel.dataflow.DataflowCompiler;
+import channel.dataflow.ExecutionPlan;
+import channel.dataflow.PipelinedExecution;
+import channel.dataflow.SamplePrecision;
+import dsp.DspKernels;
 import inputhandler.InputAdministrator;
+import logging.CommonLogger;
 import outputhandler.OutputAdministrator;
+import plugins.sigproplugins.PluginCapabilities;
 import plugins.sigproplugins.SigproPlugin;
+import resourceframework.GlobalResourceProvider;
+import resourceframework.ResourceProviderException;
 
 public class Channel implements InputDataListener, OutputDataSpeaker {
 
+	private static final int SAMPLE_RATE = 44100;
+	// Packages which are kept for reuse, see recycleData(double[])
+	private static final int MAX_FREE_PACKAGES = 16;
+
 	private InputAdministrator inputAdmin;
 	private OutputAdministrator outputAdmin;
-	private boolean play = false;
+	private volatile boolean play = false;
 	private String name;
 	private ChannelPane pane;
 
 	private PluginInput pluginInput;
 	private PluginOutput pluginOutput;
 
-	private ScheduledThreadPoolExecutor executor;
+	private DataflowRunnable dataflowRunnable = new DataflowRunnable();
+	private AtomicBoolean scheduled = new AtomicBoolean(false);
+	private ProcessingStatistics statistics = new ProcessingStatistics();
+	private long pendingSince;
+
+	// Reaction to blocks which aren't processed within the block period
+	private volatile DeadlineMonitor deadlineMonitor;
+	private volatile DegradationPolicy degradationPolicy = DegradationPolicy.NONE;
+	private int visualizationCount = 0;
+
+	// Plugins are skipped while their inputs are silent. The hold time is
+	// given in milliseconds.
+	private double silenceThreshold = 1e-5;
+	private int silenceHoldTime = 100;
 
 	private boolean firstFetch = true;
 
 	private HashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap = new HashMap<>();
 
+	// Plugins which have been prepared for the format of this channel.
+	// Plugins which are removed while playing may still be processed by the
+	// current plan, so they are released when the channel stops.
+	private HashSet<SigproPlugin> preparedPlugins = new HashSet<>();
+	private LinkedList<SigproPlugin> pendingRelease = new LinkedList<>();
+	private boolean allocationCheck = false;
+	private final ControlEventQueue eventQueue = new ControlEventQueue(1024);
+	private volatile ExecutionPlan executionPlan;
+	private volatile PipelinedExecution pipeline;
+	private int pipelineStages = 1;
+
+	// Plans which are compiled during play replace the current plan at the
+	// next block boundary. Only the latest compilation is published.
+	private AtomicReference<PendingPlan> pendingPlan = new AtomicReference<>();
+	private int compileCount = 0;
+
+	// A new plan which doesn't share plugins with a state with the previous
+	// plan is mixed with the previous plan, which keeps running for the
+	// length of the crossfade. Otherwise the previous plan fades out before
+	// the new plan fades in. The fading plan, its buffers and the submitted
+	// samples of the fade out are only used by the processing task. The fade
+	// positions are guarded by the output queue.
+	private volatile int crossfadeLength = 64;
+	private ExecutionPlan fadingPlan;
+	private int fadingPosition;
+	private double[] fadingInput;
+	private float[] fadingFloatInput;
+	private double[] fadingOutput;
+	private double[] crossfadeBuffer;
+	private int fadeOutSubmitted = -1;
+	private int fadeOutPosition = -1;
+	private int fadeInPosition = Integer.MAX_VALUE;
+	private double[] fadeBuffer;
+	private SamplePrecision precision;
+
+	// Samples which are processed at once. The adapters are only used if the
+	// block size differs from the package size of the devices. The
+	// configured block size is 0 if it is chosen automatically.
+	private int blockSize;
+	private int configuredBlockSize;
+	private BlockAdapter inputAdapter;
+	private BlockAdapter outputAdapter;
+
 	// private LinkedBlockingQueue<LinkedList<Integer>> outputQueue = new
 	// LinkedBlockingQueue<>();
-	private LinkedList<int[]> inputQueue = new LinkedList<>();
-	private LinkedList<int[]> outputQueue = new LinkedList<>();
+	private LinkedList<double[]> inputQueue = new LinkedList<>();
+	private ArrayDeque<double[]> outputQueue = new ArrayDeque<>();
+
+	// Packages which have been written by the output administrator. They are
+	// reused for the output of the next blocks. Guarded by the output queue.
+	private final ArrayDeque<double[]> freeOutputPackages = new ArrayDeque<>();
+
+	// Blocks of the input adapter which have been processed. They are reused
+	// for the next blocks. Guarded by the input queue.
+	private final ArrayDeque<double[]> freeInputBlocks = new ArrayDeque<>();
+
+	// Conversion buffers of the single precision processing. The input
+	// buffer is only used by the processing task, the output buffer is
+	// guarded by the output queue.
+	private float[] floatInputBuffer;
+	private double[] floatOutputBuffer;
 
 	public Channel(ChannelPane pane, ChannelConfig config) {
 		this.name = config.getName();
@@ -49,14 +139,58 @@ public class Channel implements InputDataListener, OutputDataSpeaker {
 		pluginInput = new PluginInput();
 		pluginOutput = new PluginOutput();
 
+		// The precision is chosen once per session with the float argument
+		if (GlobalResourceProvider.getInstance().checkRegistered("float")) {
+			precision = SamplePrecision.FLOAT;
+		} else {
+			precision = SamplePrecision.DOUBLE;
+		}
+
+		GlobalResourceProvider resProv = GlobalResourceProvider.getInstance();
+
+		if (resProv.checkRegistered("degradationPolicy")) {
+			try {
+				degradationPolicy = DegradationPolicy.valueOf((String) resProv.getResource("degradationPolicy"));
+			} catch (ResourceProviderException | IllegalArgumentException e) {
+				CommonLogger.getInstance().logException(e);
+			}
+		}
+
+		if (resProv.checkRegistered("silenceThreshold")) {
+			try {
+				silenceThreshold = (double) resProv.getResource("silenceThreshold");
+			} catch (ResourceProviderException e) {
+				// Won't happen due to previous check
+			}
+		}
+
+		if (resProv.checkRegistered("allocationCheck")) {
+			try {
+				allocationCheck = (boolean) resProv.getResource("allocationCheck");
+			} catch (ResourceProviderException e) {
+				// Won't happen due to previous check
+			}
+		}
+
+		if (resProv.checkRegistered("silenceHoldTime")) {
+			try {
+				silenceHoldTime = (int) resProv.getResource("silenceHoldTime");
+			} catch (ResourceProviderException e) {
+				// Won't happen due to previous check
+			}
+		}
+
+		setBlockSize(config.getBlockSize());
+
 		LinkedList<InputInfoWrapper> testList = new LinkedList<>();
 		testList.add(new InputInfoWrapper(pluginOutput, "Output"));
 
-		dataflowMap.put(new OutputInfoWrapper(pluginInput, "Input"), testList);	
+		dataflowMap.put(new OutputInfoWrapper(pluginInput, "Input"), testList);	
+		compile();
 	}
 
 	@Override
-	public int[] fetchData() {
+	public double[] fetchData() {
 
 		synchronized (outputQueue) {
 			return outputQueue.poll();
@@ -64,17 +198,115 @@ public class Channel implements InputDataListener, OutputDataSpeaker {
 	}
 
 	@Override
-	public void putData(int[] data) {
+	public void recycleData(double[] data) {
+
+		synchronized (outputQueue) {
+			if (freeOutputPackages.size() < MAX_FREE_PACKAGES) {
+				freeOutputPackages.add(data);
+			}
+		}
+	}
+
+	/**
+	 * Provides a package for the output queue. Must be called with the lock
+	 * of the output queue.
+	 */
+	private double[] obtainOutputPackage(int size) {
+
+		double[] outputPackage = freeOutputPackages.poll();
+
+		// Packages of a previous block size are dropped
+		while (outputPackage != null && outputPackage.length != size) {
+			outputPackage = freeOutputPackages.poll();
+		}
+
+		return outputPackage != null ? outputPackage : new double[size];
+	}
+
+	/**
+	 * Provides a block for the input queue. Must be called with the lock of
+	 * the input queue.
+	 */
+	private double[] obtainInputBlock(int size) {
 
-		pane.insertWaveChartData(data);
+		double[] block = freeInputBlocks.poll();
+
+		// Blocks of a previous block size are dropped
+		while (block != null && block.length != size) {
+			block = freeInputBlocks.poll();
+		}
+
+		return block != null ? block : new double[size];
+	}
+
+	/**
+	 * Keeps a block which has been processed for the input adapter. Only the
+	 * blocks of the adapter are owned by the channel, the packages of the
+	 * devices are passed on otherwise.
+	 */
+	private void recycleInputBlock(double[] block) {
 
 		synchronized (inputQueue) {
-			inputQueue.add(data);
+			if (inputAdapter != null && block.length == inputAdapter.getOutputSize()
+					&& freeInputBlocks.size() < MAX_FREE_PACKAGES) {
+				freeInputBlocks.add(block);
+			}
+		}
+	}
+
+	@Override
+	public void putData(double[] data) {
+
+		// The chart is only updated with every fourth package while the
+		// channel is overloaded
+		if (degradationPolicy != DegradationPolicy.REDUCE_VISUALIZATION || !isDegraded()
+				|| visualizationCount++ % 4 == 0) {
+			pane.insertWaveChartData(data);
+		}
+
+		synchronized (inputQueue) {
+			boolean empty = inputQueue.isEmpty();
+
+			if (inputAdapter != null) {
+				inputAdapter.write(data);
+
+				double[] block = obtainInputBlock(inputAdapter.getOutputSize());
+				while (inputAdapter.read(block)) {
+					inputQueue.add(block);
+					block = obtainInputBlock(inputAdapter.getOutputSize());
+				}
+
+				// The last block hasn't been filled
+				freeInputBlocks.add(block);
+			} else {
+				inputQueue.add(data);
+			}
+
+			if (inputQueue.isEmpty()) {
+				return;
+			}
+
+			// The latency is measured from the completion of a block
+			if (empty) {
+				pendingSince = System.nanoTime();
+			}
 		}
 
+		schedule();
+
 		// pane.insertWaveChartData(waveChartData);
 	}
 
+	/**
+	 * Releases the signal processing of the queued data as task on the
+	 * {@link AudioWorkerPool}, if there isn't already a task for this channel.
+	 */
+	private void schedule() {
+		if (play && scheduled.compareAndSet(false, true)) {
+			AudioWorkerPool.getInstance().execute(dataflowRunnable);
+		}
+	}
+
 	public void addInputDevice(String device) {
 		inputAdmin.addDeviceToInputDataListener(this, device);
 	}
@@ -91,24 +323,326 @@ public class Channel implements InputDataListener, OutputDataSpeaker {
 		outputAdmin.removeDeviceFromOutputDataSpeaker(this, device);
 	}
 
-	public void delete() {
+	public synchronized void delete() {
 		inputAdmin.removeInputDataListener(this);
+
+		for (SigproPlugin plugin : preparedPlugins) {
+			plugin.release();
+		}
+		preparedPlugins.clear();
+		releasePlugins();
 	}
 
 	public synchronized void setPlay(boolean play) {
 		if (play) {
-			inputQueue.clear();
-			outputQueue.clear();
+			synchronized (inputQueue) {
+				inputQueue.clear();
+				if (inputAdapter != null) {
+					inputAdapter.clear();
+				}
+			}
+			synchronized (outputQueue) {
+				outputQueue.clear();
+				if (outputAdapter != null) {
+					outputAdapter.clear();
+				}
+				fadeOutPosition = -1;
+				fadeInPosition = Integer.MAX_VALUE;
+			}
+			fadingPlan = null;
+			fadeOutSubmitted = -1;
 			firstFetch = true;
-			executor = new ScheduledThreadPoolExecutor(1);
+			statistics.reset();
+			deadlineMonitor.reset();
 
-			executor.scheduleAtFixedRate(new DataflowRunnable(), 0, 1, TimeUnit.MILLISECONDS);
-		} else {
-			if (executor != null) {
-				executor.shutdownNow();
+			for (SigproPlugin plugin : preparedPlugins) {
+				plugin.reset();
 			}
+		} else if (this.play) {
+			// The plugins may still be used by blocks which have been
+			// scheduled before the stop
+			this.play = false;
+			awaitProcessing();
+			releasePlugins();
 		}
 		this.play = play;
+
+		// A block size which has been required during play is used now
+		if (!play && executionPlan != null && chooseBlockSize() != blockSize) {
+			compile();
+		}
+	}
+
+	/**
+	 * Provides the latency and load statistics of the signal processing since
+	 * the last start. The statistics of a stopped channel are kept until it
+	 * is started again.
+	 * 
+	 * @return the {@link ProcessingStatistics}. Won't be null.
+	 */
+	public ProcessingStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Provides the plugins of this channel which have allocated memory while
+	 * processing a block. Only filled if the allocation check is enabled.
+	 * 
+	 * @return one line per plugin which has allocated memory. Won't be null.
+	 */
+	public LinkedList<String> getAllocationReport() {
+		ExecutionPlan curPlan = executionPlan;
+		return curPlan == null ? new LinkedList<String>() : curPlan.getAllocationReport();
+	}
+
+	/**
+	 * Provides the queue for sample accurate control events of the plugins of
+	 * this channel, e.g. automated parameter changes.
+	 * 
+	 * @return the {@link ControlEventQueue}. Won't be null.
+	 */
+	public ControlEventQueue getEventQueue() {
+		return eventQueue;
+	}
+
+	/**
+	 * Sets the reaction to blocks which aren't processed within the block
+	 * period.
+	 * 
+	 * @param policy
+	 *            The {@link DegradationPolicy}. Must not be null.
+	 */
+	public void setDegradationPolicy(DegradationPolicy policy) {
+		degradationPolicy = policy;
+	}
+
+	/**
+	 * The reaction to blocks which aren't processed within the block period.
+	 * 
+	 * @return the {@link DegradationPolicy}. Won't be null.
+	 */
+	public DegradationPolicy getDegradationPolicy() {
+		return degradationPolicy;
+	}
+
+	/**
+	 * The time between two blocks, which is the time budget for the
+	 * processing of one block.
+	 * 
+	 * @return the block period in nanoseconds
+	 */
+	public long getBlockPeriod() {
+		return deadlineMonitor.getBlockPeriod();
+	}
+
+	/**
+	 * The mean execution time of a plugin relative to the block period.
+	 * 
+	 * @param plugin
+	 *            A plugin of this channel. Must not be null.
+	 * @return the load. 1.0 means the plugin takes the whole block period.
+	 */
+	public double getPluginLoad(SigproPlugin plugin) {
+		return (double) plugin.getTiming().getAverage() / getBlockPeriod();
+	}
+
+	/**
+	 * Checks if the channel is overloaded and the {@link DegradationPolicy}
+	 * is applied.
+	 * 
+	 * @return true if a block has missed its deadline recently.
+	 */
+	public boolean isDegraded() {
+		DeadlineMonitor monitor = deadlineMonitor;
+		return monitor != null && monitor.isDegraded();
+	}
+
+	/**
+	 * Sets the number of samples which are processed at once. The packages of
+	 * the devices are collected or split into blocks of this size. Can only
+	 * be changed while the channel isn't playing. A block size which is
+	 * required by a connected plugin (see
+	 * {@link SigproPlugin#isBlockSizeRequired()}) takes precedence.
+	 * 
+	 * @param blockSize
+	 *            The block size in samples or 0 to use the preferred block
+	 *            size of the connected plugins or else the package size of
+	 *            the devices.
+	 * @throws IllegalStateException
+	 *             if the channel is playing.
+	 */
+	public synchronized void setBlockSize(int blockSize) {
+		if (play) {
+			throw new IllegalStateException("The block size can't be changed while playing");
+		}
+
+		configuredBlockSize = blockSize;
+		useBlockSize(chooseBlockSize());
+
+		if (executionPlan != null) {
+			compile();
+		}
+	}
+
+	/**
+	 * The block size which is required by a connected plugin. Otherwise the
+	 * configured block size, the largest preferred block size of the
+	 * connected plugins or the package size of the input devices.
+	 */
+	private int chooseBlockSize() {
+		int required = 0;
+		int preferred = 0;
+
+		for (SigproPlugin plugin : getConnectedPlugins()) {
+			PluginCapabilities capabilities = new PluginCapabilities(plugin);
+
+			if (capabilities.isBlockSizeRequired()) {
+				required = Math.max(required, capabilities.getPreferredBlockSize());
+			}
+			preferred = Math.max(preferred, capabilities.getPreferredBlockSize());
+		}
+
+		if (required > 0) {
+			return required;
+		} else if (configuredBlockSize > 0) {
+			return configuredBlockSize;
+		} else if (preferred > 0) {
+			return preferred;
+		}
+
+		return inputAdmin.getPackageSize();
+	}
+
+	/**
+	 * Creates the adapters for the given block size. Must be called with the
+	 * lock of this channel while it isn't playing.
+	 */
+	private void useBlockSize(int blockSize) {
+		int inputPackageSize = inputAdmin.getPackageSize();
+		int outputPackageSize = outputAdmin.getPackageSize();
+
+		this.blockSize = blockSize;
+		deadlineMonitor = new DeadlineMonitor(this.blockSize, SAMPLE_RATE);
+
+		synchronized (inputQueue) {
+			inputAdapter = this.blockSize != inputPackageSize ? new BlockAdapter(inputPackageSize, this.blockSize)
+					: null;
+		}
+		synchronized (outputQueue) {
+			outputAdapter = this.blockSize != outputPackageSize
+					? new BlockAdapter(this.blockSize, outputPackageSize) : null;
+		}
+
+		// The plugins are prepared for one block size
+		pendingRelease.addAll(preparedPlugins);
+		preparedPlugins.clear();
+		releasePlugins();
+	}
+
+	/**
+	 * The number of samples which are processed at once.
+	 * 
+	 * @return the block size in samples
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * The worst case latency which is added by collecting and splitting the
+	 * device packages into blocks and vice versa.
+	 * 
+	 * @return the latency in samples. 0 if the block size matches the package
+	 *         size of the devices.
+	 */
+	public int getReblockingLatency() {
+		int latency = 0;
+
+		synchronized (inputQueue) {
+			if (inputAdapter != null) {
+				latency += inputAdapter.getLatency();
+			}
+		}
+		synchronized (outputQueue) {
+			if (outputAdapter != null) {
+				latency += outputAdapter.getLatency();
+			}
+		}
+
+		return latency;
+	}
+
+	/**
+	 * The total latency which is added by the channel due to reblocking,
+	 * pipelined execution and the latency of the plugins on the slowest path.
+	 * 
+	 * @return the latency in samples
+	 */
+	@Override
+	public int getLatency() {
+		ExecutionPlan curPlan = executionPlan;
+		int pluginLatency = curPlan == null ? 0 : curPlan.getLatency();
+
+		return getReblockingLatency() + getPipelineLatency() * blockSize + pluginLatency;
+	}
+
+	/**
+	 * Splits the signal processing of this channel into several stages which
+	 * are executed on different cores. This allows long plugin chains which
+	 * exceed the time of one block on a single core. Every additional stage
+	 * delays the output by one block, see {@link #getPipelineLatency()}.<br/>
+	 * <br/>
+	 * Can only be changed while the channel isn't playing. The plugin
+	 * connections of a pipelined channel shouldn't be changed while playing.
+	 * 
+	 * @param stages
+	 *            The number of stages. 1 disables the pipelined execution.
+	 * @throws IllegalStateException
+	 *             if the channel is playing.
+	 */
+	public synchronized void setPipelineStages(int stages) {
+		if (play) {
+			throw new IllegalStateException("The pipeline can't be changed while playing");
+		}
+
+		pipelineStages = Math.max(1, stages);
+		compile();
+	}
+
+	/**
+	 * Sets the length of the crossfade when the plugin connections are
+	 * changed while playing, which avoids clicks. If the previous and the
+	 * new plan don't share plugins with a state, the previous plan keeps
+	 * running and the outputs of both plans are mixed. Otherwise the output
+	 * of the previous plan fades out and the output of the new plan fades
+	 * in afterwards.
+	 * 
+	 * @param samples
+	 *            The length of the crossfade in samples. 0 disables the
+	 *            crossfade.
+	 */
+	public void setCrossfadeLength(int samples) {
+		crossfadeLength = Math.max(0, samples);
+	}
+
+	/**
+	 * The length of the crossfade when the plugin connections are changed
+	 * while playing.
+	 * 
+	 * @return the length in samples
+	 */
+	public int getCrossfadeLength() {
+		return crossfadeLength;
+	}
+
+	/**
+	 * The additional latency of the pipelined execution.
+	 * 
+	 * @return the latency in blocks. 0 if the channel isn't pipelined.
+	 */
+	public int getPipelineLatency() {
+		PipelinedExecution curPipeline = pipeline;
+		return curPipeline == null ? 0 : curPipeline.getLatencyBlocks();
 	}
 	
 	public SigproPlugin getPluginInput() {
@@ -119,22 +653,62 @@ public class Channel implements InputDataListener, OutputDataSpeaker {
 		return pluginOutput;
 	}
 	
-	public void addPluginConnection(SigproPlugin sourcePlugin, String output, SigproPlugin destPlugin, String input) {
+	/**
+	 * Connects an output of a plugin with an input of another plugin. While
+	 * playing, the new plan is compiled in the background and replaces the
+	 * current plan at a block boundary. The plugins keep their state.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the connection would create a cycle.
+	 */
+	public synchronized void addPluginConnection(SigproPlugin sourcePlugin, String output, SigproPlugin destPlugin, String input) {
+		addPluginConnection(sourcePlugin, output, destPlugin, input, 0);
+	}
+
+	/**
+	 * Connects an output of a plugin with an input of another plugin. The
+	 * data arrives at the input the given number of blocks later. A delayed
+	 * connection may close a feedback loop, every cycle of the graph needs at
+	 * least one delayed connection.
+	 * 
+	 * @param delayBlocks
+	 *            The delay in blocks. 0 for a direct connection.
+	 * @throws IllegalStateException
+	 *             if the connection would create a cycle without delay.
+	 */
+	public synchronized void addPluginConnection(SigproPlugin sourcePlugin, String output, SigproPlugin destPlugin,
+			String input, int delayBlocks) {
 		OutputInfoWrapper outputWrapper = new OutputInfoWrapper(sourcePlugin, output);
 		
 		if(!dataflowMap.containsKey(outputWrapper)) {
 			dataflowMap.put(outputWrapper, new LinkedList<InputInfoWrapper>());
 		}
 		
-		InputInfoWrapper inputWrapper = new InputInfoWrapper(destPlugin, input);
+		InputInfoWrapper inputWrapper = new InputInfoWrapper(destPlugin, input, delayBlocks);
 		
 		dataflowMap.get(outputWrapper).add(inputWrapper);
+		
+		if (!DataflowCompiler.isSchedulable(dataflowMap)) {
+			removeConnection(outputWrapper, inputWrapper);
+			throw new IllegalStateException("The plugin connections contain a cycle without delay");
+		}
+
+		compile();
 	}
 
-	public void removePluginConnection(SigproPlugin sourcePlugin, String output, SigproPlugin destPlugin, String input) {
+	/**
+	 * Removes the connection between an output of a plugin and an input of
+	 * another plugin. While playing, the new plan is compiled in the
+	 * background and replaces the current plan at a block boundary.
+	 */
+	public synchronized void removePluginConnection(SigproPlugin sourcePlugin, String output, SigproPlugin destPlugin, String input) {
 		
-		OutputInfoWrapper outputWrapper = new OutputInfoWrapper(sourcePlugin, output);
-		InputInfoWrapper inputWrapper = new InputInfoWrapper(destPlugin, input);
+		removeConnection(new OutputInfoWrapper(sourcePlugin, output), new InputInfoWrapper(destPlugin, input));
+		
+		compile();
+	}
+
+	private void removeConnection(OutputInfoWrapper outputWrapper, InputInfoWrapper inputWrapper) {
 		
 		if(dataflowMap.containsKey(outputWrapper)) {
 			dataflowMap.get(outputWrapper).remove(inputWrapper);
@@ -143,114 +717,615 @@ public class Channel implements InputDataListener, OutputDataSpeaker {
 			}
 		}	
 	}
+
+	/**
+	 * Compiles the current connections. While playing, the compilation runs
+	 * in the background on a copy of the connections. Must be called with
+	 * the lock of this channel.
+	 */
+	private void compile() {
+		int requiredBlockSize = chooseBlockSize();
+
+		// The rate converters of a plan are made for one block size. While
+		// playing, the block size is changed by the next stop.
+		if (requiredBlockSize != blockSize && !play) {
+			useBlockSize(requiredBlockSize);
+		}
+
+		preparePlugins();
+
+		HashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> connections = new HashMap<>();
+
+		for (Map.Entry<OutputInfoWrapper, LinkedList<InputInfoWrapper>> entry : dataflowMap.entrySet()) {
+			connections.put(entry.getKey(), new LinkedList<>(entry.getValue()));
+		}
+
+		final int compilation = ++compileCount;
+
+		if (!play) {
+			pendingPlan.set(null);
+			publish(DataflowCompiler.compile(connections, pluginInput, pluginOutput, precision, SAMPLE_RATE,
+					blockSize));
+			return;
+		}
+
+		DataflowCompiler.compileAsync(connections, pluginInput, pluginOutput, precision, SAMPLE_RATE, blockSize,
+				new DataflowCompiler.CompileListener() {
+
+					@Override
+					public void planCompiled(ExecutionPlan plan) {
+						synchronized (Channel.this) {
+							// A later compilation replaces this one
+							if (compilation != compileCount) {
+								return;
+							}
+
+							if (play) {
+								ExecutionPlan previous = executionPlan;
+								boolean parallelFade = false;
+
+								if (previous != null) {
+									plan.prepareStateTransfer(previous, blockSize);
+									parallelFade = pipelineStages <= 1 && !plan.sharesStatefulPlugins(previous);
+								}
+
+								pendingPlan.set(new PendingPlan(plan, createPipeline(plan), previous, parallelFade));
+								schedule();
+							} else {
+								publish(plan);
+							}
+						}
+					}
+				});
+	}
+
+	/**
+	 * Prepares the connected plugins which haven't been prepared for the
+	 * format of this channel yet. Plugins which aren't connected any more
+	 * are released. Must be called with the lock of this channel.
+	 */
+	private void preparePlugins() {
+		HashSet<SigproPlugin> plugins = getConnectedPlugins();
+
+		for (SigproPlugin plugin : plugins) {
+			// A plugin which is connected again before its release is still
+			// prepared
+			if (pendingRelease.remove(plugin)) {
+				preparedPlugins.add(plugin);
+			} else if (preparedPlugins.add(plugin)) {
+				plugin.prepare(SAMPLE_RATE / Math.max(1, plugin.getRateDivisor()), blockSize);
+			}
+		}
+
+		Iterator<SigproPlugin> iter = preparedPlugins.iterator();
+
+		while (iter.hasNext()) {
+			SigproPlugin plugin = iter.next();
+
+			if (!plugins.contains(plugin)) {
+				iter.remove();
+				pendingRelease.add(plugin);
+			}
+		}
+
+		if (!play) {
+			releasePlugins();
+		}
+	}
+
+	private HashSet<SigproPlugin> getConnectedPlugins() {
+		HashSet<SigproPlugin> plugins = new HashSet<>();
+
+		for (Map.Entry<OutputInfoWrapper, LinkedList<InputInfoWrapper>> entry : dataflowMap.entrySet()) {
+			plugins.add(entry.getKey().getSourcePlugin());
+
+			for (InputInfoWrapper input : entry.getValue()) {
+				plugins.add(input.getDestPlugin());
+			}
+		}
+
+		return plugins;
+	}
+
+	/**
+	 * Waits until the task of this channel and its pipeline have finished
+	 * their blocks. No new task is scheduled once play has been reset.
+	 */
+	private void awaitProcessing() {
+		while (true) {
+			PipelinedExecution curPipeline = pipeline;
+
+			if (!scheduled.get() && (curPipeline == null || curPipeline.isIdle())) {
+				return;
+			}
+
+			LockSupport.parkNanos(100000);
+		}
+	}
+
+	/**
+	 * Releases the plugins which aren't used any more. Must be called while
+	 * the channel doesn't process blocks.
+	 */
+	private void releasePlugins() {
+		for (SigproPlugin plugin : pendingRelease) {
+			plugin.release();
+		}
+		pendingRelease.clear();
+	}
+
+	private void publish(ExecutionPlan plan) {
+		pipeline = createPipeline(plan);
+		executionPlan = plan;
+	}
+
+	private PipelinedExecution createPipeline(ExecutionPlan plan) {
+		return pipelineStages > 1 ? plan.createPipeline(pipelineStages, new PipelineListener()) : null;
+	}
+
+	/**
+	 * Replaces the current plan by a pending plan. A pipeline must have
+	 * finished all of its blocks before it can be replaced, because the
+	 * plugins are shared between the plans. The new plan takes over the state
+	 * of the nodes of the current plan. If the current plan can't keep
+	 * running during the crossfade, it fades out first and the plan is
+	 * replaced afterwards.
+	 * 
+	 * @return false if there is a pending plan which can't be used yet.
+	 */
+	private boolean swapPlan() {
+		PendingPlan next = pendingPlan.get();
+
+		if (next == null) {
+			return true;
+		}
+
+		ExecutionPlan previous = executionPlan;
+		int length = crossfadeLength;
+		boolean parallelFade = length > 0 && next.parallelFade && next.previous == previous;
+
+		if (length > 0 && !parallelFade) {
+			if (fadeOutSubmitted < 0) {
+				fadeOutSubmitted = 0;
+
+				synchronized (outputQueue) {
+					fadeOutPosition = 0;
+				}
+			}
+
+			if (fadeOutSubmitted < length) {
+				return true;
+			}
+		}
+
+		PipelinedExecution curPipeline = pipeline;
+
+		if (curPipeline != null && !curPipeline.isIdle()) {
+			return false;
+		}
+
+		if (pendingPlan.compareAndSet(next, null)) {
+			if (next.previous == previous) {
+				next.plan.transferState();
+			}
+
+			pipeline = next.pipeline;
+			executionPlan = next.plan;
+
+			if (parallelFade) {
+				// The events are taken by the new plan
+				previous.setEventQueue(null);
+				fadingPlan = previous;
+				fadingPosition = 0;
+			} else if (fadeOutSubmitted >= 0) {
+				synchronized (outputQueue) {
+					fadeOutPosition = -1;
+					fadeInPosition = 0;
+				}
+			}
+
+			fadeOutSubmitted = -1;
+		}
+
+		return true;
+	}
+
+	private static class PendingPlan {
+
+		private final ExecutionPlan plan;
+		private final PipelinedExecution pipeline;
+		// The plan which has been executed when this plan was compiled
+		private final ExecutionPlan previous;
+		// The previous plan may run along with this plan
+		private final boolean parallelFade;
+
+		private PendingPlan(ExecutionPlan plan, PipelinedExecution pipeline, ExecutionPlan previous,
+				boolean parallelFade) {
+			this.plan = plan;
+			this.pipeline = pipeline;
+			this.previous = previous;
+			this.parallelFade = parallelFade;
+		}
+	}
 	
 	private class DataflowRunnable implements Runnable {
 
 		@Override
 		public void run() {
 
+			boolean waiting;
+
+			do {
+				waiting = !process();
+				scheduled.set(false);
+
+				// Data which arrived after the queue has been drained
+				// wouldn't be scheduled otherwise. While waiting for the
+				// pipeline, the pipeline schedules the next run.
+			} while (play && !waiting && hasPendingData() && scheduled.compareAndSet(false, true));
+		}
+
+		private boolean hasPendingData() {
+			synchronized (inputQueue) {
+				return !inputQueue.isEmpty();
+			}
+		}
+
+		/**
+		 * Processes all queued blocks.
+		 * 
+		 * @return false if the processing has to wait for a pipeline.
+		 */
+		private boolean process() {
+
+			boolean swapped = true;
+
 			try {
-				LinkedList<int[]> curData;
+				long start = System.nanoTime();
+				long arrival;
 
 				synchronized (inputQueue) {
 					if (inputQueue.isEmpty()) {
-						return;
+						return true;
 					}
 
-					curData = new LinkedList<>();
+					arrival = pendingSince;
+				}
+
+				boolean pipelined = false;
+				int index = 0;
 
-					while (inputQueue.size() > 0) {
-						curData.add(inputQueue.poll());
+				while (true) {
+					// A new plan is only used at a block boundary
+					if (!(swapped = swapPlan())) {
+						break;
 					}
-				}
 
-				LinkedList<double[]> exeData = new LinkedList<>();
+					DeadlineMonitor monitor = deadlineMonitor;
+					DegradationPolicy policy = degradationPolicy;
+					boolean degraded = monitor.isDegraded();
+					double[] inputArray;
+					int dropped = 0;
 
-				for (int[] inputArray : curData) {
-					double[] exeArray = new double[inputArray.length];
+					synchronized (inputQueue) {
+						// Catch up with the input by skipping older blocks
+						if (policy == DegradationPolicy.DROP_BLOCKS && degraded) {
+							while (inputQueue.size() > 1) {
+								recycleInputBlock(inputQueue.poll());
+								dropped++;
+							}
+						}
 
-					for (int i = 0; i < inputArray.length; i++) {
-						exeArray[i] = (double) inputArray[i];
+						inputArray = inputQueue.poll();
 					}
 
-					exeData.add(exeArray);
-				}
+					if (dropped > 0) {
+						statistics.addDroppedBlocks(dropped);
+						index += dropped;
+					}
 
-				for (double[] inputData : exeData) {
-					double[] sigflowOutputData = executeSignalProcessing(inputData);
+					if (inputArray == null) {
+						break;
+					}
 
-					if (sigflowOutputData != null) {
-						int[] outputData = new int[inputData.length];
+					ExecutionPlan curPlan = executionPlan;
+					PipelinedExecution curPipeline = pipeline;
+					pipelined |= curPipeline != null;
+					long blockArrival = monitor.getArrival(arrival, index++);
 
-						for (int i = 0; i < sigflowOutputData.length; i++) {
-							outputData[i] = (int) sigflowOutputData[i];
-						}
+					curPlan.setBypassOptional(policy == DegradationPolicy.BYPASS_OPTIONAL && degraded);
+					curPlan.setSilenceDetection(silenceThreshold, silenceHoldTime * SAMPLE_RATE / 1000);
+					curPlan.setAllocationCheck(allocationCheck);
+					curPlan.setEventQueue(eventQueue);
 
-						synchronized (outputQueue) {
-							outputQueue.add(outputData);
-						}
+					if (curPlan.getPrecision() == SamplePrecision.FLOAT) {
+						processFloat(inputArray, curPlan, curPipeline, blockArrival);
+					} else {
+						processDouble(inputArray, curPlan, curPipeline, blockArrival);
+					}
+
+					if (fadeOutSubmitted >= 0) {
+						fadeOutSubmitted += inputArray.length;
+					}
+
+					// A pipeline keeps the input of the double precision
+					// until the block has passed it
+					if (curPipeline == null || curPlan.getPrecision() == SamplePrecision.FLOAT) {
+						recycleInputBlock(inputArray);
+					}
+
+					// Pipelined blocks are checked when they leave the
+					// pipeline
+					if (curPipeline == null && monitor.blockFinished(blockArrival, 0, System.nanoTime())) {
+						statistics.addMissedDeadline();
 					}
 				}
+
+				long end = System.nanoTime();
+
+				// The pipeline stages report the latency when a block
+				// leaves the pipeline
+				if (!pipelined) {
+					statistics.addLatency(end - arrival);
+				}
+				statistics.addBusyTime(end - start);
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
 
+			return swapped;
 		}
 
-		private double[] executeSignalProcessing(double[] inputData) {
+		private void processDouble(double[] inputArray, ExecutionPlan plan, PipelinedExecution curPipeline,
+				long arrival) {
 
-			double[] outputData = null;
+			// The input array is owned by the channel -> it is passed to the
+			// plugins without a copy
+			if (curPipeline == null) {
+				ExecutionPlan fading = fadingPlan;
 
-			LinkedList<OutputDataWrapper> outputDataWrappers = pluginInput.putData("Input", inputData);
+				if (fading != null) {
+					keepFadingInput(inputArray);
+				}
 
-			for (OutputDataWrapper outputWrapper : outputDataWrappers) {
-				LinkedList<InputInfoWrapper> inputInfoList = dataflowMap.get(outputWrapper.getOutputInfo());
+				// The output is copied into the packages of the output queue
+				double[] outputData = plan.process(inputArray);
 
-				for (InputInfoWrapper inputInfo : inputInfoList) {
-					double[] newData = new double[inputData.length];
-					System.arraycopy(inputData, 0, newData, 0, inputData.length);
+				if (fading != null) {
+					outputData = mixFadingPlan(fading, outputData, inputArray.length);
+				}
 
-					double[] recursivOutputData = recursiveSignalProcessing(inputInfo, newData);
+				addOutputData(outputData);
+			} else if (!curPipeline.submit(inputArray, arrival)) {
+				// Pipeline overrun, reported with the statistics
+				statistics.addDroppedBlocks(1);
+			}
+		}
 
-					if (recursivOutputData != null) {
-						outputData = recursivOutputData;
-					}
+		private void processFloat(double[] inputArray, ExecutionPlan plan, PipelinedExecution curPipeline,
+				long arrival) {
+
+			if (floatInputBuffer == null || floatInputBuffer.length != inputArray.length) {
+				floatInputBuffer = new float[inputArray.length];
+			}
+
+			// The pipeline copies the block, so the buffer can be reused
+			float[] exeArray = floatInputBuffer;
+			DspKernels.toFloat(inputArray, exeArray, inputArray.length);
+			ExecutionPlan fading = curPipeline == null ? fadingPlan : null;
+
+			if (fading != null) {
+				keepFadingInput(inputArray);
+			}
+
+			if (curPipeline == null && fading == null) {
+				addOutputData(plan.process(exeArray));
+			} else if (curPipeline == null) {
+				float[] outputData = plan.process(exeArray);
+				double[] convertedData = null;
+
+				if (outputData != null) {
+					convertedData = getCrossfadeBuffer(inputArray.length);
+					DspKernels.toDouble(outputData, convertedData, inputArray.length);
 				}
+
+				addOutputData(mixFadingPlan(fading, convertedData, inputArray.length));
+			} else if (!curPipeline.submit(exeArray, arrival)) {
+				// Pipeline overrun, reported with the statistics
+				statistics.addDroppedBlocks(1);
+			}
+		}
+
+		/**
+		 * Copies the input of a block for the fading plan, because the new
+		 * plan may modify it.
+		 */
+		private void keepFadingInput(double[] inputArray) {
+
+			if (fadingInput == null || fadingInput.length != inputArray.length) {
+				fadingInput = new double[inputArray.length];
 			}
 
-			return outputData;
+			System.arraycopy(inputArray, 0, fadingInput, 0, inputArray.length);
 		}
 
-		private double[] recursiveSignalProcessing(InputInfoWrapper inputInfo, double[] data) {
+		private double[] getCrossfadeBuffer(int size) {
 
-			double[] outputData = null;
+			if (crossfadeBuffer == null || crossfadeBuffer.length != size) {
+				crossfadeBuffer = new double[size];
+			}
 
-			LinkedList<OutputDataWrapper> outputDataWrappers = inputInfo.getDestPlugin()
-					.putData(inputInfo.getDestInput(), data);
+			return crossfadeBuffer;
+		}
 
-			for (OutputDataWrapper outputWrapper : outputDataWrappers) {
-				if (outputWrapper.getOutputInfo().getSourcePlugin().equals(pluginOutput)) {
-					outputData = outputWrapper.getOutputData();
-				} else {
-					LinkedList<InputInfoWrapper> inputInfoWrapperList = dataflowMap.get(outputWrapper.getOutputInfo());
+		/**
+		 * Executes the fading plan for the current block and mixes its output
+		 * with the output of the new plan. The fading plan is dropped once
+		 * the crossfade has finished.
+		 * 
+		 * @param outputData
+		 *            The output of the new plan or null if it has no output.
+		 * @return the mixed block or null if both plans have no output
+		 */
+		private double[] mixFadingPlan(ExecutionPlan fading, double[] outputData, int size) {
 
-					for (InputInfoWrapper inputInfoWrapper : inputInfoWrapperList) {
+			// The output is copied first, the plugins which are shared by
+			// both plans may reuse their buffers
+			double[] mixed = getCrossfadeBuffer(size);
 
-						double[] newData = new double[outputWrapper.getOutputData().length];
-						System.arraycopy(outputWrapper.getOutputData(), 0, newData, 0,
-								outputWrapper.getOutputData().length);
+			if (outputData == null) {
+				Arrays.fill(mixed, 0.0);
+			} else if (outputData != mixed) {
+				System.arraycopy(outputData, 0, mixed, 0, size);
+			}
 
-						double[] recursiveOutputData = recursiveSignalProcessing(inputInfoWrapper, newData);
+			double[] fadingData = processFadingPlan(fading, size);
+			int length = crossfadeLength;
 
-						if (recursiveOutputData != null) {
-							outputData = recursiveOutputData;
-						}
+			for (int k = 0; k < size && fadingPosition < length; k++) {
+				double weight = (double) fadingPosition++ / length;
+				double previous = fadingData != null && fadingData.length == size ? fadingData[k] : 0.0;
+				mixed[k] = weight * mixed[k] + (1 - weight) * previous;
+			}
+
+			if (fadingPosition >= length) {
+				fadingPlan = null;
+			}
+
+			return outputData == null && fadingData == null ? null : mixed;
+		}
+
+		private double[] processFadingPlan(ExecutionPlan fading, int size) {
+
+			if (fading.getPrecision() != SamplePrecision.FLOAT) {
+				return fading.process(fadingInput);
+			}
+
+			if (fadingFloatInput == null || fadingFloatInput.length != size) {
+				fadingFloatInput = new float[size];
+				fadingOutput = new double[size];
+			}
+
+			DspKernels.toFloat(fadingInput, fadingFloatInput, size);
+			float[] fadingData = fading.process(fadingFloatInput);
+
+			if (fadingData == null) {
+				return null;
+			}
+
+			DspKernels.toDouble(fadingData, fadingOutput, size);
+
+			return fadingOutput;
+		}
+	}
+
+	/**
+	 * @see #addOutputData(double[])
+	 */
+	private void addOutputData(float[] sigflowOutputData) {
+
+		if (sigflowOutputData != null) {
+			synchronized (outputQueue) {
+				if (floatOutputBuffer == null || floatOutputBuffer.length != sigflowOutputData.length) {
+					floatOutputBuffer = new double[sigflowOutputData.length];
+				}
+
+				DspKernels.toDouble(sigflowOutputData, floatOutputBuffer, sigflowOutputData.length);
+				addOutputData(floatOutputBuffer);
+			}
+		}
+	}
+
+	/**
+	 * Copies the output of a block into packages of the output queue. The
+	 * data isn't used after this call, so it may be a buffer of the plan.
+	 */
+	private void addOutputData(double[] sigflowOutputData) {
+
+		if (sigflowOutputData != null) {
+			synchronized (outputQueue) {
+				if (fadeOutPosition >= 0 || fadeInPosition < crossfadeLength) {
+					sigflowOutputData = applyFade(sigflowOutputData);
+				}
+
+				if (outputAdapter != null) {
+					outputAdapter.write(sigflowOutputData);
+
+					double[] outputPackage = obtainOutputPackage(outputAdapter.getOutputSize());
+					while (outputAdapter.read(outputPackage)) {
+						outputQueue.add(outputPackage);
+						outputPackage = obtainOutputPackage(outputAdapter.getOutputSize());
 					}
+
+					// The last package hasn't been filled
+					recycleData(outputPackage);
+				} else {
+					double[] outputPackage = obtainOutputPackage(sigflowOutputData.length);
+					System.arraycopy(sigflowOutputData, 0, outputPackage, 0, sigflowOutputData.length);
+					outputQueue.add(outputPackage);
 				}
 			}
+		}
+	}
+
+	/**
+	 * Applies the fade out of the previous plan or the fade in of a new plan
+	 * to a block. Must be called with the lock of the output queue.
+	 * 
+	 * @return a buffer of the channel with the faded data
+	 */
+	private double[] applyFade(double[] data) {
+		int length = crossfadeLength;
+
+		if (fadeBuffer == null || fadeBuffer.length != data.length) {
+			fadeBuffer = new double[data.length];
+		}
+
+		for (int k = 0; k < data.length; k++) {
+			double gain = 1.0;
+
+			if (fadeInPosition < length) {
+				gain = (double) fadeInPosition++ / length;
+			}
 
-			return outputData;
+			// A plan which has faded out stays silent until it is replaced
+			if (fadeOutPosition >= 0) {
+				gain *= fadeOutPosition < length ? 1 - (double) fadeOutPosition++ / length : 0.0;
+			}
+
+			fadeBuffer[k] = gain * data[k];
 		}
 
+		return fadeBuffer;
+	}
+
+	private class PipelineListener implements PipelinedExecution.BlockListener {
+
+		@Override
+		public void blockProcessed(double[] data, float[] floatData, long submitTime) {
+			try {
+				// The data of the pipeline is only valid within this call, it
+				// is copied into the packages of the output queue
+				if (floatData != null) {
+					addOutputData(floatData);
+				} else if (data != null) {
+					addOutputData(data);
+				}
+				long finishTime = System.nanoTime();
+				statistics.addLatency(finishTime - submitTime);
+
+				if (deadlineMonitor.blockFinished(submitTime, getPipelineLatency(), finishTime)) {
+					statistics.addMissedDeadline();
+				}
+
+				// The processing waits until the pipeline is idle to use
+				// the new plan
+				if (pendingPlan.get() != null) {
+					schedule();
+				}
+			} catch (Exception ex) {
+				CommonLogger.getInstance().logException(ex);
+			}
+		}
 	}
 }
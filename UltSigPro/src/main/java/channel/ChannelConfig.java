@@ -21,6 +21,7 @@ public class ChannelConfig {
 	private Collection<String> outputDevices;
 	private HashMap<String, File> inputWaveFiles;
 	private HashMap<String, File> outputWaveFiles;
+	private int blockSize = 0;
 
 	/**
 	 * Creates a new ChannelConfig with the given values.
@@ -152,4 +153,27 @@ public class ChannelConfig {
 		outputDevices.remove(device);
 	}
 
+	/**
+	 * Get the number of samples which are processed at once by the channel.
+	 * 
+	 * @return The block size in samples or 0 if the package size of the
+	 *         devices is used.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Sets the number of samples which are processed at once by the channel.
+	 * Large blocks reduce the processing overhead, small blocks reduce the
+	 * latency.
+	 * 
+	 * @param blockSize
+	 *            The block size in samples or 0 to use the package size of
+	 *            the devices.
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
 }
@@ -100,7 +100,7 @@ public class ChannelPane extends TitledPane {
 		setPlay(false);
 	}
 	
-	public void insertWaveChartData(int[] data) {
+	public void insertWaveChartData(double[] data) {
 		waveChart.insertData(data);
 	}
 
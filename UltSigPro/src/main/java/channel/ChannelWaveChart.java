@@ -71,7 +71,7 @@ public class ChannelWaveChart extends Pane {
 		}
 	}
 	
-	public synchronized void insertData(int[] data) {
+	public synchronized void insertData(double[] data) {
 		
 		try{
 			for(int i=0; i<data.length; i++) {
@@ -84,7 +84,7 @@ public class ChannelWaveChart extends Pane {
 					Platform.runLater(new SliceAddRunnable(curPane));
 				}
 				
-				double normValue = ((double)data[i]) / Short.MAX_VALUE;
+				double normValue = data[i];
 				rms += normValue * normValue;
 
 				count++;
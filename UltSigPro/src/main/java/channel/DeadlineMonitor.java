@@ -0,0 +1,104 @@
+package channel;
+
+/**
+ * Checks if the blocks of a channel are processed within the period of the
+ * sample clock. Blocks arrive with one block period in between, so a block
+ * must be finished one period after its arrival. Otherwise the queues grow
+ * and the latency climbs.<br/>
+ * <br/>
+ * A missed deadline puts the channel into the degraded state, in which the
+ * {@link DegradationPolicy} of the channel is applied. The channel recovers
+ * after one second without a missed deadline.
+ * 
+ * @author roland
+ *
+ */
+public class DeadlineMonitor {
+
+	private final long blockPeriod;
+	private final int recoveryBlocks;
+
+	private volatile boolean degraded = false;
+	private int blocksInTime = 0;
+
+	/**
+	 * Creates a new monitor.
+	 * 
+	 * @param blockSize
+	 *            The number of samples within one block.
+	 * @param sampleRate
+	 *            The sample rate of the channel.
+	 */
+	public DeadlineMonitor(int blockSize, int sampleRate) {
+		blockPeriod = blockSize * 1000000000L / sampleRate;
+		recoveryBlocks = Math.max(1, sampleRate / blockSize);
+	}
+
+	/**
+	 * Estimates the arrival time of a queued block. The blocks of the queue
+	 * have arrived with one block period in between.
+	 * 
+	 * @param firstArrival
+	 *            The arrival time of the first queued block in nanoseconds.
+	 * @param index
+	 *            The position of the block within the queue. 0 for the first
+	 *            block.
+	 * @return the arrival time in nanoseconds
+	 */
+	public long getArrival(long firstArrival, int index) {
+		return firstArrival + index * blockPeriod;
+	}
+
+	/**
+	 * Records the completion of a block.
+	 * 
+	 * @param arrival
+	 *            The arrival time of the block in nanoseconds.
+	 * @param latencyBlocks
+	 *            The number of block periods the processing may additionally
+	 *            take by design, e.g. due to a pipeline.
+	 * @param finishTime
+	 *            The time the block has been finished in nanoseconds.
+	 * @return true if the deadline has been missed.
+	 */
+	public synchronized boolean blockFinished(long arrival, int latencyBlocks, long finishTime) {
+
+		if (finishTime > arrival + (latencyBlocks + 1) * blockPeriod) {
+			degraded = true;
+			blocksInTime = 0;
+			return true;
+		}
+
+		if (degraded && ++blocksInTime >= recoveryBlocks) {
+			degraded = false;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if the channel is currently overloaded.
+	 * 
+	 * @return true if a deadline has been missed recently.
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	/**
+	 * The time between two blocks.
+	 * 
+	 * @return the block period in nanoseconds
+	 */
+	public long getBlockPeriod() {
+		return blockPeriod;
+	}
+
+	/**
+	 * Leaves the degraded state.
+	 */
+	public synchronized void reset() {
+		degraded = false;
+		blocksInTime = 0;
+	}
+}
@@ -0,0 +1,35 @@
+package channel;
+
+/**
+ * The reaction of a {@link Channel} to missed deadlines while it is
+ * overloaded, see {@link DeadlineMonitor}. The policy can be chosen with the
+ * resource "degradationPolicy" or {@link Channel#setDegradationPolicy}.
+ * 
+ * @author roland
+ *
+ */
+public enum DegradationPolicy {
+
+	/**
+	 * Missed deadlines are only counted.
+	 */
+	NONE,
+
+	/**
+	 * Plugins which declare themselves as optional pass their input through
+	 * without processing it.
+	 */
+	BYPASS_OPTIONAL,
+
+	/**
+	 * The wave chart of the channel is only updated with every fourth
+	 * package.
+	 */
+	REDUCE_VISUALIZATION,
+
+	/**
+	 * Blocks which are queued behind a newer block are dropped, so the
+	 * processing catches up with the input.
+	 */
+	DROP_BLOCKS;
+}
@@ -2,6 +2,12 @@ package channel;
 
 public interface InputDataListener {
 	
-	void putData(int[] data);
+	/**
+	 * Receives a new package of normalized samples in the range [-1.0, 1.0).
+	 * 
+	 * @param data
+	 *            The samples. The array is owned by the listener afterwards.
+	 */
+	void putData(double[] data);
 	
 }
@@ -6,11 +6,34 @@ public class InputInfoWrapper {
 
 	private SigproPlugin destPlugin;
 	private String destInput;
+	private int delay;
 	
 	public InputInfoWrapper(SigproPlugin destPlugin, String destInput) {
 		
+		this(destPlugin, destInput, 0);
+	}
+	
+	/**
+	 * Creates a connection to an input which receives the data with a delay.
+	 * Feedback connections within the plugin graph need a delay of at least
+	 * one block.
+	 * 
+	 * @param destPlugin
+	 *            The plugin which receives the data.
+	 * @param destInput
+	 *            The input of the plugin.
+	 * @param delay
+	 *            The delay in blocks. 0 for a direct connection.
+	 */
+	public InputInfoWrapper(SigproPlugin destPlugin, String destInput, int delay) {
+		
+		if (delay < 0) {
+			throw new IllegalArgumentException("The delay must not be negative");
+		}
+		
 		this.destPlugin = destPlugin;
 		this.destInput = destInput;
+		this.delay = delay;
 	}
 
 	public SigproPlugin getDestPlugin() {
@@ -28,6 +51,15 @@ public class InputInfoWrapper {
 	public void setDestInput(String destInput) {
 		this.destInput = destInput;
 	}
+
+	/**
+	 * The delay of this connection.
+	 * 
+	 * @return the delay in blocks. 0 for a direct connection.
+	 */
+	public int getDelay() {
+		return delay;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
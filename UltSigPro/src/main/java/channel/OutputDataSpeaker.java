@@ -10,5 +10,27 @@ package channel;
  */
 public interface OutputDataSpeaker {
 
-	int[] fetchData();
+	/**
+	 * Provides the next package of processed samples.
+	 * 
+	 * @return the normalized samples in the range [-1.0, 1.0) or null if no
+	 *         data is available.
+	 */
+	double[] fetchData();
+
+	/**
+	 * Returns a package of {@link #fetchData()} after it has been written, so
+	 * the speaker can reuse the array for a later package.
+	 * 
+	 * @param data
+	 *            The package. Mustn't be used by the caller afterwards.
+	 */
+	void recycleData(double[] data);
+
+	/**
+	 * The delay of the provided samples relative to the input of the speaker.
+	 * 
+	 * @return the latency in samples
+	 */
+	int getLatency();
 }
@@ -4,6 +4,7 @@ public class OutputDataWrapper {
 
 	private OutputInfoWrapper outputInfo;
 	private double[] outputData;
+	private float[] floatOutputData;
 	
 	public OutputDataWrapper(OutputInfoWrapper outputInfo, double[] outputData) {
 
@@ -11,6 +12,12 @@ public class OutputDataWrapper {
 		this.outputData = outputData;
 	}
 
+	public OutputDataWrapper(OutputInfoWrapper outputInfo, float[] floatOutputData) {
+
+		this.outputInfo = outputInfo;
+		this.floatOutputData = floatOutputData;
+	}
+
 	public OutputInfoWrapper getOutputInfo() {
 		return outputInfo;
 	}
@@ -18,5 +25,9 @@ public class OutputDataWrapper {
 	public double[] getOutputData() {
 		return outputData;
 	}
+
+	public float[] getFloatOutputData() {
+		return floatOutputData;
+	}
 	
 }
@@ -78,6 +78,21 @@ public class PluginInput extends SigproPlugin {
 		return null;
 	}
 
+	@Override
+	public LinkedList<OutputDataWrapper> putFloatData(String input, float[] data) {
+
+		if (input.equals("Input")) {
+
+			LinkedList<OutputDataWrapper> output = new LinkedList<>();
+
+			output.add(new OutputDataWrapper(new OutputInfoWrapper(this, "Input"), data));
+
+			return output;
+		}
+
+		return null;
+	}
+
 	@Override
 	public HashSet<String> getOutputConfig() {
 
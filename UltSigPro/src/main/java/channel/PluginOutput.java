@@ -3,6 +3,8 @@ package channel;
 import java.util.HashSet;
 import java.util.LinkedList;
 
+import channel.dataflow.ProcessContext;
+import channel.dataflow.SamplePrecision;
 import javafx.geometry.Insets;
 import javafx.scene.control.Label;
 import javafx.scene.layout.Background;
@@ -72,6 +74,60 @@ public class PluginOutput extends SigproPlugin {
 		return null;
 	}
 
+	@Override
+	public LinkedList<OutputDataWrapper> putFloatData(String input, float[] data) {
+		
+		if(input.equals("Output")) {
+			LinkedList<OutputDataWrapper> outputData = new LinkedList<>();
+			
+			outputData.add(new OutputDataWrapper(new OutputInfoWrapper(this, "Output"), data));
+			return outputData;
+		}
+		
+		return null;
+	}
+
+	@Override
+	public boolean usesProcessContext() {
+
+		return true;
+	}
+
+	@Override
+	public String[] getOutputPorts() {
+
+		// The output of the channel isn't shown as output of the plugin
+		return new String[] { "Output" };
+	}
+
+	@Override
+	public void process(ProcessContext context) {
+
+		if (context.getPrecision() == SamplePrecision.FLOAT) {
+			System.arraycopy(context.getFloatInput(0), 0, context.getFloatOutput(0), 0, context.getBlockSize());
+		} else {
+			System.arraycopy(context.getInput(0), 0, context.getOutput(0), 0, context.getBlockSize());
+		}
+	}
+
+	@Override
+	public int getTailLength() {
+
+		return 0;
+	}
+
+	@Override
+	public boolean isStateless() {
+
+		return true;
+	}
+
+	@Override
+	public boolean isRealtimeSafe() {
+
+		return true;
+	}
+
 	@Override
 	public HashSet<String> getOutputConfig() {
 
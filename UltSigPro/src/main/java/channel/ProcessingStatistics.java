@@ -0,0 +1,171 @@
+package channel;
+
+/**
+ * Collects the latency and the processing load of a {@link Channel}. The
+ * latency is measured from the arrival of input data until the processed data
+ * is available for the output. All values are recorded by the processing
+ * thread without any allocation.
+ * 
+ * @author roland
+ *
+ */
+public class ProcessingStatistics {
+
+	// Histogram with a resolution of 10 us up to 50 ms
+	private static final long BUCKET_WIDTH = 10000;
+	private final long[] latencyBuckets = new long[5000];
+
+	private long count;
+	private long maxLatency;
+	private long latencySum;
+
+	private long busyTime;
+	private long startTime;
+
+	private long missedDeadlines;
+	private long droppedBlocks;
+
+	/**
+	 * Discards all recorded values and restarts the measurement of the load.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < latencyBuckets.length; i++) {
+			latencyBuckets[i] = 0;
+		}
+		count = 0;
+		maxLatency = 0;
+		latencySum = 0;
+		busyTime = 0;
+		missedDeadlines = 0;
+		droppedBlocks = 0;
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Records the latency of one processed block.
+	 * 
+	 * @param nanos
+	 *            The latency in nanoseconds.
+	 */
+	public synchronized void addLatency(long nanos) {
+		int bucket = (int) Math.min(latencyBuckets.length - 1, nanos / BUCKET_WIDTH);
+		latencyBuckets[bucket]++;
+		count++;
+		latencySum += nanos;
+		maxLatency = Math.max(maxLatency, nanos);
+	}
+
+	/**
+	 * Records the time the processing thread was busy.
+	 * 
+	 * @param nanos
+	 *            The busy time in nanoseconds.
+	 */
+	public synchronized void addBusyTime(long nanos) {
+		busyTime += nanos;
+	}
+
+	/**
+	 * Records a block which has been finished after its deadline.
+	 */
+	public synchronized void addMissedDeadline() {
+		missedDeadlines++;
+	}
+
+	/**
+	 * Records blocks which have been dropped due to an overload.
+	 * 
+	 * @param blocks
+	 *            The number of dropped blocks.
+	 */
+	public synchronized void addDroppedBlocks(int blocks) {
+		droppedBlocks += blocks;
+	}
+
+	/**
+	 * The number of blocks which have been finished after their deadline.
+	 * 
+	 * @return the number of blocks
+	 */
+	public synchronized long getMissedDeadlines() {
+		return missedDeadlines;
+	}
+
+	/**
+	 * The number of blocks which have been dropped due to an overload.
+	 * 
+	 * @return the number of blocks
+	 */
+	public synchronized long getDroppedBlocks() {
+		return droppedBlocks;
+	}
+
+	/**
+	 * The number of recorded blocks.
+	 * 
+	 * @return the number of blocks
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * The mean latency of all recorded blocks.
+	 * 
+	 * @return the latency in nanoseconds
+	 */
+	public synchronized long getMeanLatency() {
+		return count == 0 ? 0 : latencySum / count;
+	}
+
+	/**
+	 * The maximum latency of all recorded blocks.
+	 * 
+	 * @return the latency in nanoseconds
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * The latency which isn't exceeded by the given fraction of all blocks.
+	 * 
+	 * @param percentile
+	 *            The percentile between 0 and 1, e.g. 0.99.
+	 * @return the upper bound of the latency in nanoseconds with a resolution
+	 *         of 10 us
+	 */
+	public synchronized long getLatencyPercentile(double percentile) {
+		long limit = (long) Math.ceil(count * percentile);
+		long sum = 0;
+
+		for (int i = 0; i < latencyBuckets.length; i++) {
+			sum += latencyBuckets[i];
+			if (sum >= limit && sum > 0) {
+				return (i + 1) * BUCKET_WIDTH;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * The fraction of time the signal processing was busy since the last
+	 * reset. 1.0 means one core is completely busy.
+	 * 
+	 * @return the load
+	 */
+	public synchronized double getLoad() {
+		long elapsed = System.nanoTime() - startTime;
+		return elapsed <= 0 ? 0 : (double) busyTime / elapsed;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"blocks: %d, mean latency: %.3f ms, p99 latency: %.3f ms, max latency: %.3f ms, load: %.1f %%, "
+						+ "missed deadlines: %d, dropped blocks: %d",
+				count, getMeanLatency() / 1e6, getLatencyPercentile(0.99) / 1e6, maxLatency / 1e6, getLoad() * 100,
+				missedDeadlines, droppedBlocks);
+	}
+}
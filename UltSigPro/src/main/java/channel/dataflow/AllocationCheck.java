@@ -0,0 +1,78 @@
+package channel.dataflow;
+
+import java.lang.management.ManagementFactory;
+
+import logging.CommonLogger;
+
+/**
+ * Debug check for memory allocations within the signal processing, see
+ * {@link ExecutionPlan#setAllocationCheck(boolean)}. Reads the allocation
+ * counter of the current thread, which is only provided by HotSpot based
+ * JVMs.
+ * 
+ * @author roland
+ *
+ */
+class AllocationCheck {
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+
+	/**
+	 * The bytes which are allocated by reading the counter itself.
+	 */
+	static final long OVERHEAD = measureOverhead();
+
+	private AllocationCheck() {
+
+	}
+
+	/**
+	 * Checks if the JVM provides the allocation counter.
+	 * 
+	 * @return true if allocations can be detected.
+	 */
+	static boolean isSupported() {
+		return THREAD_BEAN != null;
+	}
+
+	/**
+	 * The number of bytes which have been allocated by the current thread.
+	 * 
+	 * @return the allocated bytes or 0 if the counter isn't supported.
+	 */
+	static long getAllocatedBytes() {
+		return THREAD_BEAN == null ? 0 : THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean findThreadBean() {
+
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+
+				if (threadBean.isThreadAllocatedMemorySupported()) {
+					threadBean.setThreadAllocatedMemoryEnabled(true);
+					return threadBean;
+				}
+			}
+		} catch (UnsupportedOperationException | SecurityException e) {
+			CommonLogger.getInstance().logException(e);
+		}
+
+		return null;
+	}
+
+	private static long measureOverhead() {
+
+		long overhead = Long.MAX_VALUE;
+
+		for (int i = 0; i < 16; i++) {
+			long start = getAllocatedBytes();
+			overhead = Math.min(overhead, getAllocatedBytes() - start);
+		}
+
+		return overhead;
+	}
+}
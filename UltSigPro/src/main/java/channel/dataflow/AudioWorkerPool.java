@@ -0,0 +1,88 @@
+package channel.dataflow;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Work stealing thread pool which is shared by the signal processing of all
+ * channels. The pool is sized to the number of available cores.
+ * 
+ * @author roland
+ *
+ */
+public class AudioWorkerPool {
+
+	private static AudioWorkerPool instance;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Returns the singleton instance of the pool.
+	 * 
+	 * @return the pool. Won't be null.
+	 */
+	@Nonnull
+	public static synchronized AudioWorkerPool getInstance() {
+		if (instance == null) {
+			instance = new AudioWorkerPool();
+		}
+		return instance;
+	}
+
+	private AudioWorkerPool() {
+		ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+			private int count = 0;
+
+			@Override
+			public synchronized ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("audio-worker-" + count++);
+				thread.setPriority(Thread.MAX_PRIORITY);
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		};
+
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), factory, null, false);
+	}
+
+	/**
+	 * Starts the given task asynchronously. If the current thread belongs to
+	 * this pool, the task is pushed to its local queue where idle workers can
+	 * steal it.
+	 * 
+	 * @param task
+	 *            The task to start. Must not be null.
+	 */
+	public void fork(@Nonnull ForkJoinTask<?> task) {
+		if (ForkJoinTask.getPool() == pool) {
+			task.fork();
+		} else {
+			pool.execute(task);
+		}
+	}
+
+	/**
+	 * Executes the given runnable asynchronously on one of the workers.
+	 * 
+	 * @param runnable
+	 *            The runnable to execute. Must not be null.
+	 */
+	public void execute(@Nonnull Runnable runnable) {
+		pool.execute(runnable);
+	}
+
+	/**
+	 * The number of worker threads.
+	 * 
+	 * @return the parallelism of the pool
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+}
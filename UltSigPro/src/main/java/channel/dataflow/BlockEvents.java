@@ -0,0 +1,62 @@
+package channel.dataflow;
+
+/**
+ * The events of a {@link ControlEventQueue} which fall into one block, sorted
+ * by their offset within the block. The arrays are allocated once, events
+ * beyond the capacity are dropped.
+ * 
+ * @author roland
+ *
+ */
+class BlockEvents {
+
+	static final int CAPACITY = 256;
+
+	final int[] offsets = new int[CAPACITY];
+	final ControlEventType[] types = new ControlEventType[CAPACITY];
+	// The parameter or plugin of each event
+	final Object[] targets = new Object[CAPACITY];
+	final int[] ids = new int[CAPACITY];
+	final double[] values = new double[CAPACITY];
+
+	int count = 0;
+
+	/**
+	 * Inserts an event behind all events with the same or a lower offset.
+	 * 
+	 * @return false if the capacity is exhausted.
+	 */
+	boolean add(int offset, ControlEventType type, Object target, int id, double value) {
+
+		if (count == CAPACITY) {
+			return false;
+		}
+
+		int position = count;
+
+		while (position > 0 && offsets[position - 1] > offset) {
+			offsets[position] = offsets[position - 1];
+			types[position] = types[position - 1];
+			targets[position] = targets[position - 1];
+			ids[position] = ids[position - 1];
+			values[position] = values[position - 1];
+			position--;
+		}
+
+		offsets[position] = offset;
+		types[position] = type;
+		targets[position] = target;
+		ids[position] = id;
+		values[position] = value;
+		count++;
+
+		return true;
+	}
+
+	void clear() {
+		for (int e = 0; e < count; e++) {
+			targets[e] = null;
+		}
+		count = 0;
+	}
+}
@@ -0,0 +1,244 @@
+package channel.dataflow;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+import plugins.sigproplugins.Parameter;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * Lock free queue for timestamped control events of one channel, e.g.
+ * automated parameter changes. Every event carries the sample at which it
+ * takes effect, so automation is exact at any block size. The time counts
+ * the samples of the channel input which have been processed since the
+ * creation of the queue, see {@link #getSamplePosition()}.<br/>
+ * <br/>
+ * Any number of threads may post events. The signal processing takes the
+ * events of each block before the block is processed. Events which arrive
+ * too late take effect with the first sample of the next block. Neither side
+ * allocates memory or waits for a lock.
+ * 
+ * @author roland
+ *
+ */
+public class ControlEventQueue {
+
+	/**
+	 * Time of events which take effect as soon as possible.
+	 */
+	public static final long IMMEDIATE = -1;
+
+	// Bounded multi producer ring. The sequence of a slot tells if it is free
+	// for the producer with the same position or filled for the consumer.
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] times;
+	private final ControlEventType[] types;
+	private final Object[] targets;
+	private final int[] ids;
+	private final double[] values;
+
+	private final AtomicLong enqueuePosition = new AtomicLong();
+	private long dequeuePosition = 0;
+
+	// Events of later blocks, sorted by time. Only used by the consumer.
+	private final long[] pendingTimes;
+	private final ControlEventType[] pendingTypes;
+	private final Object[] pendingTargets;
+	private final int[] pendingIds;
+	private final double[] pendingValues;
+	private int pendingCount = 0;
+
+	private volatile long samplePosition = 0;
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * Creates a new queue.
+	 * 
+	 * @param capacity
+	 *            The minimal number of events which can be queued. Will be
+	 *            rounded up to the next power of two.
+	 */
+	public ControlEventQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		mask = size - 1;
+		sequences = new AtomicLongArray(size);
+		times = new long[size];
+		types = new ControlEventType[size];
+		targets = new Object[size];
+		ids = new int[size];
+		values = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+
+		pendingTimes = new long[size];
+		pendingTypes = new ControlEventType[size];
+		pendingTargets = new Object[size];
+		pendingIds = new int[size];
+		pendingValues = new double[size];
+	}
+
+	/**
+	 * Schedules a new value for a parameter. May be called from any thread.
+	 * 
+	 * @param parameter
+	 *            The parameter. Must not be null.
+	 * @param value
+	 *            The new value.
+	 * @param sampleTime
+	 *            The sample at which the value takes effect or
+	 *            {@link #IMMEDIATE}.
+	 * @return false if the queue is full and the event has been dropped.
+	 */
+	public boolean postParameterChange(@Nonnull Parameter parameter, double value, long sampleTime) {
+		return post(sampleTime, ControlEventType.PARAMETER, parameter, 0, value);
+	}
+
+	/**
+	 * Schedules a trigger for a plugin. May be called from any thread.
+	 * 
+	 * @param plugin
+	 *            The plugin. Must not be null.
+	 * @param trigger
+	 *            The plugin specific number of the trigger.
+	 * @param value
+	 *            The plugin specific value of the trigger.
+	 * @param sampleTime
+	 *            The sample at which the trigger takes effect or
+	 *            {@link #IMMEDIATE}.
+	 * @return false if the queue is full and the event has been dropped.
+	 */
+	public boolean postTrigger(@Nonnull SigproPlugin plugin, int trigger, double value, long sampleTime) {
+		return post(sampleTime, ControlEventType.TRIGGER, plugin, trigger, value);
+	}
+
+	/**
+	 * The first sample of the next block of the signal processing. Events
+	 * with an earlier time take effect immediately.
+	 * 
+	 * @return the number of samples which have been processed
+	 */
+	public long getSamplePosition() {
+		return samplePosition;
+	}
+
+	/**
+	 * The number of events which have been dropped, because the queue or a
+	 * block was full.
+	 * 
+	 * @return the number of dropped events
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	private boolean post(long time, ControlEventType type, Object target, int id, double value) {
+
+		long position = enqueuePosition.get();
+
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+
+			if (difference == 0) {
+				if (enqueuePosition.compareAndSet(position, position + 1)) {
+					times[index] = time;
+					types[index] = type;
+					targets[index] = target;
+					ids[index] = id;
+					values[index] = value;
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0) {
+				droppedEvents.incrementAndGet();
+				return false;
+			}
+
+			position = enqueuePosition.get();
+		}
+	}
+
+	/**
+	 * Moves the events of the next block into the given block events and
+	 * advances the sample position by the block size. Must only be called by
+	 * one thread at a time, once per block.
+	 */
+	void drain(BlockEvents events, int blockSize) {
+
+		events.clear();
+
+		while (true) {
+			int index = (int) dequeuePosition & mask;
+
+			if (sequences.get(index) != dequeuePosition + 1) {
+				break;
+			}
+
+			addPending(times[index], types[index], targets[index], ids[index], values[index]);
+			targets[index] = null;
+			sequences.set(index, dequeuePosition + mask + 1);
+			dequeuePosition++;
+		}
+
+		long start = samplePosition;
+		long end = start + blockSize;
+		int taken = 0;
+
+		while (taken < pendingCount && pendingTimes[taken] < end) {
+			int offset = (int) Math.max(0, pendingTimes[taken] - start);
+
+			if (!events.add(offset, pendingTypes[taken], pendingTargets[taken], pendingIds[taken],
+					pendingValues[taken])) {
+				droppedEvents.incrementAndGet();
+			}
+			taken++;
+		}
+
+		// The events of later blocks move to the front
+		for (int e = taken; e < pendingCount; e++) {
+			pendingTimes[e - taken] = pendingTimes[e];
+			pendingTypes[e - taken] = pendingTypes[e];
+			pendingTargets[e - taken] = pendingTargets[e];
+			pendingIds[e - taken] = pendingIds[e];
+			pendingValues[e - taken] = pendingValues[e];
+		}
+
+		for (int e = pendingCount - taken; e < pendingCount; e++) {
+			pendingTargets[e] = null;
+		}
+
+		pendingCount -= taken;
+		samplePosition = end;
+	}
+
+	private void addPending(long time, ControlEventType type, Object target, int id, double value) {
+
+		if (pendingCount == pendingTimes.length) {
+			droppedEvents.incrementAndGet();
+			return;
+		}
+
+		int position = pendingCount;
+
+		while (position > 0 && pendingTimes[position - 1] > time) {
+			pendingTimes[position] = pendingTimes[position - 1];
+			pendingTypes[position] = pendingTypes[position - 1];
+			pendingTargets[position] = pendingTargets[position - 1];
+			pendingIds[position] = pendingIds[position - 1];
+			pendingValues[position] = pendingValues[position - 1];
+			position--;
+		}
+
+		pendingTimes[position] = time;
+		pendingTypes[position] = type;
+		pendingTargets[position] = target;
+		pendingIds[position] = id;
+		pendingValues[position] = value;
+		pendingCount++;
+	}
+}
@@ -0,0 +1,22 @@
+package channel.dataflow;
+
+/**
+ * The kinds of events within a {@link ControlEventQueue}.
+ * 
+ * @author roland
+ *
+ */
+public enum ControlEventType {
+
+	/**
+	 * Sets a {@link plugins.sigproplugins.Parameter} to a new value. The
+	 * smoothing of the parameter starts at the sample of the event.
+	 */
+	PARAMETER,
+
+	/**
+	 * Passes a trigger with a plugin specific number and value to a plugin,
+	 * e.g. to start a sample.
+	 */
+	TRIGGER;
+}
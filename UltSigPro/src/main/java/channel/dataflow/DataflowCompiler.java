@@ -0,0 +1,625 @@
+package channel.dataflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import channel.InputInfoWrapper;
+import channel.OutputInfoWrapper;
+import logging.CommonLogger;
+import plugins.sigproplugins.PluginCapabilities;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * Compiles the connections between plugins into an {@link ExecutionPlan}. The
+ * plugins are sorted topologically and all ports and buffers are resolved,
+ * so the plan can be executed without any map lookups.<br/>
+ * <br/>
+ * Feedback loops are allowed if every cycle contains a delayed connection
+ * (see {@link InputInfoWrapper#getDelay()}). The strongly connected
+ * components of the graph are scheduled in topological order, the plugins
+ * within a component in the order of their direct connections. A delayed
+ * input reads the data of a previous block from a delay line of the plan.<br/>
+ * <br/>
+ * The latencies of the plugins (see {@link SigproPlugin#getLatency()}) are
+ * accumulated along the direct connections. If inputs of a plugin have
+ * different latencies, the faster inputs are delayed by the difference.
+ * Feedback connections aren't compensated.<br/>
+ * <br/>
+ * Connections between plugins with different rate divisors (see
+ * {@link SigproPlugin#getRateDivisor()}) get a {@link RateConverter}.
+ * 
+ * @author roland
+ *
+ */
+public class DataflowCompiler {
+
+	/**
+	 * Receives the result of {@link DataflowCompiler#compileAsync}.
+	 */
+	public interface CompileListener {
+
+		/**
+		 * Called by the compiler thread when the plan is ready.
+		 * 
+		 * @param plan
+		 *            The compiled plan. Won't be null.
+		 */
+		void planCompiled(@Nonnull ExecutionPlan plan);
+	}
+
+	private static ExecutorService compilerThread;
+
+	private DataflowCompiler() {
+
+	}
+
+	/**
+	 * Compiles the connections on a background thread, so the caller isn't
+	 * blocked and the signal processing can continue with its current plan.
+	 * Plans are compiled in the order of the calls.
+	 * 
+	 * @param dataflowMap
+	 *            All connections between outputs and inputs of plugins. Must
+	 *            not be null and must not be modified afterwards.
+	 * @param pluginInput
+	 *            The plugin which represents the channel input. Must not be
+	 *            null.
+	 * @param pluginOutput
+	 *            The plugin which represents the channel output. Must not be
+	 *            null.
+	 * @param precision
+	 *            The precision of the samples within the plan. Must not be
+	 *            null.
+	 * @param sampleRate
+	 *            The sample rate of the channel in Hz.
+	 * @param blockSize
+	 *            The number of samples which are processed at once.
+	 * @param listener
+	 *            Receives the compiled plan. Must not be null.
+	 */
+	public static void compileAsync(
+			@Nonnull final Map<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> dataflowMap,
+			@Nonnull final SigproPlugin pluginInput, @Nonnull final SigproPlugin pluginOutput,
+			@Nonnull final SamplePrecision precision, final int sampleRate, final int blockSize,
+			@Nonnull final CompileListener listener) {
+
+		getCompilerThread().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					listener.planCompiled(
+							compile(dataflowMap, pluginInput, pluginOutput, precision, sampleRate, blockSize));
+				} catch (Exception e) {
+					CommonLogger.getInstance().logException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks if the connections can be compiled.
+	 * 
+	 * @param dataflowMap
+	 *            All connections between outputs and inputs of plugins. Must
+	 *            not be null.
+	 * @return true if every cycle of the connections contains a delayed
+	 *         connection.
+	 */
+	public static boolean isSchedulable(
+			@Nonnull Map<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> dataflowMap) {
+
+		LinkedHashMap<SigproPlugin, LinkedHashSet<SigproPlugin>> successors = new LinkedHashMap<>();
+		LinkedHashMap<SigproPlugin, LinkedHashSet<SigproPlugin>> directSuccessors = new LinkedHashMap<>();
+
+		for (Map.Entry<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> entry : dataflowMap.entrySet()) {
+			addConnections(entry.getKey(), entry.getValue(), successors, directSuccessors);
+		}
+
+		return schedule(successors, directSuccessors, new HashMap<SigproPlugin, Integer>()) != null;
+	}
+
+	private static synchronized ExecutorService getCompilerThread() {
+
+		if (compilerThread == null) {
+			compilerThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "dataflow-compiler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return compilerThread;
+	}
+
+	/**
+	 * Creates a new {@link ExecutionPlan} for the given connections.
+	 * 
+	 * @param dataflowMap
+	 *            All connections between outputs and inputs of plugins. Must
+	 *            not be null.
+	 * @param pluginInput
+	 *            The plugin which represents the channel input. Must not be
+	 *            null.
+	 * @param pluginOutput
+	 *            The plugin which represents the channel output. Must not be
+	 *            null.
+	 * @param precision
+	 *            The precision of the samples within the plan. Must not be
+	 *            null.
+	 * @param sampleRate
+	 *            The sample rate of the channel in Hz. Used for the smoothing
+	 *            of the plugin parameters.
+	 * @param blockSize
+	 *            The number of samples which are processed at once. The plan
+	 *            must only be executed with blocks of this size.
+	 * @return The compiled plan. Won't be null.
+	 * @throws IllegalStateException
+	 *             if the connections contain a cycle without delay, a plugin
+	 *             has an unsupported rate divisor or a delayed connection
+	 *             connects different rates.
+	 */
+	@Nonnull
+	public static ExecutionPlan compile(
+			@Nonnull Map<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> dataflowMap,
+			@Nonnull SigproPlugin pluginInput, @Nonnull SigproPlugin pluginOutput,
+			@Nonnull SamplePrecision precision, int sampleRate, int blockSize) {
+
+		// Every connected output gets a slot for its data
+		LinkedHashMap<OutputInfoWrapper, Integer> slots = new LinkedHashMap<>();
+		LinkedHashMap<SigproPlugin, LinkedHashSet<SigproPlugin>> successors = new LinkedHashMap<>();
+		LinkedHashMap<SigproPlugin, LinkedHashSet<SigproPlugin>> directSuccessors = new LinkedHashMap<>();
+
+		for (Map.Entry<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> entry : dataflowMap.entrySet()) {
+			slots.put(entry.getKey(), slots.size());
+			addConnections(entry.getKey(), entry.getValue(), successors, directSuccessors);
+		}
+
+		int outputSlot = slots.size();
+		int slotCount = outputSlot + 1;
+		Integer inputSlot = slots.get(new OutputInfoWrapper(pluginInput, "Input"));
+
+		HashMap<SigproPlugin, Integer> components = new HashMap<>();
+		ArrayList<SigproPlugin> order = schedule(successors, directSuccessors, components);
+
+		if (order == null) {
+			throw new IllegalStateException("The plugin connections contain a cycle without delay");
+		}
+
+		HashMap<SigproPlugin, PluginCapabilities> capabilities = new HashMap<>();
+
+		for (SigproPlugin plugin : order) {
+			capabilities.put(plugin, new PluginCapabilities(plugin));
+		}
+
+		ArrayList<PlanNode> nodes = new ArrayList<>();
+
+		// Latency at the outputs of each plugin in samples
+		HashMap<SigproPlugin, Integer> latencies = new HashMap<>();
+		latencies.put(pluginInput, 0);
+
+		for (SigproPlugin plugin : order) {
+			if (plugin == pluginInput) {
+				// The channel input is written directly to the input slot
+				continue;
+			}
+
+			PluginCapabilities pluginCapabilities = capabilities.get(plugin);
+			int rateDivisor = getRateDivisor(plugin, pluginCapabilities);
+
+			ArrayList<OutputInfoWrapper> inputSources = new ArrayList<>();
+			ArrayList<String> inputNames = new ArrayList<>();
+			ArrayList<Integer> inputSourceSlots = new ArrayList<>();
+			ArrayList<Integer> inputDelays = new ArrayList<>();
+			ArrayList<Integer> inputLatencies = new ArrayList<>();
+			ArrayList<RateConverter> converters = new ArrayList<>();
+			ArrayList<String> outputNames = new ArrayList<>();
+			ArrayList<Integer> outputSlots = new ArrayList<>();
+
+			for (Map.Entry<OutputInfoWrapper, ? extends Collection<InputInfoWrapper>> entry : dataflowMap
+					.entrySet()) {
+				for (InputInfoWrapper input : entry.getValue()) {
+					if (input.getDestPlugin() == plugin) {
+						inputSources.add(entry.getKey());
+						inputNames.add(input.getDestInput());
+						inputSourceSlots.add(slots.get(entry.getKey()));
+						SigproPlugin source = entry.getKey().getSourcePlugin();
+						int sourceDivisor = getRateDivisor(source, capabilities.get(source));
+						int inputLatency = latencies.getOrDefault(source, 0);
+						RateConverter converter = null;
+
+						if (sourceDivisor != rateDivisor) {
+							if (input.getDelay() > 0) {
+								throw new IllegalStateException(
+										"Delayed connections between different rates aren't supported");
+							}
+
+							converter = new RateConverter(sourceDivisor, rateDivisor, blockSize);
+							inputLatency += converter.getLatency();
+						}
+
+						inputDelays.add(input.getDelay());
+						inputLatencies.add(inputLatency);
+						converters.add(converter);
+					}
+				}
+
+				if (entry.getKey().getSourcePlugin() == plugin) {
+					outputNames.add(entry.getKey().getSourceOutput());
+					outputSlots.add(slots.get(entry.getKey()));
+				}
+			}
+
+			if (plugin == pluginOutput) {
+				outputNames.add("Output");
+				outputSlots.add(outputSlot);
+			}
+
+			int latency = 0;
+
+			for (int i = 0; i < inputLatencies.size(); i++) {
+				if (inputDelays.get(i) == 0) {
+					latency = Math.max(latency, inputLatencies.get(i));
+				}
+			}
+
+			ArrayList<Integer> compensations = new ArrayList<>();
+
+			// The latencies are counted in samples of the device rate, the
+			// compensation is done at the rate of the plugin
+			for (int i = 0; i < inputLatencies.size(); i++) {
+				compensations.add(inputDelays.get(i) == 0 ? (latency - inputLatencies.get(i)) / rateDivisor : 0);
+			}
+
+			latencies.put(plugin, latency + pluginCapabilities.getLatency() * rateDivisor);
+
+			nodes.add(new PlanNode(plugin, pluginCapabilities,
+					inputSources.toArray(new OutputInfoWrapper[inputSources.size()]),
+					inputNames.toArray(new String[inputNames.size()]), toIntArray(inputSourceSlots), toIntArray(inputDelays), toIntArray(compensations),
+					converters.toArray(new RateConverter[converters.size()]), rateDivisor,
+					outputNames.toArray(new String[outputNames.size()]), toIntArray(outputSlots),
+					components.get(plugin)));
+		}
+
+		resolveBufferOwnership(nodes, slotCount);
+
+		return new ExecutionPlan(nodes.toArray(new PlanNode[nodes.size()]), buildSteps(nodes, slotCount),
+				slotCount, inputSlot == null ? -1 : inputSlot, outputSlot, precision, sampleRate,
+				latencies.getOrDefault(pluginOutput, 0));
+	}
+
+	/**
+	 * Groups the nodes into serial chains and the chains into steps. A node is
+	 * appended to the chain of its predecessor if it is the only successor of
+	 * its only predecessor. All chains of a step only depend on chains of
+	 * previous steps. Delayed inputs don't create a dependency, because they
+	 * read the data of a previous block.
+	 * 
+	 * @return steps -> chains -> node indices
+	 */
+	private static int[][][] buildSteps(ArrayList<PlanNode> nodes, int slotCount) {
+
+		int[] producers = new int[slotCount];
+		Arrays.fill(producers, -1);
+
+		for (int n = 0; n < nodes.size(); n++) {
+			for (int slot : nodes.get(n).outputSlots) {
+				producers[slot] = n;
+			}
+		}
+
+		ArrayList<LinkedHashSet<Integer>> predecessors = new ArrayList<>();
+		int[] successorCounts = new int[nodes.size()];
+
+		for (int n = 0; n < nodes.size(); n++) {
+			LinkedHashSet<Integer> preds = new LinkedHashSet<>();
+
+			PlanNode node = nodes.get(n);
+
+			for (int i = 0; i < node.inputSourceSlots.length; i++) {
+				int slot = node.inputSourceSlots[i];
+
+				if (producers[slot] >= 0 && node.inputDelays[i] == 0) {
+					preds.add(producers[slot]);
+				}
+			}
+
+			for (int pred : preds) {
+				successorCounts[pred]++;
+			}
+
+			predecessors.add(preds);
+		}
+
+		int[] chainOfNode = new int[nodes.size()];
+		ArrayList<ArrayList<Integer>> chains = new ArrayList<>();
+		ArrayList<Integer> chainLevels = new ArrayList<>();
+		int maxLevel = 0;
+
+		for (int n = 0; n < nodes.size(); n++) {
+			LinkedHashSet<Integer> preds = predecessors.get(n);
+
+			if (preds.size() == 1 && successorCounts[preds.iterator().next()] == 1) {
+				int chain = chainOfNode[preds.iterator().next()];
+				chains.get(chain).add(n);
+				chainOfNode[n] = chain;
+			} else {
+				int level = 0;
+
+				for (int pred : preds) {
+					level = Math.max(level, chainLevels.get(chainOfNode[pred]) + 1);
+				}
+
+				ArrayList<Integer> chain = new ArrayList<>();
+				chain.add(n);
+				chainOfNode[n] = chains.size();
+				chains.add(chain);
+				chainLevels.add(level);
+				maxLevel = Math.max(maxLevel, level);
+			}
+		}
+
+		int[][][] steps = new int[chains.isEmpty() ? 0 : maxLevel + 1][][];
+
+		for (int level = 0; level < steps.length; level++) {
+			ArrayList<int[]> step = new ArrayList<>();
+
+			for (int c = 0; c < chains.size(); c++) {
+				if (chainLevels.get(c) == level) {
+					step.add(toIntArray(chains.get(c)));
+				}
+			}
+
+			steps[level] = step.toArray(new int[step.size()][]);
+		}
+
+		return steps;
+	}
+
+	/**
+	 * Decides which connections need a copy of the data. The data of a slot
+	 * with only one reader is passed through unchanged, as well as to plugins
+	 * which don't modify it. Only plugins which modify their input data get a
+	 * copy if the slot is read by several connections. Readers of the same
+	 * slot may run in parallel, so none of them can take over the array.
+	 * Delayed inputs read from a delay line which is overwritten with the next
+	 * block, so they are always copied for such plugins. The slot itself is
+	 * still read at the end of the block to fill the delay line.<br/>
+	 * <br/>
+	 * The data of an input is owned by the node if no other connection reads
+	 * it or if it is a buffer of the node, i.e. converted or compensated data.
+	 * A bypassed node passes owned data to its first output without a copy.
+	 */
+	private static void resolveBufferOwnership(ArrayList<PlanNode> nodes, int slotCount) {
+
+		int[] readers = new int[slotCount];
+
+		for (PlanNode node : nodes) {
+			for (int slot : node.inputSourceSlots) {
+				readers[slot]++;
+			}
+		}
+
+		for (PlanNode node : nodes) {
+			boolean inPlace = node.capabilities.isInPlace();
+
+			for (int i = 0; i < node.inputSourceSlots.length; i++) {
+				node.inputCopies[i] = inPlace && (node.inputDelays[i] > 0 || readers[node.inputSourceSlots[i]] > 1);
+				node.inputsOwned[i] = node.inputDelays[i] == 0 && (readers[node.inputSourceSlots[i]] == 1
+						|| node.converters[i] != null || node.compensations[i] > 0);
+			}
+		}
+	}
+
+	/**
+	 * Orders the plugins. The strongly connected components are sorted
+	 * topologically by all connections, the plugins within a component by
+	 * their direct connections only.
+	 * 
+	 * @param components
+	 *            Receives the index of the component of each plugin.
+	 * @return the sorted plugins or null if a cycle doesn't contain a delayed
+	 *         connection.
+	 */
+	@CheckForNull
+	private static ArrayList<SigproPlugin> schedule(Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors,
+			Map<SigproPlugin, LinkedHashSet<SigproPlugin>> directSuccessors, Map<SigproPlugin, Integer> components) {
+
+		ComponentSearch search = new ComponentSearch(successors);
+
+		for (SigproPlugin plugin : successors.keySet()) {
+			if (!search.indices.containsKey(plugin)) {
+				search.visit(plugin);
+			}
+		}
+
+		ArrayList<SigproPlugin> order = new ArrayList<>();
+
+		// Tarjan's algorithm finds the components in reverse topological
+		// order
+		for (int c = search.components.size() - 1; c >= 0; c--) {
+			ArrayList<SigproPlugin> component = search.components.get(c);
+			LinkedHashMap<SigproPlugin, Integer> inDegrees = new LinkedHashMap<>();
+
+			for (SigproPlugin plugin : component) {
+				inDegrees.put(plugin, 0);
+			}
+
+			for (SigproPlugin plugin : component) {
+				for (SigproPlugin successor : directSuccessors.get(plugin)) {
+					if (inDegrees.containsKey(successor)) {
+						inDegrees.put(successor, inDegrees.get(successor) + 1);
+					}
+				}
+			}
+
+			ArrayList<SigproPlugin> sorted = sortTopologically(directSuccessors, inDegrees);
+
+			if (sorted.size() != component.size()) {
+				return null;
+			}
+
+			int componentIndex = search.components.size() - 1 - c;
+
+			for (SigproPlugin plugin : sorted) {
+				components.put(plugin, componentIndex);
+				order.add(plugin);
+			}
+		}
+
+		return order;
+	}
+
+	/**
+	 * Kahn's algorithm. The in degrees are consumed. Successors without an in
+	 * degree entry are ignored.
+	 * 
+	 * @return the sorted plugins. Contains less plugins than the graph if
+	 *         there is a cycle.
+	 */
+	private static ArrayList<SigproPlugin> sortTopologically(
+			Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors, Map<SigproPlugin, Integer> inDegrees) {
+
+		LinkedList<SigproPlugin> ready = new LinkedList<>();
+		ArrayList<SigproPlugin> order = new ArrayList<>();
+
+		for (Map.Entry<SigproPlugin, Integer> entry : inDegrees.entrySet()) {
+			if (entry.getValue() == 0) {
+				ready.add(entry.getKey());
+			}
+		}
+
+		while (!ready.isEmpty()) {
+			SigproPlugin plugin = ready.poll();
+			order.add(plugin);
+
+			for (SigproPlugin successor : successors.get(plugin)) {
+				if (!inDegrees.containsKey(successor)) {
+					continue;
+				}
+
+				int inDegree = inDegrees.get(successor) - 1;
+				inDegrees.put(successor, inDegree);
+
+				if (inDegree == 0) {
+					ready.add(successor);
+				}
+			}
+		}
+
+		return order;
+	}
+
+	private static int getRateDivisor(SigproPlugin plugin, PluginCapabilities capabilities) {
+
+		int rateDivisor = capabilities.getRateDivisor();
+
+		if (rateDivisor != 1 && rateDivisor != 2 && rateDivisor != 4 && rateDivisor != 8) {
+			throw new IllegalStateException("Unsupported rate divisor " + rateDivisor + " of " + plugin.getName());
+		}
+
+		return rateDivisor;
+	}
+
+	private static void addConnections(OutputInfoWrapper output, Collection<InputInfoWrapper> inputs,
+			Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors,
+			Map<SigproPlugin, LinkedHashSet<SigproPlugin>> directSuccessors) {
+
+		SigproPlugin source = output.getSourcePlugin();
+		addPlugin(source, successors, directSuccessors);
+
+		for (InputInfoWrapper input : inputs) {
+			SigproPlugin dest = input.getDestPlugin();
+			addPlugin(dest, successors, directSuccessors);
+
+			successors.get(source).add(dest);
+
+			if (input.getDelay() == 0) {
+				directSuccessors.get(source).add(dest);
+			}
+		}
+	}
+
+	private static void addPlugin(SigproPlugin plugin, Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors,
+			Map<SigproPlugin, LinkedHashSet<SigproPlugin>> directSuccessors) {
+		if (!successors.containsKey(plugin)) {
+			successors.put(plugin, new LinkedHashSet<SigproPlugin>());
+			directSuccessors.put(plugin, new LinkedHashSet<SigproPlugin>());
+		}
+	}
+
+	private static int[] toIntArray(ArrayList<Integer> list) {
+		int[] array = new int[list.size()];
+
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+
+		return array;
+	}
+
+	/**
+	 * Tarjan's algorithm for strongly connected components.
+	 */
+	private static class ComponentSearch {
+
+		private final Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors;
+		private final HashMap<SigproPlugin, Integer> indices = new HashMap<>();
+		private final HashMap<SigproPlugin, Integer> lowLinks = new HashMap<>();
+		private final LinkedList<SigproPlugin> stack = new LinkedList<>();
+		private final HashSet<SigproPlugin> onStack = new HashSet<>();
+		private final ArrayList<ArrayList<SigproPlugin>> components = new ArrayList<>();
+
+		private ComponentSearch(Map<SigproPlugin, LinkedHashSet<SigproPlugin>> successors) {
+			this.successors = successors;
+		}
+
+		private void visit(SigproPlugin plugin) {
+
+			int index = indices.size();
+			indices.put(plugin, index);
+			lowLinks.put(plugin, index);
+			stack.push(plugin);
+			onStack.add(plugin);
+
+			for (SigproPlugin successor : successors.get(plugin)) {
+				if (!indices.containsKey(successor)) {
+					visit(successor);
+					lowLinks.put(plugin, Math.min(lowLinks.get(plugin), lowLinks.get(successor)));
+				} else if (onStack.contains(successor)) {
+					lowLinks.put(plugin, Math.min(lowLinks.get(plugin), indices.get(successor)));
+				}
+			}
+
+			if (lowLinks.get(plugin) == index) {
+				ArrayList<SigproPlugin> component = new ArrayList<>();
+				SigproPlugin member;
+
+				do {
+					member = stack.pop();
+					onStack.remove(member);
+					component.add(member);
+				} while (member != plugin);
+
+				components.add(component);
+			}
+		}
+	}
+}
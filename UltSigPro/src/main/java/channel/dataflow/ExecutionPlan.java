@@ -0,0 +1,1451 @@
+package channel.dataflow;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import channel.OutputDataWrapper;
+import channel.dataflow.PipelinedExecution.BlockListener;
+import dsp.DspKernels;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * Flat, topologically sorted representation of the plugin graph of one
+ * channel. The execution of one data block is a linear loop over all nodes.
+ * Plans are created by the {@link DataflowCompiler}.<br/>
+ * <br/>
+ * The nodes are grouped into serial chains and the chains into steps. Chains
+ * within the same step are independent branches of the graph. If at least two
+ * of them are expensive enough, they are executed in parallel on the
+ * {@link AudioWorkerPool}. Chains with plugins which aren't realtime safe
+ * aren't forked, they are executed by the calling thread. Only the forking is
+ * avoided, the calling thread is usually a worker of the pool itself. A step with instances of a plugin
+ * which isn't thread safe in several chains is executed serially, see
+ * {@link plugins.sigproplugins.PluginCapabilities}.<br/>
+ * <br/>
+ * Depending on the {@link SamplePrecision} of the plan, it is executed with
+ * {@link #process(double[])} or {@link #process(float[])}.<br/>
+ * <br/>
+ * Alternatively a plan can be executed as pipeline, see
+ * {@link #createPipeline(int, BlockListener)}.<br/>
+ * <br/>
+ * Delayed inputs read from delay lines. The delay lines are advanced after
+ * all nodes have read them, at the end of the block or the pipeline
+ * stage.<br/>
+ * <br/>
+ * Nodes with a rate divisor of n are only executed with every n-th block.
+ * Their inputs from faster nodes are collected by a {@link RateConverter} in
+ * the meantime.<br/>
+ * <br/>
+ * A node whose inputs have been silent for longer than the tail length of its
+ * plugin plus a hold time is idle. The plugin isn't called and the outputs of
+ * the node are silent, so an idle channel only costs the silence
+ * detection.<br/>
+ * <br/>
+ * A plan which replaces another plan of the same channel can take over the
+ * state of the nodes of the same plugins, see
+ * {@link #prepareStateTransfer(ExecutionPlan, int)}.<br/>
+ * <br/>
+ * A plan isn't thread safe. It must only be executed by one thread at a time.
+ * 
+ * @author roland
+ *
+ */
+public class ExecutionPlan {
+
+	private static final long DEFAULT_PARALLEL_THRESHOLD = 20000;
+	// Every n-th invocation of a plugin is timed
+	private static final int TIMING_INTERVAL = 8;
+	// About -100 dBFS, below the resolution of 16 bit samples
+	private static final double DEFAULT_SILENCE_THRESHOLD = 1e-5;
+
+	private final PlanNode[] nodes;
+	private final int[] delayedNodes;
+	private final PlanChain[][] steps;
+	// The first chain of each step which may be executed by a worker
+	private final int[] forkStarts;
+	private final int inputSlot;
+	private final int outputSlot;
+	private final SamplePrecision precision;
+	private final int latency;
+
+	// Data which is currently available at the outputs of the plugins
+	private final PlanSlots slotData;
+
+	private volatile long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	private volatile boolean bypassOptional = false;
+	private volatile double silenceThreshold = DEFAULT_SILENCE_THRESHOLD;
+	private volatile int silenceHold = 0;
+	private volatile boolean allocationCheck = false;
+	private volatile ControlEventQueue eventQueue = null;
+
+	// Counts the blocks for the nodes with a rate divisor
+	private long blockCount = 0;
+
+	// The plan whose state is taken over, with the corresponding node and
+	// inputs per node of this plan. -1 if there is no counterpart.
+	private ExecutionPlan statePlan;
+	private int[] stateNodes;
+	private int[][] stateInputs;
+
+	ExecutionPlan(PlanNode[] nodes, int[][][] steps, int slotCount, int inputSlot, int outputSlot,
+			SamplePrecision precision, int sampleRate, int latency) {
+		this.nodes = nodes;
+		this.latency = latency;
+		this.inputSlot = inputSlot;
+		this.outputSlot = outputSlot;
+		this.precision = precision;
+		this.slotData = new PlanSlots(slotCount);
+
+		int delayedCount = 0;
+		for (PlanNode node : nodes) {
+			if (node.delayed) {
+				delayedCount++;
+			}
+
+			if (node.capabilities.usesProcessContext()) {
+				node.createContext(precision, sampleRate);
+			}
+
+			node.mixer = new NodeMixer(node.controls, sampleRate / node.rateDivisor);
+		}
+
+		this.delayedNodes = new int[delayedCount];
+		for (int n = 0, i = 0; n < nodes.length; n++) {
+			if (nodes[n].delayed) {
+				delayedNodes[i++] = n;
+			}
+		}
+
+		this.steps = new PlanChain[steps.length][];
+		this.forkStarts = new int[steps.length];
+		for (int s = 0; s < steps.length; s++) {
+			this.steps[s] = new PlanChain[steps[s].length];
+
+			// The chains which must not be forked are moved to the front. They
+			// are executed by the calling thread, which may be a worker too.
+			int first = 0;
+			int last = steps[s].length;
+
+			for (int[] chain : steps[s]) {
+				if (isRealtimeSafe(chain)) {
+					this.steps[s][--last] = new PlanChain(chain, this);
+				} else {
+					this.steps[s][first++] = new PlanChain(chain, this);
+				}
+			}
+
+			forkStarts[s] = sharesUnsafePlugins(steps[s]) ? steps[s].length : Math.max(1, first);
+		}
+	}
+
+	/**
+	 * Executes the signal processing of all plugins for one data block. Must
+	 * only be used for plans with {@link SamplePrecision#DOUBLE}.
+	 * 
+	 * @param inputData
+	 *            The data of the channel input. Must not be null.
+	 * @return The data at the channel output or null if the output isn't
+	 *         reached within this block.
+	 */
+	@CheckForNull
+	public double[] process(@Nonnull double[] inputData) {
+
+		if (inputSlot < 0) {
+			return null;
+		}
+
+		prepareSlots(slotData, inputData);
+		processSteps();
+		updateDelayLines();
+
+		return getOutputData(slotData);
+	}
+
+	/**
+	 * Executes the signal processing of all plugins for one data block. Must
+	 * only be used for plans with {@link SamplePrecision#FLOAT}.
+	 * 
+	 * @param inputData
+	 *            The data of the channel input. Must not be null.
+	 * @return The data at the channel output or null if the output isn't
+	 *         reached within this block.
+	 */
+	@CheckForNull
+	public float[] process(@Nonnull float[] inputData) {
+
+		if (inputSlot < 0) {
+			return null;
+		}
+
+		prepareSlots(slotData, inputData);
+		processSteps();
+		updateDelayLines();
+
+		return getFloatOutputData(slotData);
+	}
+
+	/**
+	 * The precision of the samples within this plan.
+	 * 
+	 * @return the {@link SamplePrecision}. Won't be null.
+	 */
+	@Nonnull
+	public SamplePrecision getPrecision() {
+		return precision;
+	}
+
+	private void processSteps() {
+
+		for (int s = 0; s < steps.length; s++) {
+			PlanChain[] step = steps[s];
+
+			if (step.length == 1) {
+				processChain(step[0]);
+			} else if (isParallel(step, forkStarts[s])) {
+				processParallel(step, forkStarts[s]);
+			} else {
+				for (PlanChain chain : step) {
+					processChainTimed(chain);
+				}
+			}
+		}
+	}
+
+	private void updateDelayLines() {
+
+		for (int n : delayedNodes) {
+			updateDelayLines(n, slotData);
+		}
+	}
+
+	/**
+	 * Creates a pipeline which executes this plan in several stages. The nodes
+	 * are split in topological order into stages with about the same number
+	 * of nodes. A feedback loop is never split, so the stages only pass data
+	 * forward. Every stage runs on its own worker, so a long serial chain can
+	 * use several cores. The output is delayed by
+	 * {@link PipelinedExecution#getLatencyBlocks()}.<br/>
+	 * <br/>
+	 * The plan must not be executed with {@link #process(double[])} or
+	 * {@link #process(float[])} while the pipeline is used.
+	 * 
+	 * @param stageCount
+	 *            The requested number of stages. Will be limited to the
+	 *            number of nodes and may be reduced by feedback loops.
+	 * @param listener
+	 *            Receives the processed blocks. Must not be null.
+	 * @return The pipeline. Won't be null.
+	 */
+	@Nonnull
+	public PipelinedExecution createPipeline(int stageCount, @Nonnull BlockListener listener) {
+
+		stageCount = Math.max(1, Math.min(stageCount, nodes.length));
+
+		// Move every stage border behind the end of the component it would
+		// split. Borders which fall together are dropped.
+		LinkedList<Integer> borders = new LinkedList<>();
+
+		for (int s = 1; s < stageCount; s++) {
+			int border = s * nodes.length / stageCount;
+
+			while (border < nodes.length && nodes[border].component == nodes[border - 1].component) {
+				border++;
+			}
+
+			if (border < nodes.length && (borders.isEmpty() || border > borders.getLast())) {
+				borders.add(border);
+			}
+		}
+
+		borders.add(nodes.length);
+		stageCount = borders.size();
+
+		int[][] stageNodes = toStages(borders);
+
+		if (stageCount > 1 && sharesUnsafePlugins(stageNodes)) {
+			// Instances which aren't thread safe must not run on different
+			// stages at the same time
+			return createPipeline(1, listener);
+		}
+
+		int[] stageOfNode = new int[nodes.length];
+
+		for (int s = 0; s < stageCount; s++) {
+			for (int n : stageNodes[s]) {
+				stageOfNode[n] = s;
+			}
+		}
+
+		// The last stage which reads a slot. The output slot is read after
+		// the last stage.
+		int[] lastReader = new int[slotData.data.length];
+		Arrays.fill(lastReader, -1);
+
+		for (int n = 0; n < nodes.length; n++) {
+			for (int slot : nodes[n].inputSourceSlots) {
+				lastReader[slot] = Math.max(lastReader[slot], stageOfNode[n]);
+			}
+		}
+
+		if (outputSlot >= 0) {
+			lastReader[outputSlot] = stageCount;
+		}
+
+		int[][] boundarySlots = new int[stageCount][];
+
+		for (int s = 0; s < stageCount; s++) {
+			LinkedList<Integer> slots = new LinkedList<>();
+
+			for (int n : stageNodes[s]) {
+				for (int slot : nodes[n].outputSlots) {
+					if (lastReader[slot] > s) {
+						slots.add(slot);
+					}
+				}
+			}
+
+			boundarySlots[s] = new int[slots.size()];
+			int i = 0;
+			for (int slot : slots) {
+				boundarySlots[s][i++] = slot;
+			}
+		}
+
+		return new PipelinedExecution(this, stageNodes, boundarySlots, slotData.data.length, listener);
+	}
+
+	/**
+	 * Sets the minimal execution time of a branch which is worth to be
+	 * executed on another thread.
+	 * 
+	 * @param nanos
+	 *            The threshold in nanoseconds.
+	 */
+	public void setParallelThreshold(long nanos) {
+		parallelThreshold = nanos;
+	}
+
+	/**
+	 * Enables or disables the bypass of optional plugins (see
+	 * {@link plugins.sigproplugins.SigproPlugin#isOptional()}). A bypassed
+	 * plugin passes the data of its first input to all outputs. Takes effect
+	 * with the next node, also within a running pipeline.
+	 * 
+	 * @param bypass
+	 *            true to bypass the optional plugins.
+	 */
+	public void setBypassOptional(boolean bypass) {
+		bypassOptional = bypass;
+	}
+
+	/**
+	 * Configures the detection of silent blocks. A block is silent if no
+	 * sample exceeds the threshold. A node becomes idle once its inputs have
+	 * been silent for the tail length of its plugin (see
+	 * {@link plugins.sigproplugins.SigproPlugin#getTailLength()}) plus the
+	 * hold time. Takes effect with the next node.
+	 * 
+	 * @param threshold
+	 *            The highest absolute value of a silent sample. A negative
+	 *            threshold disables the detection.
+	 * @param holdSamples
+	 *            The additional number of silent samples before a node becomes
+	 *            idle.
+	 */
+	public void setSilenceDetection(double threshold, int holdSamples) {
+		silenceThreshold = threshold;
+		silenceHold = Math.max(0, holdSamples);
+	}
+
+	/**
+	 * Enables or disables the debug check for memory allocations within the
+	 * plugins. The allocations of the current thread are counted around
+	 * every plugin call. The first allocation of every plugin is recorded, see
+	 * {@link #getAllocationReport()}. Plugins should allocate their memory in
+	 * {@link plugins.sigproplugins.SigproPlugin#prepare(int, int)}.
+	 * 
+	 * @param check
+	 *            true to check the allocations. Has no effect if the JVM
+	 *            doesn't count allocations per thread.
+	 */
+	public void setAllocationCheck(boolean check) {
+		allocationCheck = check && AllocationCheck.isSupported();
+	}
+
+	/**
+	 * The first allocation of every plugin which has been found by the
+	 * allocation check, see {@link #setAllocationCheck(boolean)}. The
+	 * processing only records the allocations, so the report should be
+	 * read by a thread which isn't processing audio.
+	 * 
+	 * @return one line per plugin which has allocated memory. Won't be null.
+	 */
+	@Nonnull
+	public LinkedList<String> getAllocationReport() {
+
+		LinkedList<String> report = new LinkedList<>();
+
+		for (PlanNode node : nodes) {
+			long bytes = node.allocatedBytes;
+
+			if (bytes > 0) {
+				report.add("Plugin " + node.plugin.getName() + " allocated " + bytes
+						+ " bytes while processing a block");
+			}
+		}
+
+		return report;
+	}
+
+	/**
+	 * Sets the queue which provides the control events of the channel. The
+	 * events of every block are taken from the queue before the block is
+	 * processed and passed to the plugins at their sample within the block.
+	 * 
+	 * @param queue
+	 *            The {@link ControlEventQueue} or null to ignore control
+	 *            events.
+	 */
+	public void setEventQueue(@CheckForNull ControlEventQueue queue) {
+		eventQueue = queue;
+	}
+
+	/**
+	 * The latency of the plugins on the slowest path from the channel input
+	 * to the channel output, see
+	 * {@link plugins.sigproplugins.SigproPlugin#getLatency()}. Faster paths
+	 * are delayed to this latency where they merge.
+	 * 
+	 * @return the latency in samples
+	 */
+	public int getLatency() {
+		return latency;
+	}
+
+	/**
+	 * The number of plugin nodes within this plan.
+	 * 
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * Checks if this plan and the given plan contain the same instance of a
+	 * plugin which isn't stateless. Such plans must not be executed
+	 * alternately, because both would advance the state of the plugin.
+	 * 
+	 * @param other
+	 *            Another plan. Must not be null.
+	 * @return true if a plugin with a state is used by both plans
+	 */
+	public boolean sharesStatefulPlugins(@Nonnull ExecutionPlan other) {
+
+		Map<SigproPlugin, Integer> otherNodes = other.getNodeIndices();
+
+		for (PlanNode node : nodes) {
+			if (!node.capabilities.isStateless() && otherNodes.containsKey(node.plugin)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Prepares this plan to take over the state of the given plan, which it
+	 * will replace. The nodes are matched by their plugin, the inputs by
+	 * their source, delay and compensation. The delay lines, the latency
+	 * compensation, the smoothing of the parameters, the fades of the
+	 * controls, the silence detection and the allocation report of matched
+	 * nodes and inputs are taken over by {@link #transferState()}. The rate
+	 * converters start empty. Must be called before the plan is executed, all
+	 * buffers for the transfer are allocated here.
+	 * 
+	 * @param previous
+	 *            The plan which is currently executed. Must not be null.
+	 * @param blockSize
+	 *            The block size of both plans.
+	 */
+	public void prepareStateTransfer(@Nonnull ExecutionPlan previous, int blockSize) {
+
+		// The lines of different precisions can't be copied
+		if (previous.precision != precision) {
+			return;
+		}
+
+		Map<SigproPlugin, Integer> previousNodes = previous.getNodeIndices();
+		int[] matchedNodes = new int[nodes.length];
+		int[][] matchedInputs = new int[nodes.length][];
+
+		for (int n = 0; n < nodes.length; n++) {
+			PlanNode node = nodes[n];
+			Integer index = previousNodes.get(node.plugin);
+			matchedNodes[n] = index == null ? -1 : index;
+
+			if (index == null) {
+				continue;
+			}
+
+			PlanNode previousNode = previous.nodes[index];
+			boolean[] matched = new boolean[node.inputNames.length];
+			matchedInputs[n] = new int[node.inputNames.length];
+			Arrays.fill(matchedInputs[n], -1);
+
+			for (int j = 0; j < previousNode.inputNames.length; j++) {
+				int i = node.findInput(previousNode, j, matched);
+
+				if (i < 0) {
+					continue;
+				}
+
+				matched[i] = true;
+				matchedInputs[n][i] = j;
+
+				for (int b = 0; b < node.inputDelays[i]; b++) {
+					if (precision == SamplePrecision.FLOAT) {
+						node.floatDelayLines[i][b] = new float[blockSize];
+					} else {
+						node.delayLines[i][b] = new double[blockSize];
+					}
+				}
+			}
+		}
+
+		statePlan = previous;
+		stateNodes = matchedNodes;
+		stateInputs = matchedInputs;
+	}
+
+	/**
+	 * Takes over the state which has been prepared by
+	 * {@link #prepareStateTransfer(ExecutionPlan, int)}. Must be called by
+	 * the thread which executes the plans before the first block of this
+	 * plan, while the previous plan isn't executed. Doesn't allocate any
+	 * memory. Calling it again has no effect.
+	 */
+	public void transferState() {
+
+		ExecutionPlan previous = statePlan;
+
+		if (previous == null) {
+			return;
+		}
+
+		statePlan = null;
+
+		for (int n = 0; n < nodes.length; n++) {
+			if (stateNodes[n] < 0) {
+				continue;
+			}
+
+			PlanNode node = nodes[n];
+			PlanNode previousNode = previous.nodes[stateNodes[n]];
+
+			for (int i = 0; i < node.inputNames.length; i++) {
+				int j = stateInputs[n][i];
+
+				if (j >= 0) {
+					transferInput(node, i, previousNode, j);
+				}
+			}
+
+			if (node.context != null && previousNode.context != null) {
+				node.context.takeSmoothing(previousNode.context);
+			}
+
+			node.mixer.takeState(previousNode.mixer);
+			node.allocatedBytes = previousNode.allocatedBytes;
+			node.silentSamples = previousNode.silentSamples;
+			node.idle = previousNode.idle;
+			node.suspended = previousNode.suspended;
+		}
+	}
+
+	private void transferInput(PlanNode node, int input, PlanNode previousNode, int previousInput) {
+
+		for (int b = 0; b < node.inputDelays[input]; b++) {
+			if (precision == SamplePrecision.FLOAT) {
+				copyBlock(previousNode.floatDelayLines[previousInput][b], node.floatDelayLines[input][b]);
+			} else {
+				copyBlock(previousNode.delayLines[previousInput][b], node.delayLines[input][b]);
+			}
+		}
+
+		node.delayPositions[input] = previousNode.delayPositions[previousInput];
+
+		if (node.compensations[input] > 0) {
+			if (precision == SamplePrecision.FLOAT) {
+				copyBlock(previousNode.floatCompensationLines[previousInput], node.floatCompensationLines[input]);
+			} else {
+				copyBlock(previousNode.compensationLines[previousInput], node.compensationLines[input]);
+			}
+
+			node.compensationPositions[input] = previousNode.compensationPositions[previousInput];
+		}
+	}
+
+	/**
+	 * Copies a block of a delay line. A block which hasn't been written yet
+	 * is silent.
+	 */
+	private static void copyBlock(@CheckForNull double[] source, double[] dest) {
+
+		if (source != null && source.length == dest.length) {
+			System.arraycopy(source, 0, dest, 0, dest.length);
+		}
+	}
+
+	/**
+	 * @see #copyBlock(double[], double[])
+	 */
+	private static void copyBlock(@CheckForNull float[] source, float[] dest) {
+
+		if (source != null && source.length == dest.length) {
+			System.arraycopy(source, 0, dest, 0, dest.length);
+		}
+	}
+
+	private Map<SigproPlugin, Integer> getNodeIndices() {
+
+		HashMap<SigproPlugin, Integer> indices = new HashMap<>();
+
+		for (int n = 0; n < nodes.length; n++) {
+			indices.put(nodes[n].plugin, n);
+		}
+
+		return indices;
+	}
+
+	/**
+	 * Checks if at least two chains of the step are expensive and one of
+	 * them may be forked.
+	 */
+	private boolean isParallel(PlanChain[] step, int forkStart) {
+
+		int expensive = 0;
+		boolean forkable = false;
+
+		for (int c = 0; c < step.length; c++) {
+			if (step[c].cost >= parallelThreshold) {
+				expensive++;
+				forkable |= c >= forkStart;
+			}
+		}
+
+		return expensive >= 2 && forkable;
+	}
+
+	private void processParallel(PlanChain[] step, int forkStart) {
+
+		AudioWorkerPool pool = AudioWorkerPool.getInstance();
+
+		for (int c = forkStart; c < step.length; c++) {
+			step[c].task.reinitialize();
+			pool.fork(step[c].task);
+		}
+
+		for (int c = 0; c < forkStart; c++) {
+			processChainTimed(step[c]);
+		}
+
+		for (int c = forkStart; c < step.length; c++) {
+			step[c].task.join();
+		}
+	}
+
+	private boolean isRealtimeSafe(int[] chain) {
+
+		for (int n : chain) {
+			if (!nodes[n].capabilities.isRealtimeSafe()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if instances of a plugin class which isn't thread safe are
+	 * contained in different groups of nodes.
+	 */
+	private boolean sharesUnsafePlugins(int[][] groups) {
+
+		HashMap<Class<?>, Integer> groupOfClass = new HashMap<>();
+
+		for (int g = 0; g < groups.length; g++) {
+			for (int n : groups[g]) {
+				if (nodes[n].capabilities.isThreadSafe()) {
+					continue;
+				}
+
+				Integer other = groupOfClass.put(nodes[n].plugin.getClass(), g);
+
+				if (other != null && other != g) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * The indices of the nodes of each stage, which ends before its border.
+	 */
+	private int[][] toStages(LinkedList<Integer> borders) {
+
+		int[][] stages = new int[borders.size()][];
+		int first = 0;
+		int s = 0;
+
+		for (int border : borders) {
+			stages[s] = new int[border - first];
+
+			for (int n = first; n < border; n++) {
+				stages[s][n - first] = n;
+			}
+
+			first = border;
+			s++;
+		}
+
+		return stages;
+	}
+
+	/**
+	 * Executes the chain and updates its cost estimation.
+	 */
+	void processChainTimed(PlanChain chain) {
+		long start = System.nanoTime();
+		processChain(chain);
+		chain.updateCost(System.nanoTime() - start);
+	}
+
+	private void processChain(PlanChain chain) {
+
+		for (int n : chain.nodeIndices) {
+			processNode(n, slotData);
+		}
+	}
+
+	/**
+	 * Clears the given slots and puts the input data into the input slot.
+	 */
+	void prepareSlots(PlanSlots slots, double[] inputData) {
+
+		slots.clear();
+		slots.blockSize = inputData.length;
+		slots.blockIndex = blockCount++;
+		takeEvents(slots);
+
+		if (inputSlot >= 0) {
+			slots.data[inputSlot] = inputData;
+		}
+	}
+
+	/**
+	 * Clears the given slots and puts the input data into the input slot.
+	 */
+	void prepareSlots(PlanSlots slots, float[] inputData) {
+
+		slots.clear();
+		slots.blockSize = inputData.length;
+		slots.blockIndex = blockCount++;
+		takeEvents(slots);
+
+		if (inputSlot >= 0) {
+			slots.floatData[inputSlot] = inputData;
+		}
+	}
+
+	private void takeEvents(PlanSlots slots) {
+
+		ControlEventQueue queue = eventQueue;
+
+		if (queue != null) {
+			queue.drain(slots.events, slots.blockSize);
+		} else {
+			slots.events.clear();
+		}
+	}
+
+	/**
+	 * Provides the data of the output slot of the given slots.
+	 */
+	@CheckForNull
+	double[] getOutputData(PlanSlots slots) {
+		return outputSlot < 0 ? null : slots.data[outputSlot];
+	}
+
+	/**
+	 * Provides the data of the output slot of the given slots.
+	 */
+	@CheckForNull
+	float[] getFloatOutputData(PlanSlots slots) {
+		return outputSlot < 0 ? null : slots.floatData[outputSlot];
+	}
+
+	/**
+	 * Writes the current data of the source slots of the delayed inputs of
+	 * the given node into their delay lines. Must be called after all nodes
+	 * which read these delay lines have been executed for the current block.
+	 * A source without data within this block is recorded as silence, so a
+	 * feedback loop keeps running.
+	 */
+	void updateDelayLines(int index, PlanSlots slots) {
+
+		PlanNode node = nodes[index];
+
+		if (!node.delayed || !isExecuted(node, slots)) {
+			return;
+		}
+
+		for (int i = 0; i < node.inputDelays.length; i++) {
+			if (node.inputDelays[i] == 0) {
+				continue;
+			}
+
+			if (precision == SamplePrecision.FLOAT) {
+				float[] line = node.getFloatDelayedData(i, slots.blockSize);
+				float[] sourceData = slots.floatData[node.inputSourceSlots[i]];
+
+				if (sourceData != null && sourceData.length == line.length) {
+					System.arraycopy(sourceData, 0, line, 0, line.length);
+				} else {
+					Arrays.fill(line, 0.0f);
+				}
+			} else {
+				double[] line = node.getDelayedData(i, slots.blockSize);
+				double[] sourceData = slots.data[node.inputSourceSlots[i]];
+
+				if (sourceData != null && sourceData.length == line.length) {
+					System.arraycopy(sourceData, 0, line, 0, line.length);
+				} else {
+					Arrays.fill(line, 0.0);
+				}
+			}
+
+			node.delayPositions[i] = (node.delayPositions[i] + 1) % node.inputDelays[i];
+		}
+	}
+
+	/**
+	 * Executes one node. The input data is taken from the given slots and the
+	 * output data is written to them. A sample of the invocations is timed
+	 * and recorded in the {@link plugins.sigproplugins.PluginTiming} of the
+	 * plugin. The {@link plugins.sigproplugins.PluginControls} of the plugin
+	 * are applied, a node with default controls is processed without any
+	 * additional work.
+	 */
+	void processNode(int index, PlanSlots slots) {
+
+		PlanNode node = nodes[index];
+
+		collectEvents(node, slots);
+
+		if (!isExecuted(node, slots)) {
+			collectInputs(node, slots);
+			return;
+		}
+
+		readInputs(node, slots);
+
+		NodeMixer mixer = node.mixer;
+		mixer.update();
+
+		if (bypassOptional && node.optional) {
+			applyEvents(node);
+			bypassNode(node, slots);
+		} else if (mixer.isNeutral()) {
+			processPlugin(node, slots);
+		} else if (mixer.isBypassed()) {
+			suspend(node);
+			bypassNode(node, slots);
+		} else if (mixer.isMuted()) {
+			suspend(node);
+			silenceNode(node, slots);
+		} else {
+			mixNode(node, slots);
+		}
+	}
+
+	private void processPlugin(PlanNode node, PlanSlots slots) {
+
+		if (node.suspended) {
+			node.suspended = false;
+			resetPlugin(node);
+		}
+
+		if (isIdle(node, slots.blockSize)) {
+			applyEvents(node);
+			silenceNode(node, slots);
+		} else if (--node.timingCountdown > 0) {
+			invokePlugin(node, slots);
+		} else {
+			node.timingCountdown = TIMING_INTERVAL;
+
+			long start = System.nanoTime();
+			invokePlugin(node, slots);
+			node.plugin.getTiming().record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Resets a plugin which hasn't been called for a while. Stateless
+	 * plugins have nothing to reset.
+	 */
+	private void resetPlugin(PlanNode node) {
+
+		if (!node.capabilities.isStateless()) {
+			node.plugin.reset();
+		}
+	}
+
+	/**
+	 * Marks a node whose plugin isn't called due to its controls.
+	 */
+	private void suspend(PlanNode node) {
+		applyEvents(node);
+		node.suspended = true;
+	}
+
+	/**
+	 * Processes a node while its controls fade or mix the processed with the
+	 * dry signal. The plugin isn't called once it is completely dry. Every
+	 * output gets the mix in its own buffer, because the readers of the
+	 * outputs may modify it.
+	 */
+	private void mixNode(PlanNode node, PlanSlots slots) {
+
+		NodeMixer mixer = node.mixer;
+		int blockSize = slots.blockSize;
+		boolean dry = mixer.isDry();
+
+		if (precision == SamplePrecision.FLOAT) {
+			mixer.setDry(getFirstFloatInput(node), blockSize);
+		} else {
+			mixer.setDry(getFirstInput(node), blockSize);
+		}
+
+		if (dry) {
+			suspend(node);
+		} else {
+			processPlugin(node, slots);
+		}
+
+		mixer.advance(blockSize);
+
+		for (int o = 0; o < node.outputSlots.length; o++) {
+			if (precision == SamplePrecision.FLOAT) {
+				if (node.floatBypassBuffers[o] == null || node.floatBypassBuffers[o].length != blockSize) {
+					node.floatBypassBuffers[o] = new float[blockSize];
+				}
+				mixer.mix(dry ? null : slots.floatData[node.outputSlots[o]], node.floatBypassBuffers[o], blockSize);
+				slots.floatData[node.outputSlots[o]] = node.floatBypassBuffers[o];
+			} else {
+				if (node.bypassBuffers[o] == null || node.bypassBuffers[o].length != blockSize) {
+					node.bypassBuffers[o] = new double[blockSize];
+				}
+				mixer.mix(dry ? null : slots.data[node.outputSlots[o]], node.bypassBuffers[o], blockSize);
+				slots.data[node.outputSlots[o]] = node.bypassBuffers[o];
+			}
+		}
+	}
+
+	@CheckForNull
+	private double[] getFirstInput(PlanNode node) {
+
+		for (double[] data : node.currentInputs) {
+			if (data != null) {
+				return data;
+			}
+		}
+
+		return null;
+	}
+
+	@CheckForNull
+	private float[] getFirstFloatInput(PlanNode node) {
+
+		for (float[] data : node.floatCurrentInputs) {
+			if (data != null) {
+				return data;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Passes the control events of the block which belong to the node to its
+	 * context. The offsets of a node with a rate divisor are converted to its
+	 * rate, the events of all blocks until its execution are collected.
+	 * Plugins without a context get new parameter values immediately and
+	 * can't receive triggers.
+	 */
+	private void collectEvents(PlanNode node, PlanSlots slots) {
+
+		BlockEvents events = slots.events;
+
+		for (int e = 0; e < events.count; e++) {
+			int id;
+
+			if (events.types[e] == ControlEventType.TRIGGER) {
+				if (events.targets[e] != node.plugin) {
+					continue;
+				}
+				id = events.ids[e];
+			} else {
+				id = indexOfParameter(node, events.targets[e]);
+
+				if (id < 0) {
+					// The mix is applied by the node itself
+					if (events.targets[e] == node.controls.getMix()) {
+						node.controls.getMix().setValue(events.values[e]);
+					}
+					continue;
+				}
+			}
+
+			if (node.context == null) {
+				if (events.types[e] == ControlEventType.PARAMETER) {
+					node.parameters[id].setValue(events.values[e]);
+				}
+			} else {
+				int offset = (int) ((slots.blockIndex % node.rateDivisor) * slots.blockSize + events.offsets[e])
+						/ node.rateDivisor;
+
+				// Beyond the capacity the event is dropped like the events of
+				// a full block
+				node.context.addEvent(offset, events.types[e], id, events.values[e]);
+			}
+		}
+	}
+
+	private int indexOfParameter(PlanNode node, Object parameter) {
+
+		for (int p = 0; p < node.parameters.length; p++) {
+			if (node.parameters[p] == parameter) {
+				return p;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Sets the parameter events of a node which isn't processed within this
+	 * block. Its triggers are dropped.
+	 */
+	private void applyEvents(PlanNode node) {
+
+		if (node.context != null) {
+			node.context.applyEvents();
+		}
+	}
+
+	/**
+	 * Checks if the node is executed within the current block. A node with a
+	 * rate divisor of n is executed with the last of every n blocks, so the
+	 * decimated data of its inputs is complete.
+	 */
+	private boolean isExecuted(PlanNode node, PlanSlots slots) {
+		return node.rateDivisor == 1 || slots.blockIndex % node.rateDivisor == node.rateDivisor - 1;
+	}
+
+	/**
+	 * Passes the data of faster sources to the rate converters of a node
+	 * which isn't executed within the current block.
+	 */
+	private void collectInputs(PlanNode node, PlanSlots slots) {
+
+		for (int i = 0; i < node.converters.length; i++) {
+			RateConverter converter = node.converters[i];
+
+			if (converter == null) {
+				continue;
+			}
+
+			if (precision == SamplePrecision.FLOAT) {
+				float[] data = slots.floatData[node.inputSourceSlots[i]];
+				if (data != null) {
+					converter.write(data);
+				}
+			} else {
+				double[] data = slots.data[node.inputSourceSlots[i]];
+				if (data != null) {
+					converter.write(data);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the data of all inputs of the node for the current block. Every
+	 * input must be read exactly once per execution of the node, so its
+	 * delay line, converter and compensation keep running.
+	 */
+	private void readInputs(PlanNode node, PlanSlots slots) {
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			if (precision == SamplePrecision.FLOAT) {
+				node.floatCurrentInputs[i] = getInputData(node, i, slots.floatData, slots.blockSize);
+			} else {
+				node.currentInputs[i] = getInputData(node, i, slots.data, slots.blockSize);
+			}
+		}
+	}
+
+	/**
+	 * Updates the silence counter of the node with its current inputs. An
+	 * input without data counts as silent.
+	 * 
+	 * @return true if the inputs have been silent for longer than the tail
+	 *         of the plugin and the hold time before the current block.
+	 */
+	private boolean isIdle(PlanNode node, int blockSize) {
+
+		double threshold = silenceThreshold;
+
+		// Events must be processed by the plugin, e.g. a trigger of a
+		// generator
+		if (node.tailLength < 0 || threshold < 0 || node.context != null && node.context.getEventCount() > 0) {
+			wakeUp(node);
+			return false;
+		}
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			boolean silent;
+
+			if (precision == SamplePrecision.FLOAT) {
+				float[] data = node.floatCurrentInputs[i];
+				silent = data == null || DspKernels.isSilent(data, data.length, threshold);
+			} else {
+				double[] data = node.currentInputs[i];
+				silent = data == null || DspKernels.isSilent(data, data.length, threshold);
+			}
+
+			if (!silent) {
+				wakeUp(node);
+				return false;
+			}
+		}
+
+		// The hold time is given at the device rate
+		node.idle = node.silentSamples >= node.tailLength + silenceHold / node.rateDivisor;
+		node.silentSamples += blockSize;
+
+		return node.idle;
+	}
+
+	/**
+	 * Resets the silence counter of the node. A plugin which has been idle is
+	 * reset, because it hasn't processed the silence, which would have
+	 * cleared its state.
+	 */
+	private void wakeUp(PlanNode node) {
+
+		node.silentSamples = 0;
+
+		if (node.idle) {
+			node.idle = false;
+			resetPlugin(node);
+		}
+	}
+
+	/**
+	 * Writes silence to all outputs of an idle node. The buffers are cleared
+	 * with every block, because the readers of the outputs may modify them.
+	 */
+	private void silenceNode(PlanNode node, PlanSlots slots) {
+
+		for (int o = 0; o < node.outputSlots.length; o++) {
+			if (precision == SamplePrecision.FLOAT) {
+				if (node.floatBypassBuffers[o] == null || node.floatBypassBuffers[o].length != slots.blockSize) {
+					node.floatBypassBuffers[o] = new float[slots.blockSize];
+				} else {
+					Arrays.fill(node.floatBypassBuffers[o], 0.0f);
+				}
+				slots.floatData[node.outputSlots[o]] = node.floatBypassBuffers[o];
+			} else {
+				if (node.bypassBuffers[o] == null || node.bypassBuffers[o].length != slots.blockSize) {
+					node.bypassBuffers[o] = new double[slots.blockSize];
+				} else {
+					Arrays.fill(node.bypassBuffers[o], 0.0);
+				}
+				slots.data[node.outputSlots[o]] = node.bypassBuffers[o];
+			}
+		}
+	}
+
+	private void invokePlugin(PlanNode node, PlanSlots slots) {
+
+		if (node.context != null) {
+			processJoinedNode(node, slots);
+		} else if (precision == SamplePrecision.FLOAT) {
+			processFloatNode(node, slots.floatData);
+		} else {
+			processDoubleNode(node, slots.data);
+		}
+	}
+
+	/**
+	 * Passes the data of the first input with data to all outputs of the
+	 * node. The first output takes over the array if the node owns it, see
+	 * {@link PlanNode#inputsOwned}. The other outputs get their own copy,
+	 * because the readers of the outputs may modify it.
+	 */
+	private void bypassNode(PlanNode node, PlanSlots slots) {
+
+		boolean bypassed = false;
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			if (precision == SamplePrecision.FLOAT) {
+				float[] sourceData = node.floatCurrentInputs[i];
+
+				if (sourceData == null || bypassed) {
+					continue;
+				}
+
+				for (int o = 0; o < node.outputSlots.length; o++) {
+					if (o == 0 && node.inputsOwned[i]) {
+						slots.floatData[node.outputSlots[o]] = sourceData;
+						continue;
+					}
+
+					if (node.floatBypassBuffers[o] == null || node.floatBypassBuffers[o].length != sourceData.length) {
+						node.floatBypassBuffers[o] = new float[sourceData.length];
+					}
+					System.arraycopy(sourceData, 0, node.floatBypassBuffers[o], 0, sourceData.length);
+					slots.floatData[node.outputSlots[o]] = node.floatBypassBuffers[o];
+				}
+			} else {
+				double[] sourceData = node.currentInputs[i];
+
+				if (sourceData == null || bypassed) {
+					continue;
+				}
+
+				for (int o = 0; o < node.outputSlots.length; o++) {
+					if (o == 0 && node.inputsOwned[i]) {
+						slots.data[node.outputSlots[o]] = sourceData;
+						continue;
+					}
+
+					if (node.bypassBuffers[o] == null || node.bypassBuffers[o].length != sourceData.length) {
+						node.bypassBuffers[o] = new double[sourceData.length];
+					}
+					System.arraycopy(sourceData, 0, node.bypassBuffers[o], 0, sourceData.length);
+					slots.data[node.outputSlots[o]] = node.bypassBuffers[o];
+				}
+			}
+
+			bypassed = true;
+		}
+	}
+
+	/**
+	 * The data of an input of the node within the current block. Delayed
+	 * inputs are read from their delay line, inputs from a different rate are
+	 * converted and compensated inputs are delayed into a buffer of the
+	 * node.
+	 * 
+	 * @return the data or null if the source hasn't provided data within
+	 *         this block
+	 */
+	@CheckForNull
+	private double[] getInputData(PlanNode node, int input, double[][] slots, int blockSize) {
+
+		if (node.inputDelays[input] > 0) {
+			return node.getDelayedData(input, blockSize);
+		}
+
+		double[] data = slots[node.inputSourceSlots[input]];
+
+		if (node.converters[input] != null) {
+			if (data != null) {
+				node.converters[input].write(data);
+			}
+			data = node.converters[input].read();
+		}
+
+		if (data != null && node.compensations[input] > 0) {
+			return node.compensate(input, data);
+		}
+
+		return data;
+	}
+
+	/**
+	 * @see #getInputData(PlanNode, int, double[][], int)
+	 */
+	@CheckForNull
+	private float[] getInputData(PlanNode node, int input, float[][] slots, int blockSize) {
+
+		if (node.inputDelays[input] > 0) {
+			return node.getFloatDelayedData(input, blockSize);
+		}
+
+		float[] data = slots[node.inputSourceSlots[input]];
+
+		if (node.converters[input] != null) {
+			if (data != null) {
+				node.converters[input].write(data);
+			}
+			data = node.converters[input].readFloat();
+		}
+
+		if (data != null && node.compensations[input] > 0) {
+			return node.compensate(input, data);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Collects the data of all inputs in the context of the node and calls
+	 * the plugin once. The outputs of the context are passed to the readers.
+	 * Plugins without a context are called with putData for every input.
+	 */
+	private void processJoinedNode(PlanNode node, PlanSlots slots) {
+
+		ProcessContext context = node.context;
+		context.setBlockSize(slots.blockSize);
+		context.clearInputs();
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			if (precision == SamplePrecision.FLOAT) {
+				if (node.floatCurrentInputs[i] != null) {
+					context.join(node.inputPorts[i], node.floatCurrentInputs[i]);
+				}
+			} else if (node.currentInputs[i] != null) {
+				context.join(node.inputPorts[i], node.currentInputs[i]);
+			}
+		}
+
+		context.silenceMissingInputs();
+		context.updateParameters();
+
+		long allocated = startAllocationCheck();
+		node.plugin.process(context);
+		finishAllocationCheck(node, allocated);
+		context.clearEvents();
+
+		for (int o = 0; o < node.outputSlots.length; o++) {
+			if (precision == SamplePrecision.FLOAT) {
+				slots.floatData[node.outputSlots[o]] = context.floatOutputs[node.outputPorts[o]];
+			} else {
+				slots.data[node.outputSlots[o]] = context.outputs[node.outputPorts[o]];
+			}
+		}
+	}
+
+	/**
+	 * Reads the allocation counter before a plugin call.
+	 * 
+	 * @return the allocated bytes of the current thread or -1 if the check is
+	 *         disabled.
+	 */
+	private long startAllocationCheck() {
+		return allocationCheck ? AllocationCheck.getAllocatedBytes() : -1;
+	}
+
+	/**
+	 * Records the first allocation of the plugin of the node, see
+	 * {@link #getAllocationReport()}.
+	 */
+	private void finishAllocationCheck(PlanNode node, long start) {
+
+		if (start < 0 || node.allocatedBytes > 0) {
+			return;
+		}
+
+		long bytes = AllocationCheck.getAllocatedBytes() - start - AllocationCheck.OVERHEAD;
+
+		if (bytes > 0) {
+			node.allocatedBytes = bytes;
+		}
+	}
+
+	private void processDoubleNode(PlanNode node, double[][] slots) {
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			double[] sourceData = node.currentInputs[i];
+
+			if (sourceData == null) {
+				continue;
+			}
+
+			double[] buffer;
+
+			// A compensated input is already a buffer of the node
+			if (node.inputCopies[i] && node.compensations[i] == 0) {
+				if (node.inputBuffers[i] == null || node.inputBuffers[i].length != sourceData.length) {
+					node.inputBuffers[i] = new double[sourceData.length];
+				}
+				buffer = node.inputBuffers[i];
+				System.arraycopy(sourceData, 0, buffer, 0, sourceData.length);
+			} else {
+				buffer = sourceData;
+			}
+
+			long allocated = startAllocationCheck();
+			LinkedList<OutputDataWrapper> outputData = node.plugin.putData(node.inputNames[i], buffer);
+			finishAllocationCheck(node, allocated);
+
+			if (outputData != null) {
+				for (OutputDataWrapper output : outputData) {
+					int slot = node.getOutputSlot(output.getOutputInfo().getSourceOutput());
+
+					if (slot >= 0) {
+						slots[slot] = output.getOutputData();
+					}
+				}
+			}
+		}
+	}
+
+	private void processFloatNode(PlanNode node, float[][] slots) {
+
+		for (int i = 0; i < node.inputNames.length; i++) {
+			float[] sourceData = node.floatCurrentInputs[i];
+
+			if (sourceData == null) {
+				continue;
+			}
+
+			float[] buffer;
+
+			if (node.inputCopies[i] && node.compensations[i] == 0) {
+				if (node.floatInputBuffers[i] == null || node.floatInputBuffers[i].length != sourceData.length) {
+					node.floatInputBuffers[i] = new float[sourceData.length];
+				}
+				buffer = node.floatInputBuffers[i];
+				System.arraycopy(sourceData, 0, buffer, 0, sourceData.length);
+			} else {
+				buffer = sourceData;
+			}
+
+			long allocated = startAllocationCheck();
+			LinkedList<OutputDataWrapper> outputData = node.plugin.putFloatData(node.inputNames[i], buffer);
+			finishAllocationCheck(node, allocated);
+
+			if (outputData != null) {
+				for (OutputDataWrapper output : outputData) {
+					int slot = node.getOutputSlot(output.getOutputInfo().getSourceOutput());
+
+					if (slot >= 0) {
+						slots[slot] = output.getFloatOutputData();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package channel.dataflow;
+
+import java.util.Arrays;
+
+import plugins.sigproplugins.PluginControls;
+
+/**
+ * Applies the {@link PluginControls} of one node. The processed (wet) and
+ * the dry signal are mixed with a linear fade, so a change of the controls
+ * doesn't click. A node whose controls are at their defaults is passed
+ * without any work.
+ * 
+ * @author roland
+ *
+ */
+class NodeMixer {
+
+	private final PluginControls controls;
+	private final int fadeLength;
+
+	// The ratio of the wet signal and the output level at the end of the
+	// last block, and the ramps towards the requested values
+	private double effect;
+	private double effectTarget;
+	private double effectStep = 0;
+	private int effectRemaining = 0;
+	private double level;
+	private double levelTarget;
+	private double levelStep = 0;
+	private int levelRemaining = 0;
+
+	// The gains of the current block
+	private double[] effectGains = new double[0];
+	private double[] levelGains = new double[0];
+
+	// Copy of the dry signal, because the plugin may modify its inputs
+	private double[] dry = new double[0];
+	private float[] floatDry = new float[0];
+
+	/**
+	 * Creates a mixer which starts at the current state of the controls.
+	 * 
+	 * @param sampleRate
+	 *            The sample rate of the node.
+	 */
+	NodeMixer(PluginControls controls, int sampleRate) {
+		this.controls = controls;
+		this.fadeLength = Math.max(1, (int) Math.round(PluginControls.CROSSFADE_TIME * sampleRate));
+		this.effect = controls.getEffectAmount();
+		this.effectTarget = effect;
+		this.level = controls.getLevel();
+		this.levelTarget = level;
+	}
+
+	/**
+	 * Continues the fades of the mixer of the same plugin in the plan which
+	 * is replaced by a new plan.
+	 */
+	void takeState(NodeMixer previous) {
+		effect = previous.effect;
+		effectTarget = previous.effectTarget;
+		effectStep = previous.effectStep;
+		effectRemaining = previous.effectRemaining;
+		level = previous.level;
+		levelTarget = previous.levelTarget;
+		levelStep = previous.levelStep;
+		levelRemaining = previous.levelRemaining;
+	}
+
+	/**
+	 * Reads the controls and starts a fade if they have changed.
+	 */
+	void update() {
+
+		double effectAmount = controls.getEffectAmount();
+		double outputLevel = controls.getLevel();
+
+		if (effectAmount != effectTarget) {
+			effectTarget = effectAmount;
+			effectStep = (effectTarget - effect) / fadeLength;
+			effectRemaining = fadeLength;
+		}
+
+		if (outputLevel != levelTarget) {
+			levelTarget = outputLevel;
+			levelStep = (levelTarget - level) / fadeLength;
+			levelRemaining = fadeLength;
+		}
+	}
+
+	/**
+	 * @return true if the outputs of the plugin are passed unchanged.
+	 */
+	boolean isNeutral() {
+		return effectRemaining == 0 && levelRemaining == 0 && effect == 1.0 && level == 1.0;
+	}
+
+	/**
+	 * @return true if the node is completely bypassed with full level.
+	 */
+	boolean isBypassed() {
+		return effectRemaining == 0 && levelRemaining == 0 && effect == 0.0 && level == 1.0;
+	}
+
+	/**
+	 * @return true if the fade to the wet signal has finished, so the plugin
+	 *         doesn't need to be called.
+	 */
+	boolean isDry() {
+		return effectRemaining == 0 && effect == 0.0;
+	}
+
+	/**
+	 * @return true if the node is completely muted.
+	 */
+	boolean isMuted() {
+		return levelRemaining == 0 && level == 0.0;
+	}
+
+	/**
+	 * Keeps a copy of the dry signal of the current block.
+	 * 
+	 * @param data
+	 *            The data of the first input or null if no input has data.
+	 */
+	void setDry(double[] data, int blockSize) {
+
+		if (dry.length != blockSize) {
+			dry = new double[blockSize];
+		}
+
+		if (data == null || data.length != blockSize) {
+			Arrays.fill(dry, 0.0);
+		} else {
+			System.arraycopy(data, 0, dry, 0, blockSize);
+		}
+	}
+
+	/**
+	 * @see #setDry(double[], int)
+	 */
+	void setDry(float[] data, int blockSize) {
+
+		if (floatDry.length != blockSize) {
+			floatDry = new float[blockSize];
+		}
+
+		if (data == null || data.length != blockSize) {
+			Arrays.fill(floatDry, 0.0f);
+		} else {
+			System.arraycopy(data, 0, floatDry, 0, blockSize);
+		}
+	}
+
+	/**
+	 * Calculates the gains of the current block. Must be called once per
+	 * block before the outputs are mixed.
+	 */
+	void advance(int blockSize) {
+
+		if (effectGains.length != blockSize) {
+			effectGains = new double[blockSize];
+			levelGains = new double[blockSize];
+		}
+
+		effectRemaining = ramp(effectGains, blockSize, effect, effectStep, effectRemaining, effectTarget);
+		effect = effectGains[blockSize - 1];
+		levelRemaining = ramp(levelGains, blockSize, level, levelStep, levelRemaining, levelTarget);
+		level = levelGains[blockSize - 1];
+	}
+
+	/**
+	 * Writes the ramp from the value towards the target into the gains.
+	 * 
+	 * @return the remaining number of samples of the ramp
+	 */
+	private static int ramp(double[] gains, int blockSize, double value, double step, int remaining,
+			double target) {
+
+		if (remaining == 0) {
+			Arrays.fill(gains, 0, blockSize, value);
+			return 0;
+		}
+
+		for (int k = 0; k < blockSize; k++) {
+			if (remaining > 0) {
+				remaining--;
+				value = remaining == 0 ? target : value + step;
+			}
+			gains[k] = value;
+		}
+
+		return remaining;
+	}
+
+	/**
+	 * Mixes the wet signal of one output with the dry signal.
+	 * 
+	 * @param wet
+	 *            The data of the output or null if the plugin hasn't provided
+	 *            data.
+	 * @param output
+	 *            Receives the mixed data. May be the wet array.
+	 */
+	void mix(double[] wet, double[] output, int blockSize) {
+
+		if (wet == null || wet.length != blockSize) {
+			for (int k = 0; k < blockSize; k++) {
+				output[k] = levelGains[k] * (1.0 - effectGains[k]) * dry[k];
+			}
+		} else {
+			for (int k = 0; k < blockSize; k++) {
+				output[k] = levelGains[k] * (effectGains[k] * wet[k] + (1.0 - effectGains[k]) * dry[k]);
+			}
+		}
+	}
+
+	/**
+	 * @see #mix(double[], double[], int)
+	 */
+	void mix(float[] wet, float[] output, int blockSize) {
+
+		if (wet == null || wet.length != blockSize) {
+			for (int k = 0; k < blockSize; k++) {
+				output[k] = (float) (levelGains[k] * (1.0 - effectGains[k])) * floatDry[k];
+			}
+		} else {
+			for (int k = 0; k < blockSize; k++) {
+				output[k] = (float) (levelGains[k] * (effectGains[k] * wet[k] + (1.0 - effectGains[k]) * floatDry[k]));
+			}
+		}
+	}
+}
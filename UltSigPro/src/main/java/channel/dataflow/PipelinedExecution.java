@@ -0,0 +1,280 @@
+package channel.dataflow;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import logging.CommonLogger;
+
+/**
+ * Pipelined execution of an {@link ExecutionPlan}. The nodes of the plan are
+ * split into stages which are executed on different workers of the
+ * {@link AudioWorkerPool}. While one stage processes a block, the previous
+ * stage can already process the next block. Blocks are handed over between
+ * the stages with lock free {@link SpscRing}s.<br/>
+ * <br/>
+ * Every stage may take up to one block period, so the output is delayed by
+ * up to one block per additional stage.
+ * 
+ * @author roland
+ *
+ */
+public class PipelinedExecution {
+
+	/**
+	 * Receives the processed blocks of a pipeline.
+	 */
+	public interface BlockListener {
+
+		/**
+		 * Called by the last stage for every processed block. The data is
+		 * only valid within this call. Depending on the
+		 * {@link SamplePrecision} of the plan, either data or floatData is
+		 * set.
+		 * 
+		 * @param data
+		 *            The data at the channel output. Can be null if the
+		 *            output wasn't reached.
+		 * @param floatData
+		 *            The data at the channel output. Can be null if the
+		 *            output wasn't reached.
+		 * @param submitTime
+		 *            The {@link System#nanoTime()} which was passed to
+		 *            {@link PipelinedExecution#submit(double[], long)} for this
+		 *            block.
+		 */
+		void blockProcessed(double[] data, float[] floatData, long submitTime);
+	}
+
+	private final ExecutionPlan plan;
+	private final BlockListener listener;
+	private final Stage[] stages;
+
+	private final SpscRing<Frame> freeFrames;
+	private final AtomicInteger framesInFlight = new AtomicInteger();
+
+	PipelinedExecution(ExecutionPlan plan, int[][] stageNodes, int[][] boundarySlots, int slotCount,
+			BlockListener listener) {
+		this.plan = plan;
+		this.listener = listener;
+
+		// Every stage can work on one frame while one frame waits in front
+		// of every stage.
+		int frameCount = 2 * stageNodes.length;
+
+		stages = new Stage[stageNodes.length];
+		for (int s = stages.length - 1; s >= 0; s--) {
+			stages[s] = new Stage(stageNodes[s], boundarySlots[s], frameCount,
+					s == stages.length - 1 ? null : stages[s + 1]);
+		}
+
+		freeFrames = new SpscRing<>(frameCount);
+		for (int i = 0; i < frameCount; i++) {
+			freeFrames.offer(new Frame(slotCount));
+		}
+	}
+
+	/**
+	 * Puts a new block into the first stage. Must always be called by the
+	 * same thread. Must only be used for plans with
+	 * {@link SamplePrecision#DOUBLE}.
+	 * 
+	 * @param inputData
+	 *            The data of the channel input. Must not be null and must not
+	 *            be modified afterwards.
+	 * @param submitTime
+	 *            A timestamp which is passed to the {@link BlockListener}
+	 *            together with the processed block.
+	 * @return true if the block was accepted, false if all frames are in use
+	 *         because the pipeline doesn't keep up.
+	 */
+	public boolean submit(@Nonnull double[] inputData, long submitTime) {
+		Frame frame = freeFrames.poll();
+
+		if (frame == null) {
+			return false;
+		}
+
+		plan.prepareSlots(frame.slots, inputData);
+		frame.submitTime = submitTime;
+		framesInFlight.incrementAndGet();
+
+		stages[0].input.offer(frame);
+		stages[0].schedule();
+
+		return true;
+	}
+
+	/**
+	 * Single precision variant of {@link #submit(double[], long)}. Must only
+	 * be used for plans with {@link SamplePrecision#FLOAT}.
+	 * 
+	 * @param inputData
+	 *            The data of the channel input. Must not be null. The data is
+	 *            copied into a buffer of the pipeline, so the caller can reuse
+	 *            its conversion buffer for the next block.
+	 * @param submitTime
+	 *            A timestamp which is passed to the {@link BlockListener}
+	 *            together with the processed block.
+	 * @return true if the block was accepted, false if all frames are in use
+	 *         because the pipeline doesn't keep up.
+	 */
+	public boolean submit(@Nonnull float[] inputData, long submitTime) {
+		Frame frame = freeFrames.poll();
+
+		if (frame == null) {
+			return false;
+		}
+
+		if (frame.floatInput == null || frame.floatInput.length != inputData.length) {
+			frame.floatInput = new float[inputData.length];
+		}
+
+		System.arraycopy(inputData, 0, frame.floatInput, 0, inputData.length);
+		plan.prepareSlots(frame.slots, frame.floatInput);
+		frame.submitTime = submitTime;
+		framesInFlight.incrementAndGet();
+
+		stages[0].input.offer(frame);
+		stages[0].schedule();
+
+		return true;
+	}
+
+	/**
+	 * Checks if all submitted blocks have passed the plugins of the pipeline.
+	 * 
+	 * @return true if no stage is working on a block.
+	 */
+	public boolean isIdle() {
+		return framesInFlight.get() == 0;
+	}
+
+	/**
+	 * The number of stages of this pipeline.
+	 * 
+	 * @return the number of stages
+	 */
+	public int getStageCount() {
+		return stages.length;
+	}
+
+	/**
+	 * The additional latency of the pipeline compared to the serial
+	 * execution.
+	 * 
+	 * @return the latency in blocks
+	 */
+	public int getLatencyBlocks() {
+		return stages.length - 1;
+	}
+
+	private static class Frame {
+
+		private final PlanSlots slots;
+		// Copies of the slots which are passed to a later stage
+		private final PlanSlots ownedSlots;
+		// The channel input of single precision blocks
+		private float[] floatInput;
+		private long submitTime;
+
+		private Frame(int slotCount) {
+			slots = new PlanSlots(slotCount);
+			ownedSlots = new PlanSlots(slotCount);
+		}
+	}
+
+	private class Stage implements Runnable {
+
+		private final int[] nodeIndices;
+		private final int[] boundarySlots;
+		private final SpscRing<Frame> input;
+		private final Stage next;
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		private Stage(int[] nodeIndices, int[] boundarySlots, int capacity, Stage next) {
+			this.nodeIndices = nodeIndices;
+			this.boundarySlots = boundarySlots;
+			this.input = new SpscRing<>(capacity);
+			this.next = next;
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				AudioWorkerPool.getInstance().execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+
+			do {
+				Frame frame;
+
+				while ((frame = input.poll()) != null) {
+					process(frame);
+				}
+
+				scheduled.set(false);
+			} while (!input.isEmpty() && scheduled.compareAndSet(false, true));
+		}
+
+		private void process(Frame frame) {
+
+			try {
+				for (int n : nodeIndices) {
+					plan.processNode(n, frame.slots);
+				}
+
+				// Feedback loops are never split, so all readers of the
+				// delay lines of this stage are done
+				for (int n : nodeIndices) {
+					plan.updateDelayLines(n, frame.slots);
+				}
+			} catch (Exception ex) {
+				// The frame must be passed on anyway, otherwise it is lost
+				CommonLogger.getInstance().logException(ex);
+			}
+
+			// The plugins may reuse their output arrays for the next block,
+			// so data for later stages is copied into the frame.
+			for (int slot : boundarySlots) {
+				double[] data = frame.slots.data[slot];
+				float[] floatData = frame.slots.floatData[slot];
+
+				if (data != null) {
+					double[] owned = frame.ownedSlots.data[slot];
+					if (owned == null || owned.length != data.length) {
+						owned = new double[data.length];
+						frame.ownedSlots.data[slot] = owned;
+					}
+					System.arraycopy(data, 0, owned, 0, data.length);
+					frame.slots.data[slot] = owned;
+				}
+
+				if (floatData != null) {
+					float[] owned = frame.ownedSlots.floatData[slot];
+					if (owned == null || owned.length != floatData.length) {
+						owned = new float[floatData.length];
+						frame.ownedSlots.floatData[slot] = owned;
+					}
+					System.arraycopy(floatData, 0, owned, 0, floatData.length);
+					frame.slots.floatData[slot] = owned;
+				}
+			}
+
+			if (next == null) {
+				// The plugins are done with this block, only the listener
+				// is still working on it
+				framesInFlight.decrementAndGet();
+				listener.blockProcessed(plan.getOutputData(frame.slots), plan.getFloatOutputData(frame.slots),
+						frame.submitTime);
+				freeFrames.offer(frame);
+			} else {
+				next.input.offer(frame);
+				next.schedule();
+			}
+		}
+	}
+}
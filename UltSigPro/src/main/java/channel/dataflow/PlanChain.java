@@ -0,0 +1,47 @@
+package channel.dataflow;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A serial chain of plugin nodes within an {@link ExecutionPlan}. Chains of
+ * the same step don't depend on each other and can be executed in parallel.
+ * 
+ * @author roland
+ *
+ */
+class PlanChain {
+
+	final int[] nodeIndices;
+
+	// Exponential average of the execution time in nanoseconds
+	long cost = 0;
+
+	final ChainTask task;
+
+	PlanChain(int[] nodeIndices, ExecutionPlan plan) {
+		this.nodeIndices = nodeIndices;
+		this.task = new ChainTask(plan);
+	}
+
+	void updateCost(long nanos) {
+		cost += (nanos - cost) / 8;
+	}
+
+	/**
+	 * Reusable task which executes the chain on the {@link AudioWorkerPool}.
+	 */
+	@SuppressWarnings("serial")
+	class ChainTask extends RecursiveAction {
+
+		private final ExecutionPlan plan;
+
+		private ChainTask(ExecutionPlan plan) {
+			this.plan = plan;
+		}
+
+		@Override
+		protected void compute() {
+			plan.processChainTimed(PlanChain.this);
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package channel.dataflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import channel.OutputInfoWrapper;
+import plugins.sigproplugins.Parameter;
+import plugins.sigproplugins.PluginCapabilities;
+import plugins.sigproplugins.PluginControls;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * One plugin invocation within an {@link ExecutionPlan}. All ports and buffers
+ * are resolved by the {@link DataflowCompiler}, so the execution doesn't need
+ * any lookups.
+ * 
+ * @author roland
+ *
+ */
+class PlanNode {
+
+	final SigproPlugin plugin;
+	final PluginCapabilities capabilities;
+	final Parameter[] parameters;
+	final PluginControls controls;
+
+	// One entry per incoming connection
+	final OutputInfoWrapper[] inputSources;
+	final String[] inputNames;
+	final int[] inputSourceSlots;
+	// If an input isn't copied, the data of the source slot is passed through
+	// and the input buffer stays null
+	final boolean[] inputCopies;
+	// Inputs whose data isn't read by any other node, so a bypassed node can
+	// pass the array itself to its first output
+	final boolean[] inputsOwned;
+	final double[][] inputBuffers;
+	final float[][] floatInputBuffers;
+
+	// Delay in blocks per input. A delayed input reads from its delay line,
+	// which holds one block per delay step and starts with silence.
+	final int[] inputDelays;
+	final double[][][] delayLines;
+	final float[][][] floatDelayLines;
+	final int[] delayPositions;
+	final boolean delayed;
+
+	// Latency compensation per input in samples. A compensated input is
+	// delayed into a buffer of the node, so its path is aligned with the
+	// slowest path to this node.
+	final int[] compensations;
+	final double[][] compensationLines;
+	final float[][] floatCompensationLines;
+	final int[] compensationPositions;
+	final double[][] compensationBuffers;
+	final float[][] floatCompensationBuffers;
+
+	// Sample rate conversion per input. Null for inputs with the same rate
+	// as their source.
+	final RateConverter[] converters;
+	// The node is executed every rateDivisor blocks
+	final int rateDivisor;
+
+	// One entry per output which is connected to another plugin
+	final String[] outputNames;
+	final int[] outputSlots;
+
+	// The inputs of the current block after delay, conversion and
+	// compensation. Null for inputs without data.
+	final double[][] currentInputs;
+	final float[][] floatCurrentInputs;
+
+	// Plugins with a process context: the buffers of the plugin, the input
+	// of the context per incoming connection and the output of the context
+	// per connected output
+	ProcessContext context;
+	final int[] inputPorts;
+	final int[] outputPorts;
+
+	// Output buffers which are used while the node is bypassed or idle
+	final boolean optional;
+	final double[][] bypassBuffers;
+	final float[][] floatBypassBuffers;
+
+	// The strongly connected component of the plugin graph
+	final int component;
+
+	// Invocations until the next timed invocation
+	int timingCountdown = 1;
+
+	// Samples at the rate of the node for which all inputs have been silent.
+	// The node is idle once they exceed the tail length.
+	final int tailLength;
+	long silentSamples = 0;
+	boolean idle = false;
+
+	// Applies bypass, mute and mix. The plugin hasn't been called while it
+	// was bypassed or muted, so it is reset when it is resumed.
+	NodeMixer mixer;
+	boolean suspended = false;
+
+	// The first allocation of the plugin which has been found by the
+	// allocation check. Reported by another thread.
+	volatile long allocatedBytes = 0;
+
+	PlanNode(SigproPlugin plugin, PluginCapabilities capabilities, OutputInfoWrapper[] inputSources,
+			String[] inputNames, int[] inputSourceSlots, int[] inputDelays, int[] compensations,
+			RateConverter[] converters, int rateDivisor, String[] outputNames, int[] outputSlots, int component) {
+		this.plugin = plugin;
+		this.capabilities = capabilities;
+		this.parameters = plugin.getParameters();
+		this.controls = plugin.getControls();
+		this.inputSources = inputSources;
+		this.inputNames = inputNames;
+		this.inputSourceSlots = inputSourceSlots;
+		this.inputCopies = new boolean[inputNames.length];
+		this.inputsOwned = new boolean[inputNames.length];
+		this.inputBuffers = new double[inputNames.length][];
+		this.floatInputBuffers = new float[inputNames.length][];
+		this.inputDelays = inputDelays;
+		this.delayLines = new double[inputNames.length][][];
+		this.floatDelayLines = new float[inputNames.length][][];
+		this.delayPositions = new int[inputNames.length];
+		this.compensations = compensations;
+		this.converters = converters;
+		this.rateDivisor = rateDivisor;
+		this.compensationLines = new double[inputNames.length][];
+		this.floatCompensationLines = new float[inputNames.length][];
+		this.compensationPositions = new int[inputNames.length];
+		this.compensationBuffers = new double[inputNames.length][];
+		this.floatCompensationBuffers = new float[inputNames.length][];
+		this.outputNames = outputNames;
+		this.outputSlots = outputSlots;
+		this.currentInputs = new double[inputNames.length][];
+		this.floatCurrentInputs = new float[inputNames.length][];
+		this.optional = capabilities.isOptional();
+		this.tailLength = capabilities.getTailLength();
+		this.inputPorts = new int[inputNames.length];
+		this.outputPorts = new int[outputNames.length];
+		this.bypassBuffers = new double[outputSlots.length][];
+		this.floatBypassBuffers = new float[outputSlots.length][];
+		this.component = component;
+
+		boolean hasDelay = false;
+
+		for (int i = 0; i < inputDelays.length; i++) {
+			if (inputDelays[i] > 0) {
+				delayLines[i] = new double[inputDelays[i]][];
+				floatDelayLines[i] = new float[inputDelays[i]][];
+				hasDelay = true;
+			}
+		}
+
+		this.delayed = hasDelay;
+
+		for (int i = 0; i < compensations.length; i++) {
+			if (compensations[i] > 0) {
+				compensationLines[i] = new double[compensations[i]];
+				floatCompensationLines[i] = new float[compensations[i]];
+			}
+		}
+	}
+
+	/**
+	 * Creates the {@link ProcessContext} of a plugin and binds the
+	 * connections to the indices of its ports. Connected ports which the
+	 * plugin doesn't declare are appended.
+	 */
+	void createContext(SamplePrecision precision, int sampleRate) {
+
+		ArrayList<String> inputs = new ArrayList<>(Arrays.asList(plugin.getInputPorts()));
+		ArrayList<String> outputs = new ArrayList<>(Arrays.asList(plugin.getOutputPorts()));
+
+		for (int i = 0; i < inputNames.length; i++) {
+			inputPorts[i] = bindPort(inputs, inputNames[i]);
+		}
+
+		for (int o = 0; o < outputNames.length; o++) {
+			outputPorts[o] = bindPort(outputs, outputNames[o]);
+		}
+
+		context = new ProcessContext(inputs.toArray(new String[inputs.size()]),
+				outputs.toArray(new String[outputs.size()]), parameters, sampleRate / rateDivisor,
+				precision);
+	}
+
+	private static int bindPort(ArrayList<String> ports, String name) {
+
+		int port = ports.indexOf(name);
+
+		if (port < 0) {
+			port = ports.size();
+			ports.add(name);
+		}
+
+		return port;
+	}
+
+	/**
+	 * Delays the data of the given input by its compensation.
+	 * 
+	 * @return a buffer of the node with the delayed data
+	 */
+	double[] compensate(int input, double[] data) {
+		double[] line = compensationLines[input];
+
+		if (compensationBuffers[input] == null || compensationBuffers[input].length != data.length) {
+			compensationBuffers[input] = new double[data.length];
+		}
+
+		double[] buffer = compensationBuffers[input];
+		int position = compensationPositions[input];
+
+		for (int k = 0; k < data.length; k++) {
+			buffer[k] = line[position];
+			line[position] = data[k];
+			position = position + 1 == line.length ? 0 : position + 1;
+		}
+
+		compensationPositions[input] = position;
+
+		return buffer;
+	}
+
+	/**
+	 * @see #compensate(int, double[])
+	 */
+	float[] compensate(int input, float[] data) {
+		float[] line = floatCompensationLines[input];
+
+		if (floatCompensationBuffers[input] == null || floatCompensationBuffers[input].length != data.length) {
+			floatCompensationBuffers[input] = new float[data.length];
+		}
+
+		float[] buffer = floatCompensationBuffers[input];
+		int position = compensationPositions[input];
+
+		for (int k = 0; k < data.length; k++) {
+			buffer[k] = line[position];
+			line[position] = data[k];
+			position = position + 1 == line.length ? 0 : position + 1;
+		}
+
+		compensationPositions[input] = position;
+
+		return buffer;
+	}
+
+	/**
+	 * The block which was written to the delay line of the given input
+	 * {@link #inputDelays} blocks ago. The blocks are allocated on first use
+	 * and reallocated only if the block size changes.
+	 */
+	double[] getDelayedData(int input, int blockSize) {
+		double[][] line = delayLines[input];
+		int position = delayPositions[input];
+
+		if (line[position] == null || line[position].length != blockSize) {
+			line[position] = new double[blockSize];
+		}
+
+		return line[position];
+	}
+
+	/**
+	 * @see #getDelayedData(int, int)
+	 */
+	float[] getFloatDelayedData(int input, int blockSize) {
+		float[][] line = floatDelayLines[input];
+		int position = delayPositions[input];
+
+		if (line[position] == null || line[position].length != blockSize) {
+			line[position] = new float[blockSize];
+		}
+
+		return line[position];
+	}
+
+	/**
+	 * Searches the input of this node which corresponds to the given input of
+	 * another node of the same plugin. The inputs must have the same source,
+	 * delay and compensation.
+	 * 
+	 * @param other
+	 *            A node of the same plugin in another plan.
+	 * @param input
+	 *            The index of the input of the other node.
+	 * @param matched
+	 *            The inputs of this node which are already matched.
+	 * @return The index of the input or -1 if there is none.
+	 */
+	int findInput(PlanNode other, int input, boolean[] matched) {
+		for (int i = 0; i < inputNames.length; i++) {
+			if (!matched[i] && inputSources[i].equals(other.inputSources[input])
+					&& inputNames[i].equals(other.inputNames[input]) && inputDelays[i] == other.inputDelays[input]
+					&& compensations[i] == other.compensations[input]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Resolves the slot of the given output.
+	 * 
+	 * @param output
+	 *            The name of the output.
+	 * @return The slot index or -1 if the output isn't connected.
+	 */
+	int getOutputSlot(String output) {
+		for (int i = 0; i < outputNames.length; i++) {
+			if (outputNames[i].equals(output)) {
+				return outputSlots[i];
+			}
+		}
+		return -1;
+	}
+}
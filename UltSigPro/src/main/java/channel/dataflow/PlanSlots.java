@@ -0,0 +1,34 @@
+package channel.dataflow;
+
+/**
+ * The data which is available at the outputs of the plugins during the
+ * execution of one block. Depending on the {@link SamplePrecision} of the
+ * plan, only the double or the float arrays are used.
+ * 
+ * @author roland
+ *
+ */
+class PlanSlots {
+
+	final double[][] data;
+	final float[][] floatData;
+
+	// The length of the input block
+	int blockSize;
+	// The number of blocks before this one
+	long blockIndex;
+	// The control events within this block
+	final BlockEvents events = new BlockEvents();
+
+	PlanSlots(int slotCount) {
+		data = new double[slotCount][];
+		floatData = new float[slotCount][];
+	}
+
+	void clear() {
+		for (int i = 0; i < data.length; i++) {
+			data[i] = null;
+			floatData[i] = null;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package channel.dataflow;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import channel.OutputDataWrapper;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * Processes a single plugin outside of an {@link ExecutionPlan}, e.g. in the
+ * sandbox host of external plugins. The data of every port is passed as one
+ * block. Plugins with a {@link ProcessContext} are called once per block,
+ * other plugins with putData for every input with data.
+ * 
+ * @author roland
+ *
+ */
+public class PluginRunner {
+
+	private final SigproPlugin plugin;
+	private final String[] inputPorts;
+	private final String[] outputPorts;
+	private final ProcessContext context;
+
+	/**
+	 * Creates a runner with double precision.
+	 * 
+	 * @param plugin
+	 *            The plugin. Must not be null.
+	 * @param sampleRate
+	 *            The sample rate of the plugin in Hz. Used for the smoothing
+	 *            of its parameters.
+	 */
+	public PluginRunner(@Nonnull SigproPlugin plugin, int sampleRate) {
+		this.plugin = plugin;
+		this.inputPorts = plugin.getInputPorts();
+		this.outputPorts = plugin.getOutputPorts();
+		this.context = plugin.usesProcessContext() ? new ProcessContext(inputPorts, outputPorts,
+				plugin.getParameters(), sampleRate, SamplePrecision.DOUBLE) : null;
+	}
+
+	/**
+	 * The names of the inputs in the order of the data of
+	 * {@link #process(double[][], double[][], int)}.
+	 * 
+	 * @return the names. Won't be null.
+	 */
+	@Nonnull
+	public String[] getInputPorts() {
+		return inputPorts.clone();
+	}
+
+	/**
+	 * The names of the outputs in the order of the data of
+	 * {@link #process(double[][], double[][], int)}.
+	 * 
+	 * @return the names. Won't be null.
+	 */
+	@Nonnull
+	public String[] getOutputPorts() {
+		return outputPorts.clone();
+	}
+
+	/**
+	 * Processes one block. Outputs which the plugin doesn't provide are
+	 * silent.
+	 * 
+	 * @param inputs
+	 *            The data of every input. Must not be null. Inputs which are
+	 *            null are silent. Plugins without a context may modify the
+	 *            data.
+	 * @param outputs
+	 *            Receives the data of every output. Must not be null and
+	 *            contain an array of at least the block size per output.
+	 * @param blockSize
+	 *            The number of samples.
+	 */
+	public void process(@Nonnull double[][] inputs, @Nonnull double[][] outputs, int blockSize) {
+
+		if (context != null) {
+			context.setBlockSize(blockSize);
+			context.clearInputs();
+
+			for (int i = 0; i < inputPorts.length; i++) {
+				if (inputs[i] != null) {
+					context.join(i, inputs[i]);
+				}
+			}
+
+			context.silenceMissingInputs();
+			context.updateParameters();
+			plugin.process(context);
+
+			for (int o = 0; o < outputPorts.length; o++) {
+				System.arraycopy(context.outputs[o], 0, outputs[o], 0, blockSize);
+			}
+			return;
+		}
+
+		for (int o = 0; o < outputPorts.length; o++) {
+			Arrays.fill(outputs[o], 0, blockSize, 0.0);
+		}
+
+		for (int i = 0; i < inputPorts.length; i++) {
+			if (inputs[i] == null) {
+				continue;
+			}
+
+			LinkedList<OutputDataWrapper> outputData = plugin.putData(inputPorts[i], inputs[i]);
+
+			if (outputData == null) {
+				continue;
+			}
+
+			for (OutputDataWrapper output : outputData) {
+				int o = indexOf(outputPorts, output.getOutputInfo().getSourceOutput());
+				double[] data = output.getOutputData();
+
+				if (o >= 0 && data != null) {
+					System.arraycopy(data, 0, outputs[o], 0, Math.min(blockSize, data.length));
+				}
+			}
+		}
+	}
+
+	private static int indexOf(String[] ports, @CheckForNull String name) {
+
+		for (int p = 0; p < ports.length; p++) {
+			if (ports[p].equals(name)) {
+				return p;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,596 @@
+package channel.dataflow;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import dsp.DspKernels;
+import plugins.sigproplugins.Parameter;
+
+/**
+ * The data of one block for a plugin which processes all of its inputs at
+ * once, see
+ * {@link plugins.sigproplugins.SigproPlugin#usesProcessContext()}. The inputs
+ * and outputs have the indices of the ports of the plugin (see
+ * {@link plugins.sigproplugins.SigproPlugin#getInputPorts()}). The signal
+ * processing collects the data of all connections before the plugin is
+ * called. The data of several connections to the same input is added, an
+ * input without data within the block or without connection is silent.<br/>
+ * <br/>
+ * The {@link Parameter}s of the plugin are smoothed by the signal processing.
+ * The context provides one value per sample, which ramps to a new value
+ * within the smoothing time of the parameter.<br/>
+ * <br/>
+ * The events of the {@link ControlEventQueue} of the channel are passed with
+ * their offset within the block. Plugins which support triggers read them
+ * from the context, parameter events start the ramp of the parameter at
+ * their sample.<br/>
+ * <br/>
+ * All buffers are owned by the signal processing and reused with every block.
+ * The plugin must not modify the input buffers and must not keep references
+ * to any of the buffers. It must write all samples of every output. Depending
+ * on the {@link SamplePrecision}, only the double or the float buffers are
+ * used.
+ * 
+ * @author roland
+ *
+ */
+public class ProcessContext {
+
+	private final String[] inputNames;
+	private final String[] outputNames;
+	private final SamplePrecision precision;
+
+	// The joined data per input. Either the data of the only connection or
+	// the input buffer.
+	final double[][] inputs;
+	final float[][] floatInputs;
+	final double[][] inputBuffers;
+	final float[][] floatInputBuffers;
+
+	final double[][] outputs;
+	final float[][] floatOutputs;
+
+	// The smoothed value at the end of the last block, the value of the
+	// parameter it ramps to and the remaining samples of the ramp
+	private final Parameter[] parameters;
+	private final int[] rampLengths;
+	private final double[] parameterValues;
+	private final double[] parameterTargets;
+	private final double[] parameterSteps;
+	private final int[] remainingRamps;
+	private final double[][] parameterBuffers;
+	// The buffer contains different values and has to be filled again
+	private final boolean[] parameterRamps;
+
+	// The events of the plugin within the current block. The id is the
+	// index of the parameter or the number of the trigger.
+	private final int[] eventOffsets = new int[BlockEvents.CAPACITY];
+	private final ControlEventType[] eventTypes = new ControlEventType[BlockEvents.CAPACITY];
+	private final int[] eventIds = new int[BlockEvents.CAPACITY];
+	private final double[] eventValues = new double[BlockEvents.CAPACITY];
+	private int eventCount = 0;
+
+	private int blockSize = 0;
+
+	ProcessContext(String[] inputNames, String[] outputNames, Parameter[] parameters, int sampleRate,
+			SamplePrecision precision) {
+		this.inputNames = inputNames;
+		this.outputNames = outputNames;
+		this.precision = precision;
+		this.parameters = parameters;
+		this.rampLengths = new int[parameters.length];
+		this.parameterValues = new double[parameters.length];
+		this.parameterTargets = new double[parameters.length];
+		this.parameterSteps = new double[parameters.length];
+		this.remainingRamps = new int[parameters.length];
+		this.parameterBuffers = new double[parameters.length][];
+		this.parameterRamps = new boolean[parameters.length];
+
+		for (int p = 0; p < parameters.length; p++) {
+			rampLengths[p] = (int) Math.round(parameters[p].getSmoothingTime() * sampleRate);
+			parameterValues[p] = parameters[p].getValue();
+			parameterTargets[p] = parameterValues[p];
+		}
+		this.inputs = new double[inputNames.length][];
+		this.floatInputs = new float[inputNames.length][];
+		this.inputBuffers = new double[inputNames.length][];
+		this.floatInputBuffers = new float[inputNames.length][];
+		this.outputs = new double[outputNames.length][];
+		this.floatOutputs = new float[outputNames.length][];
+	}
+
+	/**
+	 * Allocates the buffers for the given block size. Only allocates memory
+	 * if the block size has changed.
+	 */
+	void setBlockSize(int blockSize) {
+
+		if (this.blockSize == blockSize) {
+			return;
+		}
+
+		this.blockSize = blockSize;
+
+		for (int i = 0; i < inputNames.length; i++) {
+			if (precision == SamplePrecision.FLOAT) {
+				floatInputBuffers[i] = new float[blockSize];
+			} else {
+				inputBuffers[i] = new double[blockSize];
+			}
+		}
+
+		for (int o = 0; o < outputNames.length; o++) {
+			if (precision == SamplePrecision.FLOAT) {
+				floatOutputs[o] = new float[blockSize];
+			} else {
+				outputs[o] = new double[blockSize];
+			}
+		}
+
+		for (int p = 0; p < parameters.length; p++) {
+			parameterBuffers[p] = new double[blockSize];
+			parameterRamps[p] = true;
+		}
+	}
+
+	/**
+	 * Continues the smoothing of the parameters of another context of the
+	 * same plugin, e.g. of the plan which is replaced by a new plan. Nothing
+	 * is taken over if the plugin has changed its parameters.
+	 */
+	void takeSmoothing(ProcessContext previous) {
+
+		if (previous.parameters.length != parameters.length) {
+			return;
+		}
+
+		for (int p = 0; p < parameters.length; p++) {
+			if (previous.parameters[p] != parameters[p] || previous.rampLengths[p] != rampLengths[p]) {
+				continue;
+			}
+
+			parameterValues[p] = previous.parameterValues[p];
+			parameterTargets[p] = previous.parameterTargets[p];
+			parameterSteps[p] = previous.parameterSteps[p];
+			remainingRamps[p] = previous.remainingRamps[p];
+			parameterRamps[p] = true;
+		}
+	}
+
+	/**
+	 * Fills the buffers of the parameters with the smoothed values of the
+	 * block. A new value of a parameter starts a linear ramp from the current
+	 * smoothed value at the first sample, a parameter event at the offset of
+	 * the event. A constant buffer is only filled once.
+	 */
+	void updateParameters() {
+
+		for (int p = 0; p < parameters.length; p++) {
+			double value = parameters[p].getValue();
+			boolean update = parameterRamps[p] || remainingRamps[p] > 0;
+			boolean changing = false;
+			boolean automated = false;
+			int start = 0;
+
+			if (value != parameterTargets[p]) {
+				startRamp(p, value);
+				update = true;
+			}
+
+			for (int e = 0; e < eventCount; e++) {
+				if (eventTypes[e] != ControlEventType.PARAMETER || eventIds[e] != p) {
+					continue;
+				}
+
+				changing |= fillParameter(p, start, eventOffsets[e]);
+
+				double target = parameters[p].limit(eventValues[e]);
+				changing |= target != parameterValues[p];
+				startRamp(p, target);
+
+				start = eventOffsets[e];
+				update = true;
+				automated = true;
+			}
+
+			if (!update) {
+				continue;
+			}
+
+			changing |= fillParameter(p, start, blockSize);
+			parameterRamps[p] = changing;
+
+			// The parameter shows the automated value
+			if (automated) {
+				parameters[p].setValue(parameterTargets[p]);
+			}
+		}
+	}
+
+	private void startRamp(int parameter, double target) {
+
+		parameterTargets[parameter] = target;
+
+		if (rampLengths[parameter] > 0) {
+			remainingRamps[parameter] = rampLengths[parameter];
+			parameterSteps[parameter] = (target - parameterValues[parameter]) / rampLengths[parameter];
+		} else {
+			remainingRamps[parameter] = 0;
+			parameterValues[parameter] = target;
+		}
+	}
+
+	/**
+	 * Writes the smoothed values of a parameter to a part of its buffer.
+	 * 
+	 * @return true if the values ramp within the part.
+	 */
+	private boolean fillParameter(int parameter, int from, int to) {
+
+		double[] buffer = parameterBuffers[parameter];
+		int remaining = remainingRamps[parameter];
+
+		if (remaining == 0 || from >= to) {
+			Arrays.fill(buffer, from, to, parameterValues[parameter]);
+			return false;
+		}
+
+		double value = parameterValues[parameter];
+		double step = parameterSteps[parameter];
+
+		for (int k = from; k < to; k++) {
+			if (remaining > 0) {
+				remaining--;
+				value = remaining == 0 ? parameterTargets[parameter] : value + step;
+			}
+			buffer[k] = value;
+		}
+
+		parameterValues[parameter] = value;
+		remainingRamps[parameter] = remaining;
+
+		return true;
+	}
+
+	/**
+	 * Adds an event for the plugin. The events must be added in the order of
+	 * their offsets.
+	 * 
+	 * @return false if the capacity is exhausted.
+	 */
+	boolean addEvent(int offset, ControlEventType type, int id, double value) {
+
+		if (eventCount == BlockEvents.CAPACITY) {
+			return false;
+		}
+
+		eventOffsets[eventCount] = offset;
+		eventTypes[eventCount] = type;
+		eventIds[eventCount] = id;
+		eventValues[eventCount] = value;
+		eventCount++;
+
+		return true;
+	}
+
+	/**
+	 * Sets the values of the parameter events without smoothing and removes
+	 * all events. Used if the plugin isn't processed.
+	 */
+	void applyEvents() {
+
+		for (int e = 0; e < eventCount; e++) {
+			if (eventTypes[e] == ControlEventType.PARAMETER) {
+				parameters[eventIds[e]].setValue(eventValues[e]);
+			}
+		}
+
+		eventCount = 0;
+	}
+
+	void clearEvents() {
+		eventCount = 0;
+	}
+
+	/**
+	 * Adds the data of a connection to an input. The first connection is
+	 * passed through, further connections are added within the input buffer.
+	 */
+	void join(int input, double[] data) {
+
+		if (inputs[input] == null) {
+			inputs[input] = data;
+			return;
+		}
+
+		if (inputs[input] != inputBuffers[input]) {
+			System.arraycopy(inputs[input], 0, inputBuffers[input], 0, blockSize);
+			inputs[input] = inputBuffers[input];
+		}
+
+		DspKernels.add(data, inputBuffers[input], blockSize);
+	}
+
+	/**
+	 * @see #join(int, double[])
+	 */
+	void join(int input, float[] data) {
+
+		if (floatInputs[input] == null) {
+			floatInputs[input] = data;
+			return;
+		}
+
+		if (floatInputs[input] != floatInputBuffers[input]) {
+			System.arraycopy(floatInputs[input], 0, floatInputBuffers[input], 0, blockSize);
+			floatInputs[input] = floatInputBuffers[input];
+		}
+
+		DspKernels.add(data, floatInputBuffers[input], blockSize);
+	}
+
+	/**
+	 * Removes the data of the previous block from the inputs.
+	 */
+	void clearInputs() {
+		Arrays.fill(inputs, null);
+		Arrays.fill(floatInputs, null);
+	}
+
+	/**
+	 * Replaces the inputs without data by silence.
+	 */
+	void silenceMissingInputs() {
+
+		for (int i = 0; i < inputNames.length; i++) {
+			if (precision == SamplePrecision.FLOAT) {
+				if (floatInputs[i] == null) {
+					Arrays.fill(floatInputBuffers[i], 0.0f);
+					floatInputs[i] = floatInputBuffers[i];
+				}
+			} else if (inputs[i] == null) {
+				Arrays.fill(inputBuffers[i], 0.0);
+				inputs[i] = inputBuffers[i];
+			}
+		}
+	}
+
+	/**
+	 * The number of samples of every input and output buffer.
+	 * 
+	 * @return the block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * The precision of the samples. Decides if the double or the float
+	 * buffers are used.
+	 * 
+	 * @return the {@link SamplePrecision}. Won't be null.
+	 */
+	@Nonnull
+	public SamplePrecision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * The number of inputs.
+	 * 
+	 * @return the number of inputs
+	 */
+	public int getInputCount() {
+		return inputNames.length;
+	}
+
+	/**
+	 * The name of an input.
+	 * 
+	 * @param input
+	 *            The index of the input.
+	 * @return the name. Won't be null.
+	 */
+	@Nonnull
+	public String getInputName(int input) {
+		return inputNames[input];
+	}
+
+	/**
+	 * Resolves the index of an input. Only needed for inputs which aren't
+	 * declared by the plugin. Plugins should resolve their indices once and
+	 * not with every block.
+	 * 
+	 * @param name
+	 *            The name of the input.
+	 * @return the index or -1 if the input doesn't exist.
+	 */
+	public int getInputIndex(String name) {
+		for (int i = 0; i < inputNames.length; i++) {
+			if (inputNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The data of an input within the current block. Must only be used with
+	 * {@link SamplePrecision#DOUBLE}.
+	 * 
+	 * @param input
+	 *            The index of the input.
+	 * @return the samples. Must not be modified. Won't be null.
+	 */
+	@Nonnull
+	public double[] getInput(int input) {
+		return inputs[input];
+	}
+
+	/**
+	 * The data of an input within the current block. Must only be used with
+	 * {@link SamplePrecision#FLOAT}.
+	 * 
+	 * @param input
+	 *            The index of the input.
+	 * @return the samples. Must not be modified. Won't be null.
+	 */
+	@Nonnull
+	public float[] getFloatInput(int input) {
+		return floatInputs[input];
+	}
+
+	/**
+	 * The number of parameters, see
+	 * {@link plugins.sigproplugins.SigproPlugin#getParameters()}.
+	 * 
+	 * @return the number of parameters
+	 */
+	public int getParameterCount() {
+		return parameters.length;
+	}
+
+	/**
+	 * The smoothed values of a parameter within the current block.
+	 * 
+	 * @param parameter
+	 *            The index of the parameter.
+	 * @return one value per sample. Must not be modified. Won't be null.
+	 */
+	@Nonnull
+	public double[] getParameter(int parameter) {
+		return parameterBuffers[parameter];
+	}
+
+	/**
+	 * Checks if a parameter ramps within the current block. Otherwise all
+	 * values of the block are equal and the plugin may use the first one.
+	 * 
+	 * @param parameter
+	 *            The index of the parameter.
+	 * @return true if the values of the block differ.
+	 */
+	public boolean isParameterChanging(int parameter) {
+		return parameterRamps[parameter];
+	}
+
+	/**
+	 * The number of events for the plugin within the current block.
+	 * 
+	 * @return the number of events
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * The sample within the current block at which an event takes effect.
+	 * The events are sorted by their offset.
+	 * 
+	 * @param event
+	 *            The index of the event.
+	 * @return the offset in samples
+	 */
+	public int getEventOffset(int event) {
+		return eventOffsets[event];
+	}
+
+	/**
+	 * The kind of an event.
+	 * 
+	 * @param event
+	 *            The index of the event.
+	 * @return the {@link ControlEventType}. Won't be null.
+	 */
+	@Nonnull
+	public ControlEventType getEventType(int event) {
+		return eventTypes[event];
+	}
+
+	/**
+	 * The number of the trigger or the index of the parameter of an event.
+	 * 
+	 * @param event
+	 *            The index of the event.
+	 * @return the id
+	 */
+	public int getEventId(int event) {
+		return eventIds[event];
+	}
+
+	/**
+	 * The value of an event.
+	 * 
+	 * @param event
+	 *            The index of the event.
+	 * @return the value
+	 */
+	public double getEventValue(int event) {
+		return eventValues[event];
+	}
+
+	/**
+	 * The number of outputs.
+	 * 
+	 * @return the number of outputs
+	 */
+	public int getOutputCount() {
+		return outputNames.length;
+	}
+
+	/**
+	 * The name of an output.
+	 * 
+	 * @param output
+	 *            The index of the output.
+	 * @return the name. Won't be null.
+	 */
+	@Nonnull
+	public String getOutputName(int output) {
+		return outputNames[output];
+	}
+
+	/**
+	 * Resolves the index of an output. Plugins should resolve their indices
+	 * once and not with every block.
+	 * 
+	 * @param name
+	 *            The name of the output.
+	 * @return the index or -1 if the output doesn't exist.
+	 */
+	public int getOutputIndex(String name) {
+		for (int o = 0; o < outputNames.length; o++) {
+			if (outputNames[o].equals(name)) {
+				return o;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The buffer for the data of an output within the current block. Must
+	 * only be used with {@link SamplePrecision#DOUBLE}.
+	 * 
+	 * @param output
+	 *            The index of the output.
+	 * @return the buffer. Won't be null.
+	 */
+	@Nonnull
+	public double[] getOutput(int output) {
+		return outputs[output];
+	}
+
+	/**
+	 * The buffer for the data of an output within the current block. Must
+	 * only be used with {@link SamplePrecision#FLOAT}.
+	 * 
+	 * @param output
+	 *            The index of the output.
+	 * @return the buffer. Won't be null.
+	 */
+	@Nonnull
+	public float[] getFloatOutput(int output) {
+		return floatOutputs[output];
+	}
+}
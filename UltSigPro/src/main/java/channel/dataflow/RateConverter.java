@@ -0,0 +1,184 @@
+package channel.dataflow;
+
+import dsp.DspKernels;
+import dsp.HalfBandFilter;
+
+/**
+ * Converts the data of a connection between plugins with different rate
+ * divisors (see
+ * {@link plugins.sigproplugins.SigproPlugin#getRateDivisor()}). A factor of
+ * 2^n is converted by a cascade of n {@link HalfBandFilter}s.<br/>
+ * <br/>
+ * All plugins process blocks of the same size. A plugin with a higher rate
+ * divisor is only executed every few blocks. A decimating converter collects
+ * the blocks of the faster plugin until a block at the lower rate is
+ * complete. An interpolating converter converts a block of the slower plugin
+ * at once and hands it out in slices over the following blocks.<br/>
+ * <br/>
+ * All buffers are allocated on creation.
+ * 
+ * @author roland
+ *
+ */
+class RateConverter {
+
+	private final boolean decimating;
+	private final int factor;
+	private final int blockSize;
+	private final int latency;
+
+	private final HalfBandFilter[] stages;
+	private final double[][] stageBuffers;
+	private final double[] input;
+
+	// Decimation: the collected block. Interpolation: factor blocks.
+	private final double[] block;
+	private final double[] slice;
+	private final float[] floatSlice;
+
+	// Decimation: collected samples. Interpolation: the next slice.
+	private int position = 0;
+
+	/**
+	 * Creates a converter between the given rate divisors.
+	 * 
+	 * @param sourceDivisor
+	 *            The rate divisor of the source plugin.
+	 * @param destDivisor
+	 *            The rate divisor of the destination plugin.
+	 * @param blockSize
+	 *            The size of the blocks of both plugins.
+	 */
+	RateConverter(int sourceDivisor, int destDivisor, int blockSize) {
+		this.decimating = destDivisor > sourceDivisor;
+		this.factor = decimating ? destDivisor / sourceDivisor : sourceDivisor / destDivisor;
+		this.blockSize = blockSize;
+
+		int stageCount = Integer.numberOfTrailingZeros(factor);
+		stages = new HalfBandFilter[stageCount];
+		stageBuffers = new double[stageCount][];
+
+		// Latency in samples of the device rate. Each stage delays by the
+		// group delay of its filter at the higher rate. A decimator keeps the
+		// second of each pair of samples, which saves one sample.
+		int filterLatency = 0;
+
+		for (int s = 0; s < stageCount; s++) {
+			stages[s] = new HalfBandFilter();
+
+			if (decimating) {
+				stageBuffers[s] = new double[(blockSize >> (s + 1)) + 1];
+				filterLatency += (HalfBandFilter.DELAY - 1) * (sourceDivisor << s);
+			} else {
+				stageBuffers[s] = new double[blockSize << (s + 1)];
+				filterLatency += HalfBandFilter.DELAY * (sourceDivisor >> (s + 1));
+			}
+		}
+
+		input = new double[blockSize];
+		block = new double[decimating ? blockSize : factor * blockSize];
+		slice = new double[blockSize];
+		floatSlice = new float[blockSize];
+
+		// The first slice of an interpolated block belongs to the block which
+		// has been processed factor - 1 blocks of the destination ago
+		latency = filterLatency + (decimating ? 0 : (factor - 1) * blockSize * destDivisor);
+	}
+
+	/**
+	 * The delay which is added by this converter.
+	 * 
+	 * @return the latency in samples of the device rate
+	 */
+	int getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Passes a block of the source plugin to the converter.
+	 */
+	void write(double[] data) {
+
+		int length = Math.min(data.length, blockSize);
+		System.arraycopy(data, 0, input, 0, length);
+		convert(length);
+	}
+
+	/**
+	 * @see #write(double[])
+	 */
+	void write(float[] data) {
+
+		int length = Math.min(data.length, blockSize);
+		DspKernels.toDouble(data, input, length);
+		convert(length);
+	}
+
+	/**
+	 * Provides the next block for the destination plugin. Must be called once
+	 * for every block of the destination plugin.
+	 * 
+	 * @return the block or null if a decimated block isn't complete yet. The
+	 *         array is reused with the next block.
+	 */
+	double[] read() {
+
+		if (decimating) {
+			if (position < blockSize) {
+				return null;
+			}
+
+			position = 0;
+			System.arraycopy(block, 0, slice, 0, blockSize);
+		} else {
+			// Before the first block of the source, the slices are silent
+			int next = Math.min(position, factor - 1);
+			System.arraycopy(block, next * blockSize, slice, 0, blockSize);
+			position++;
+		}
+
+		return slice;
+	}
+
+	/**
+	 * @see #read()
+	 */
+	float[] readFloat() {
+
+		double[] data = read();
+
+		if (data == null) {
+			return null;
+		}
+
+		DspKernels.toFloat(data, floatSlice, blockSize);
+
+		return floatSlice;
+	}
+
+	private void convert(int length) {
+
+		double[] data = input;
+
+		if (decimating) {
+			for (int s = 0; s < stages.length; s++) {
+				length = stages[s].decimate(data, 0, length, stageBuffers[s], 0);
+				data = stageBuffers[s];
+			}
+
+			// A complete block is only collected once
+			length = Math.min(length, blockSize - position);
+			System.arraycopy(data, 0, block, position, length);
+			position += length;
+		} else {
+			for (int s = 0; s < stages.length; s++) {
+				stages[s].interpolate(data, 0, length, stageBuffers[s], 0);
+				data = stageBuffers[s];
+				length *= 2;
+			}
+
+			System.arraycopy(data, 0, block, 0, length);
+			position = 0;
+		}
+	}
+}
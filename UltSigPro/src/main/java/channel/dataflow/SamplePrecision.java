@@ -0,0 +1,24 @@
+package channel.dataflow;
+
+/**
+ * The floating point format of the samples within the signal processing of a
+ * session.
+ * 
+ * @author roland
+ *
+ */
+public enum SamplePrecision {
+
+	/**
+	 * Samples are processed as double values with
+	 * {@link plugins.sigproplugins.SigproPlugin#putData(String, double[])}.
+	 */
+	DOUBLE,
+
+	/**
+	 * Samples are processed as float values with
+	 * {@link plugins.sigproplugins.SigproPlugin#putFloatData(String, float[])}.
+	 * This halves the memory bandwidth of the signal processing.
+	 */
+	FLOAT;
+}
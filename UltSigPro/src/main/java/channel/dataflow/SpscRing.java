@@ -0,0 +1,88 @@
+package channel.dataflow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Lock free ring buffer for exactly one producer and one consumer thread. The
+ * ring doesn't allocate any memory after its creation.
+ * 
+ * @author roland
+ *
+ * @param <T>
+ *            The type of the elements.
+ */
+public class SpscRing<T> {
+
+	private final Object[] elements;
+	private final int mask;
+
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Creates a new ring.
+	 * 
+	 * @param capacity
+	 *            The minimal capacity. Will be rounded up to the next power of
+	 *            two.
+	 */
+	public SpscRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		elements = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds an element. Must only be called by the producer thread.
+	 * 
+	 * @param element
+	 *            The element to add. Must not be null.
+	 * @return true if the element was added, false if the ring is full.
+	 */
+	public boolean offer(@Nonnull T element) {
+		long t = tail.get();
+
+		if (t - head.get() == elements.length) {
+			return false;
+		}
+
+		elements[(int) (t & mask)] = element;
+		tail.lazySet(t + 1);
+
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element. Must only be called by the consumer thread.
+	 * 
+	 * @return the element or null if the ring is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	@CheckForNull
+	public T poll() {
+		long h = head.get();
+
+		if (h == tail.get()) {
+			return null;
+		}
+
+		int index = (int) (h & mask);
+		T element = (T) elements[index];
+		elements[index] = null;
+		head.lazySet(h + 1);
+
+		return element;
+	}
+
+	/**
+	 * Checks if the ring contains any element.
+	 * 
+	 * @return true if the ring is empty.
+	 */
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+}
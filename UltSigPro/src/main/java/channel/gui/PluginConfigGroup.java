@@ -17,12 +17,15 @@ import channel.gui.PluginConnection.ConnectionLine;
 import channel.gui.PluginConnection.LineDevider;
 import gui.USPGui;
 import i18n.LanguageResourceHandler;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Point2D;
+import javafx.scene.Scene;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Dialog;
@@ -37,6 +40,7 @@ import javafx.scene.layout.BorderStrokeStyle;
 import javafx.scene.layout.CornerRadii;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.util.Duration;
 import plugins.PluginManager;
 import plugins.sigproplugins.SigproPlugin;
 import resourceframework.ResourceProviderException;
@@ -76,6 +80,8 @@ public class PluginConfigGroup extends Pane {
 	private double newPluginX;
 	private double newPluginY;
 
+	private Timeline loadUpdate;
+
 	/**
 	 * Creates a new {@line PluginConfigGroup}
 	 * 
@@ -105,6 +111,36 @@ public class PluginConfigGroup extends Pane {
 		addPlugin(new PluginInput(), 100, 100);
 		addPlugin(new PluginOutput(), USPGui.stage.getWidth() - 100, 100);
 
+		// The execution times are sampled by the signal processing, the
+		// display is refreshed twice a second
+		loadUpdate = new Timeline(new KeyFrame(Duration.millis(500), new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+
+				long blockPeriod = channel.getBlockPeriod();
+
+				for (SigproPlugin plugin : plugins) {
+					plugin.updateLoadDisplay(blockPeriod);
+				}
+			}
+		}));
+		loadUpdate.setCycleCount(Timeline.INDEFINITE);
+
+		// The display is only refreshed while the group is shown. A running
+		// timeline would keep a removed group and its channel alive.
+		sceneProperty().addListener(new ChangeListener<Scene>() {
+
+			@Override
+			public void changed(ObservableValue<? extends Scene> observable, Scene oldValue, Scene newValue) {
+				if (newValue == null) {
+					loadUpdate.stop();
+				} else {
+					loadUpdate.play();
+				}
+			}
+		});
+
 		heightProperty().addListener(new ChangeListener<Number>() {
 
 			@Override
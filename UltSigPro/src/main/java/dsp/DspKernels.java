@@ -0,0 +1,701 @@
+package dsp;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bulk operations on blocks of samples. Within the signal processing, samples
+ * are normalized floating point values in the range [-1.0, 1.0). The
+ * conversion from and to the 16 bit PCM formats of devices and wave files is
+ * done only once at the edges with the methods of this class.<br/>
+ * <br/>
+ * All methods work on plain arrays with simple counted loops, which the JIT
+ * compiler can unroll and vectorize. They don't allocate any memory.
+ * 
+ * @author roland
+ *
+ */
+public final class DspKernels {
+
+	private static final double INT16_TO_SAMPLE = 1.0 / 32768.0;
+	private static final double SAMPLE_TO_INT16 = 32768.0;
+	private static final double INT24_TO_SAMPLE = 1.0 / 8388608.0;
+	private static final double SAMPLE_TO_INT24 = 8388608.0;
+	private static final int INT24_MAX = 8388607;
+	private static final int INT24_MIN = -8388608;
+	private static final double DB_TO_EXPONENT = Math.log(10.0) / 20.0;
+
+	private DspKernels() {
+
+	}
+
+	/**
+	 * Converts 16 bit signed big endian PCM data to normalized samples.
+	 * 
+	 * @param src
+	 *            The PCM data. Must not be null.
+	 * @param srcOffset
+	 *            The first byte to convert.
+	 * @param dest
+	 *            The array for the samples. Must not be null.
+	 * @param destOffset
+	 *            The first sample to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void int16BigEndianToSamples(@Nonnull byte[] src, int srcOffset, @Nonnull double[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int index = srcOffset + 2 * i;
+			int value = (src[index] << 8) | (src[index + 1] & 0xFF);
+			dest[destOffset + i] = value * INT16_TO_SAMPLE;
+		}
+	}
+
+	/**
+	 * Converts 16 bit signed little endian stereo PCM data to normalized mono
+	 * samples. The mono sample is the average of the left and right channel.
+	 * 
+	 * @param src
+	 *            The PCM data with 4 bytes per frame. Must not be null.
+	 * @param srcOffset
+	 *            The first byte to convert.
+	 * @param dest
+	 *            The array for the samples. Must not be null.
+	 * @param destOffset
+	 *            The first sample to write.
+	 * @param length
+	 *            The number of frames.
+	 */
+	public static void int16LittleEndianStereoToMonoSamples(@Nonnull byte[] src, int srcOffset,
+			@Nonnull double[] dest, int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int index = srcOffset + 4 * i;
+			int left = (src[index + 1] << 8) | (src[index] & 0xFF);
+			int right = (src[index + 3] << 8) | (src[index + 2] & 0xFF);
+			dest[destOffset + i] = (left + right) * (0.5 * INT16_TO_SAMPLE);
+		}
+	}
+
+	/**
+	 * Converts normalized samples to 16 bit signed big endian PCM data.
+	 * Samples outside of the valid range are clipped.
+	 * 
+	 * @param src
+	 *            The samples. Must not be null.
+	 * @param srcOffset
+	 *            The first sample to convert.
+	 * @param dest
+	 *            The array for the PCM data. Must not be null.
+	 * @param destOffset
+	 *            The first byte to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void samplesToInt16BigEndian(@Nonnull double[] src, int srcOffset, @Nonnull byte[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int value = toInt16(src[srcOffset + i]);
+			int index = destOffset + 2 * i;
+			dest[index] = (byte) (value >> 8);
+			dest[index + 1] = (byte) value;
+		}
+	}
+
+	/**
+	 * Converts normalized samples to 16 bit signed little endian PCM data as
+	 * used by wave files. Samples outside of the valid range are clipped.
+	 * 
+	 * @param src
+	 *            The samples. Must not be null.
+	 * @param srcOffset
+	 *            The first sample to convert.
+	 * @param dest
+	 *            The array for the PCM data. Must not be null.
+	 * @param destOffset
+	 *            The first byte to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void samplesToInt16LittleEndian(@Nonnull double[] src, int srcOffset, @Nonnull byte[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int value = toInt16(src[srcOffset + i]);
+			int index = destOffset + 2 * i;
+			dest[index] = (byte) value;
+			dest[index + 1] = (byte) (value >> 8);
+		}
+	}
+
+	/**
+	 * Converts 24 bit signed little endian PCM data to normalized samples.
+	 * 
+	 * @param src
+	 *            The PCM data with 3 bytes per sample. Must not be null.
+	 * @param srcOffset
+	 *            The first byte to convert.
+	 * @param dest
+	 *            The array for the samples. Must not be null.
+	 * @param destOffset
+	 *            The first sample to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void int24LittleEndianToSamples(@Nonnull byte[] src, int srcOffset, @Nonnull double[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int index = srcOffset + 3 * i;
+			int value = (src[index + 2] << 16) | ((src[index + 1] & 0xFF) << 8) | (src[index] & 0xFF);
+			dest[destOffset + i] = value * INT24_TO_SAMPLE;
+		}
+	}
+
+	/**
+	 * Converts normalized samples to 24 bit signed little endian PCM data.
+	 * Samples outside of the valid range are clipped.
+	 * 
+	 * @param src
+	 *            The samples. Must not be null.
+	 * @param srcOffset
+	 *            The first sample to convert.
+	 * @param dest
+	 *            The array for the PCM data. Must not be null.
+	 * @param destOffset
+	 *            The first byte to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void samplesToInt24LittleEndian(@Nonnull double[] src, int srcOffset, @Nonnull byte[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int value = toInt24(src[srcOffset + i]);
+			int index = destOffset + 3 * i;
+			dest[index] = (byte) value;
+			dest[index + 1] = (byte) (value >> 8);
+			dest[index + 2] = (byte) (value >> 16);
+		}
+	}
+
+	/**
+	 * Converts 32 bit float little endian PCM data to samples.
+	 * 
+	 * @param src
+	 *            The PCM data with 4 bytes per sample. Must not be null.
+	 * @param srcOffset
+	 *            The first byte to convert.
+	 * @param dest
+	 *            The array for the samples. Must not be null.
+	 * @param destOffset
+	 *            The first sample to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void float32LittleEndianToSamples(@Nonnull byte[] src, int srcOffset, @Nonnull double[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int index = srcOffset + 4 * i;
+			int bits = (src[index + 3] << 24) | ((src[index + 2] & 0xFF) << 16) | ((src[index + 1] & 0xFF) << 8)
+					| (src[index] & 0xFF);
+			dest[destOffset + i] = Float.intBitsToFloat(bits);
+		}
+	}
+
+	/**
+	 * Converts samples to 32 bit float little endian PCM data. The samples
+	 * aren't clipped, float PCM data may exceed the normalized range.
+	 * 
+	 * @param src
+	 *            The samples. Must not be null.
+	 * @param srcOffset
+	 *            The first sample to convert.
+	 * @param dest
+	 *            The array for the PCM data. Must not be null.
+	 * @param destOffset
+	 *            The first byte to write.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void samplesToFloat32LittleEndian(@Nonnull double[] src, int srcOffset, @Nonnull byte[] dest,
+			int destOffset, int length) {
+
+		for (int i = 0; i < length; i++) {
+			int bits = Float.floatToRawIntBits((float) src[srcOffset + i]);
+			int index = destOffset + 4 * i;
+			dest[index] = (byte) bits;
+			dest[index + 1] = (byte) (bits >> 8);
+			dest[index + 2] = (byte) (bits >> 16);
+			dest[index + 3] = (byte) (bits >> 24);
+		}
+	}
+
+	/**
+	 * Adds the source samples to the destination samples.
+	 * 
+	 * @param src
+	 *            The samples to add. Must not be null.
+	 * @param dest
+	 *            The samples to add to. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void add(@Nonnull double[] src, @Nonnull double[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] += src[i];
+		}
+	}
+
+	/**
+	 * @see #add(double[], double[], int)
+	 */
+	public static void add(@Nonnull float[] src, @Nonnull float[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] += src[i];
+		}
+	}
+
+	/**
+	 * Multiplies the source samples with a constant gain. The source and
+	 * destination may be the same array.
+	 * 
+	 * @param src
+	 *            The samples to scale. Must not be null.
+	 * @param gain
+	 *            The factor.
+	 * @param dest
+	 *            The array for the scaled samples. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void scale(@Nonnull double[] src, double gain, @Nonnull double[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = gain * src[i];
+		}
+	}
+
+	/**
+	 * @see #scale(double[], double, double[], int)
+	 */
+	public static void scale(@Nonnull float[] src, float gain, @Nonnull float[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = gain * src[i];
+		}
+	}
+
+	/**
+	 * Adds the source samples multiplied with a constant gain to the
+	 * destination samples.
+	 * 
+	 * @param src
+	 *            The samples to add. Must not be null.
+	 * @param gain
+	 *            The factor of the source samples.
+	 * @param dest
+	 *            The samples to add to. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void scaleAdd(@Nonnull double[] src, double gain, @Nonnull double[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] += gain * src[i];
+		}
+	}
+
+	/**
+	 * @see #scaleAdd(double[], double, double[], int)
+	 */
+	public static void scaleAdd(@Nonnull float[] src, float gain, @Nonnull float[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] += gain * src[i];
+		}
+	}
+
+	/**
+	 * Multiplies the source samples with one factor per sample, e.g. a
+	 * smoothed gain. The source and destination may be the same array.
+	 * 
+	 * @param src
+	 *            The samples to multiply. Must not be null.
+	 * @param factors
+	 *            The factors. Must not be null.
+	 * @param dest
+	 *            The array for the products. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void multiply(@Nonnull double[] src, @Nonnull double[] factors, @Nonnull double[] dest,
+			int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = factors[i] * src[i];
+		}
+	}
+
+	/**
+	 * @see #multiply(double[], double[], double[], int)
+	 */
+	public static void multiply(@Nonnull float[] src, @Nonnull double[] factors, @Nonnull float[] dest,
+			int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = (float) factors[i] * src[i];
+		}
+	}
+
+	/**
+	 * Mixes several sources with a constant gain per source. The destination
+	 * must not be one of the sources.
+	 * 
+	 * @param sources
+	 *            The samples of the sources. Must not be null. Sources which
+	 *            are null are skipped.
+	 * @param gains
+	 *            The gain of each source. Must not be null.
+	 * @param count
+	 *            The number of sources.
+	 * @param dest
+	 *            The array for the mix. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void mix(@Nonnull double[][] sources, @Nonnull double[] gains, int count, @Nonnull double[] dest,
+			int length) {
+
+		Arrays.fill(dest, 0, length, 0.0);
+
+		for (int s = 0; s < count; s++) {
+			if (sources[s] != null) {
+				scaleAdd(sources[s], gains[s], dest, length);
+			}
+		}
+	}
+
+	/**
+	 * @see #mix(double[][], double[], int, double[], int)
+	 */
+	public static void mix(@Nonnull float[][] sources, @Nonnull double[] gains, int count, @Nonnull float[] dest,
+			int length) {
+
+		Arrays.fill(dest, 0, length, 0.0f);
+
+		for (int s = 0; s < count; s++) {
+			if (sources[s] != null) {
+				scaleAdd(sources[s], (float) gains[s], dest, length);
+			}
+		}
+	}
+
+	/**
+	 * Limits the samples to the given range.
+	 * 
+	 * @param data
+	 *            The samples to limit. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 * @param min
+	 *            The lowest value.
+	 * @param max
+	 *            The highest value.
+	 */
+	public static void clip(@Nonnull double[] data, int length, double min, double max) {
+
+		for (int i = 0; i < length; i++) {
+			data[i] = Math.max(min, Math.min(max, data[i]));
+		}
+	}
+
+	/**
+	 * @see #clip(double[], int, double, double)
+	 */
+	public static void clip(@Nonnull float[] data, int length, float min, float max) {
+
+		for (int i = 0; i < length; i++) {
+			data[i] = Math.max(min, Math.min(max, data[i]));
+		}
+	}
+
+	/**
+	 * The lowest sample.
+	 * 
+	 * @param data
+	 *            The samples. Must not be null.
+	 * @param length
+	 *            The number of samples. Must be at least 1.
+	 * @return the lowest value
+	 */
+	public static double min(@Nonnull double[] data, int length) {
+
+		double min = data[0];
+
+		for (int i = 1; i < length; i++) {
+			min = Math.min(min, data[i]);
+		}
+
+		return min;
+	}
+
+	/**
+	 * The highest sample.
+	 * 
+	 * @param data
+	 *            The samples. Must not be null.
+	 * @param length
+	 *            The number of samples. Must be at least 1.
+	 * @return the highest value
+	 */
+	public static double max(@Nonnull double[] data, int length) {
+
+		double max = data[0];
+
+		for (int i = 1; i < length; i++) {
+			max = Math.max(max, data[i]);
+		}
+
+		return max;
+	}
+
+	/**
+	 * The highest absolute value of the samples, e.g. for a level meter.
+	 * 
+	 * @param data
+	 *            The samples. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 * @return the peak value. 0 if the length is 0.
+	 */
+	public static double peak(@Nonnull double[] data, int length) {
+
+		double peak = 0;
+
+		for (int i = 0; i < length; i++) {
+			peak = Math.max(peak, Math.abs(data[i]));
+		}
+
+		return peak;
+	}
+
+	/**
+	 * @see #peak(double[], int)
+	 */
+	public static double peak(@Nonnull float[] data, int length) {
+
+		float peak = 0;
+
+		for (int i = 0; i < length; i++) {
+			peak = Math.max(peak, Math.abs(data[i]));
+		}
+
+		return peak;
+	}
+
+	/**
+	 * The root mean square of the samples.
+	 * 
+	 * @param data
+	 *            The samples. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 * @return the RMS value. 0 if the length is 0.
+	 */
+	public static double rms(@Nonnull double[] data, int length) {
+
+		if (length <= 0) {
+			return 0;
+		}
+
+		double sum = 0;
+
+		for (int i = 0; i < length; i++) {
+			sum += data[i] * data[i];
+		}
+
+		return Math.sqrt(sum / length);
+	}
+
+	/**
+	 * @see #rms(double[], int)
+	 */
+	public static double rms(@Nonnull float[] data, int length) {
+
+		if (length <= 0) {
+			return 0;
+		}
+
+		double sum = 0;
+
+		for (int i = 0; i < length; i++) {
+			sum += data[i] * data[i];
+		}
+
+		return Math.sqrt(sum / length);
+	}
+
+	/**
+	 * Converts a level in decibel to a linear factor.
+	 * 
+	 * @param decibel
+	 *            The level in dB.
+	 * @return the factor. 0 for negative infinity.
+	 */
+	public static double dbToLinear(double decibel) {
+		return Math.pow(10.0, decibel / 20.0);
+	}
+
+	/**
+	 * Converts a linear factor to a level in decibel.
+	 * 
+	 * @param linear
+	 *            The factor.
+	 * @return the level in dB. Negative infinity for 0.
+	 */
+	public static double linearToDb(double linear) {
+		return 20.0 * Math.log10(Math.abs(linear));
+	}
+
+	/**
+	 * Converts levels in decibel to linear factors, e.g. the buffer of a
+	 * smoothed gain parameter. The source and destination may be the same
+	 * array.
+	 * 
+	 * @param src
+	 *            The levels in dB. Must not be null.
+	 * @param dest
+	 *            The array for the factors. Must not be null.
+	 * @param length
+	 *            The number of values.
+	 */
+	public static void dbToLinear(@Nonnull double[] src, @Nonnull double[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = Math.exp(src[i] * DB_TO_EXPONENT);
+		}
+	}
+
+	/**
+	 * Converts double samples to float samples.
+	 * 
+	 * @param src
+	 *            The samples to convert. Must not be null.
+	 * @param dest
+	 *            The array for the converted samples. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void toFloat(@Nonnull double[] src, @Nonnull float[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = (float) src[i];
+		}
+	}
+
+	/**
+	 * Converts float samples to double samples.
+	 * 
+	 * @param src
+	 *            The samples to convert. Must not be null.
+	 * @param dest
+	 *            The array for the converted samples. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 */
+	public static void toDouble(@Nonnull float[] src, @Nonnull double[] dest, int length) {
+
+		for (int i = 0; i < length; i++) {
+			dest[i] = src[i];
+		}
+	}
+
+	/**
+	 * Checks if all samples are below the given threshold. Stops at the first
+	 * loud sample, so a signal is usually detected within a few samples.
+	 * 
+	 * @param data
+	 *            The samples to check. Must not be null.
+	 * @param length
+	 *            The number of samples.
+	 * @param threshold
+	 *            The highest absolute value of a silent sample.
+	 * @return true if no sample exceeds the threshold.
+	 */
+	public static boolean isSilent(@Nonnull double[] data, int length, double threshold) {
+
+		for (int i = 0; i < length; i++) {
+			if (data[i] > threshold || data[i] < -threshold) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @see #isSilent(double[], int, double)
+	 */
+	public static boolean isSilent(@Nonnull float[] data, int length, double threshold) {
+
+		float floatThreshold = (float) threshold;
+
+		for (int i = 0; i < length; i++) {
+			if (data[i] > floatThreshold || data[i] < -floatThreshold) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Converts a normalized sample to a 16 bit value. The value is rounded and
+	 * clipped.
+	 * 
+	 * @param sample
+	 *            The normalized sample.
+	 * @return the 16 bit value as int.
+	 */
+	public static int toInt16(double sample) {
+
+		long value = Math.round(sample * SAMPLE_TO_INT16);
+
+		if (value > Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		} else if (value < Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Converts a normalized sample to a 24 bit value. The value is rounded and
+	 * clipped.
+	 * 
+	 * @param sample
+	 *            The normalized sample.
+	 * @return the 24 bit value as int.
+	 */
+	public static int toInt24(double sample) {
+
+		long value = Math.round(sample * SAMPLE_TO_INT24);
+
+		if (value > INT24_MAX) {
+			return INT24_MAX;
+		} else if (value < INT24_MIN) {
+			return INT24_MIN;
+		}
+
+		return (int) value;
+	}
+}
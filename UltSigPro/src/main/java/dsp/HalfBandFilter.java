@@ -0,0 +1,162 @@
+package dsp;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Half-band lowpass filter for the sample rate conversion by a factor of 2.
+ * The cutoff is at a quarter of the higher sample rate. Every second
+ * coefficient of a half-band filter is zero and the polyphase implementation
+ * only computes the samples which are kept, so the conversion needs 8
+ * multiplications per sample of the lower rate.<br/>
+ * <br/>
+ * The filter keeps the history of its input, so an instance must only be
+ * used for one continuous signal and in one direction. It doesn't allocate
+ * any memory after its creation.
+ * 
+ * @author roland
+ *
+ */
+public class HalfBandFilter {
+
+	// Number of non zero coefficients on each side of the center
+	private static final int SIDE_TAPS = 8;
+	private static final int LENGTH = 4 * SIDE_TAPS - 1;
+	private static final double[] COEFFICIENTS = design();
+
+	/**
+	 * The group delay of the filter in samples of the higher rate.
+	 */
+	public static final int DELAY = LENGTH / 2;
+
+	// Every sample is written twice, so the last LENGTH samples are always
+	// available in one piece
+	private final double[] history = new double[2 * LENGTH];
+	private int position = 0;
+	private boolean odd = false;
+
+	/**
+	 * Filters the input and keeps every second sample.
+	 * 
+	 * @param input
+	 *            The samples at the higher rate. Must not be null.
+	 * @param offset
+	 *            The first sample to convert.
+	 * @param length
+	 *            The number of samples to convert.
+	 * @param output
+	 *            The array for the samples at the lower rate. Must have space
+	 *            for (length + 1) / 2 samples. Must not be null.
+	 * @param outputOffset
+	 *            The first sample to write.
+	 * @return the number of written samples. Depends on the number of
+	 *         samples of previous calls if the length is odd.
+	 */
+	public int decimate(@Nonnull double[] input, int offset, int length, @Nonnull double[] output,
+			int outputOffset) {
+
+		int count = 0;
+
+		for (int i = 0; i < length; i++) {
+			push(input[offset + i]);
+			odd = !odd;
+
+			if (!odd) {
+				int newest = position + LENGTH;
+				double sum = 0.5 * history[newest - DELAY];
+
+				for (int j = 0; j < SIDE_TAPS; j++) {
+					sum += COEFFICIENTS[j]
+							* (history[newest - 2 * (SIDE_TAPS - 1 - j)] + history[newest - 2 * SIDE_TAPS - 2 * j]);
+				}
+
+				output[outputOffset + count++] = sum;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Doubles the sample rate of the input. Between two input samples a new
+	 * sample is interpolated.
+	 * 
+	 * @param input
+	 *            The samples at the lower rate. Must not be null.
+	 * @param offset
+	 *            The first sample to convert.
+	 * @param length
+	 *            The number of samples to convert.
+	 * @param output
+	 *            The array for the samples at the higher rate. Must have
+	 *            space for 2 * length samples. Must not be null.
+	 * @param outputOffset
+	 *            The first sample to write.
+	 */
+	public void interpolate(@Nonnull double[] input, int offset, int length, @Nonnull double[] output,
+			int outputOffset) {
+
+		for (int i = 0; i < length; i++) {
+			push(input[offset + i]);
+
+			int newest = position + LENGTH;
+			double sum = 0;
+
+			for (int j = 0; j < SIDE_TAPS; j++) {
+				sum += COEFFICIENTS[j]
+						* (history[newest - (SIDE_TAPS - 1 - j)] + history[newest - SIDE_TAPS - j]);
+			}
+
+			// The zeros between the input samples halve the gain
+			output[outputOffset + 2 * i] = 2 * sum;
+			output[outputOffset + 2 * i + 1] = history[newest - (SIDE_TAPS - 1)];
+		}
+	}
+
+	/**
+	 * Clears the history of the filter.
+	 */
+	public void reset() {
+		for (int i = 0; i < history.length; i++) {
+			history[i] = 0;
+		}
+		position = 0;
+		odd = false;
+	}
+
+	private void push(double sample) {
+		position = position + 1 == LENGTH ? 0 : position + 1;
+		history[position] = sample;
+		history[position + LENGTH] = sample;
+	}
+
+	/**
+	 * Windowed sinc design. Only the coefficients of one side with an odd
+	 * distance to the center are returned, the center is 0.5 and all other
+	 * coefficients are 0.
+	 */
+	private static double[] design() {
+
+		double[] coefficients = new double[SIDE_TAPS];
+		double sum = 0;
+
+		for (int j = 0; j < SIDE_TAPS; j++) {
+			int distance = 2 * j + 1;
+			int n = DELAY + distance + 1;
+
+			// Blackman window, which doesn't vanish at the outer taps
+			double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * n / (LENGTH + 1))
+					+ 0.08 * Math.cos(4 * Math.PI * n / (LENGTH + 1));
+			double sinc = Math.sin(Math.PI * distance / 2) / (Math.PI * distance / 2);
+
+			coefficients[j] = 0.5 * sinc * window;
+			sum += coefficients[j];
+		}
+
+		// Each side adds up to 0.25, so the gain at DC is exactly 1
+		for (int j = 0; j < SIDE_TAPS; j++) {
+			coefficients[j] *= 0.25 / sum;
+		}
+
+		return coefficients;
+	}
+}
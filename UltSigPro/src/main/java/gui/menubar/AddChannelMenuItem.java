@@ -99,12 +99,17 @@ public class AddChannelMenuItem extends MenuItem {
 		private static final double IN_OUT_WIDTH = 70;
 		private static final String WARNING = "warning";
 		private static final String PRESENT_WARNING = "presentWarning";
+		private static final String BLOCK_SIZE_LABEL = "blockSizeLabel";
+		private static final String BLOCK_SIZE_DEFAULT = "blockSizeDefault";
+
+		private final int[] blockSizes = { 32, 64, 128, 256, 512, 1024, 2048 };
 
 		private List<ChoiceBox<String>> inputBoxes = new LinkedList<>();
 		private List<ChoiceBox<String>> outputBoxes = new LinkedList<>();
 		private HashMap<String, File> inputWaveFiles = new HashMap<>();
 		private HashMap<String, File> outputWaveFiles = new HashMap<>();
 		private TextField titleTextField;
+		private ChoiceBox<String> blockSizeBox;
 
 		private GridPane gridPane;
 
@@ -141,6 +146,17 @@ public class AddChannelMenuItem extends MenuItem {
 			gridPane.add(inputPane, 0, 1, 2, 1);
 			gridPane.add(outputPane, 0, 2, 2, 1);
 
+			Label blockSizeLabel = new Label(lanHandler.getLocalizedText(AddChannelDialog.class, BLOCK_SIZE_LABEL) + ":");
+			blockSizeBox = new ChoiceBox<>();
+			blockSizeBox.getItems().add(lanHandler.getLocalizedText(AddChannelDialog.class, BLOCK_SIZE_DEFAULT));
+			for (int blockSize : blockSizes) {
+				blockSizeBox.getItems().add(Integer.toString(blockSize));
+			}
+			blockSizeBox.getSelectionModel().select(0);
+
+			gridPane.add(blockSizeLabel, 0, 3);
+			gridPane.add(blockSizeBox, 1, 3);
+
 			inputPane.getColumnConstraints().add(0, new ColumnConstraints(IN_OUT_WIDTH));
 			outputPane.getColumnConstraints().add(0, new ColumnConstraints(IN_OUT_WIDTH));
 
@@ -246,7 +262,15 @@ public class AddChannelMenuItem extends MenuItem {
 				}
 			}
 
-			return new ChannelConfig(titleTextField.getText(), inputDevices, outputDevices, choosedInputWaveFiles, choosedOutputWaveFiles);
+			ChannelConfig config = new ChannelConfig(titleTextField.getText(), inputDevices, outputDevices, choosedInputWaveFiles, choosedOutputWaveFiles);
+
+			// The first entry uses the package size of the devices
+			int blockSizeIndex = blockSizeBox.getSelectionModel().getSelectedIndex();
+			if (blockSizeIndex > 0) {
+				config.setBlockSize(blockSizes[blockSizeIndex - 1]);
+			}
+
+			return config;
 		}
 
 		private GridPane getInputPane() {
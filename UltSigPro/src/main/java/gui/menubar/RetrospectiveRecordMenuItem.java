@@ -0,0 +1,120 @@
+package gui.menubar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import gui.USPGui;
+import i18n.LanguageResourceHandler;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.MenuItem;
+import javafx.stage.FileChooser;
+import logging.CommonLogger;
+import outputhandler.OutputAdministrator;
+import resourceframework.ResourceProviderException;
+
+/**
+ * This {@link MenuItem} saves the last minutes of an output to a wave file.
+ * The playback won't be interrupted.
+ *
+ * @author Kone
+ *
+ */
+public class RetrospectiveRecordMenuItem extends MenuItem {
+
+	private static final String TITLE = "title";
+	private static final String CHOICE_TITLE = "choiceTitle";
+	private static final String CHOICE_HEADER = "choiceHeader";
+	private static final String EMPTY_ALERT_HEADER = "emptyAlertHeader";
+	private static final String ERROR_ALERT_HEADER = "errorAlertHeader";
+
+	private LanguageResourceHandler lanHandler = LanguageResourceHandler.getInstance();
+	private OutputAdministrator outputAdmin = OutputAdministrator.getOutputAdministrator();
+
+	public RetrospectiveRecordMenuItem() throws ResourceProviderException {
+		super(LanguageResourceHandler.getInstance().getLocalizedText(RetrospectiveRecordMenuItem.class, TITLE));
+
+		super.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+
+				try {
+					if (outputAdmin.getRetrospectiveOutputs().isEmpty()) {
+						Alert alert = new Alert(AlertType.INFORMATION);
+						alert.setTitle(lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class, TITLE));
+						alert.setHeaderText(
+								lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class, EMPTY_ALERT_HEADER));
+						alert.showAndWait();
+						return;
+					}
+
+					ChoiceDialog<String> dialog = new ChoiceDialog<>(
+							outputAdmin.getRetrospectiveOutputs().iterator().next(),
+							outputAdmin.getRetrospectiveOutputs());
+					dialog.setTitle(lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class, CHOICE_TITLE));
+					dialog.setHeaderText(lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class, CHOICE_HEADER));
+
+					Optional<String> result = dialog.showAndWait();
+
+					if (!result.isPresent()) {
+						return;
+					}
+
+					FileChooser fileChooser = new FileChooser();
+					fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
+							"Wave " + lanHandler.getLocalizedText("file"), "*.wav"));
+					File waveFile = fileChooser.showSaveDialog(USPGui.stage);
+
+					if (waveFile != null) {
+						dump(result.get(), waveFile);
+					}
+				} catch (ResourceProviderException e) {
+					CommonLogger.getInstance().logException(e);
+				}
+			}
+
+		});
+	}
+
+	private void dump(String output, File waveFile) {
+
+		// Copying a few minutes of audio takes some time -> don't block the gui
+		Thread dumpThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					outputAdmin.dumpRetrospectiveRecording(output, waveFile);
+				} catch (IOException e) {
+					CommonLogger.getInstance().logException(e);
+
+					Platform.runLater(new Runnable() {
+
+						@Override
+						public void run() {
+							try {
+								Alert alert = new Alert(AlertType.ERROR);
+								alert.setTitle(lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class, TITLE));
+								alert.setHeaderText(lanHandler.getLocalizedText(RetrospectiveRecordMenuItem.class,
+										ERROR_ALERT_HEADER));
+								alert.showAndWait();
+							} catch (ResourceProviderException e) {
+								CommonLogger.getInstance().logException(e);
+							}
+						}
+					});
+				}
+			}
+		});
+
+		dumpThread.setDaemon(true);
+		dumpThread.start();
+	}
+
+}
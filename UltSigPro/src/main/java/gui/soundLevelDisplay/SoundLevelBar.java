@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import channel.ChannelConfig;
+import dsp.DspKernels;
 import i18n.LanguageResourceHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
@@ -99,7 +100,14 @@ public class SoundLevelBar extends GridPane implements SoundValueInterface {
 	}
 
 	@Override
-	public void updateSoundLevelItems(String deviceName, LinkedList<Integer> soundValues, boolean input) {
+	public void updateSoundLevelItems(String deviceName, double[] samples, boolean input) {
+
+		// The samples may be reused by the caller -> convert them immediately
+		LinkedList<Integer> soundValues = new LinkedList<>();
+
+		for (double sample : samples) {
+			soundValues.add(DspKernels.toInt16(sample));
+		}
 
 		if (input) {
 			LinkedList<LinkedList<Integer>> queue = inputQueues.get(deviceName);
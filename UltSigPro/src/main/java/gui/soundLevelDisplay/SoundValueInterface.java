@@ -1,9 +1,7 @@
 package gui.soundLevelDisplay;
 
-import java.util.LinkedList;
-
 public interface SoundValueInterface {
 	
-	public void updateSoundLevelItems(String deviceName, LinkedList<Integer> soundValues, boolean input);
+	public void updateSoundLevelItems(String deviceName, double[] samples, boolean input);
 
 }
@@ -29,6 +29,7 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 
 import channel.Channel;
 import channel.InputDataListener;
+import dsp.DspKernels;
 import gui.USPGui;
 import gui.soundLevelDisplay.SoundLevelBar;
 import gui.soundLevelDisplay.SoundValueInterface;
@@ -51,6 +52,9 @@ import resourceframework.ResourceProviderException;
  */
 public class InputAdministrator {
 
+	// Bytes which are read from a device at once (16 bit mono)
+	private static final int PACKAGE_SIZE = 200;
+
 	private static InputAdministrator inputAdministrator;
 	private HashMap<String, Mixer> allSoundInputDevices;
 	private HashMap<String, IteratableAudioInputStream> inputStreams;
@@ -87,6 +91,16 @@ public class InputAdministrator {
 		inputStreams = new HashMap<>();
 	}
 
+	/**
+	 * Returns the number of samples within one package which is passed to the
+	 * {@linkplain InputDataListener}s.
+	 * 
+	 * @return the package size in samples
+	 */
+	public int getPackageSize() {
+		return PACKAGE_SIZE / 2;
+	}
+
 	/**
 	 * Collects all sound devices and filters the results for input devices.
 	 */
@@ -371,10 +385,10 @@ public class InputAdministrator {
 		@Override
 		public void run() {
 
-			int packageSize = 200;
-			int outPackageSize = packageSize / 2;
+			int packageSize = PACKAGE_SIZE;
+			int outPackageSize = getPackageSize();
 			HashMap<String, byte[]> data = new HashMap<>();
-			HashMap<String, int[]> marshalledBuffer = new HashMap<>();
+			HashMap<String, double[]> marshalledBuffer = new HashMap<>();
 			Set<Entry<String, TargetDataLine>> targetEntrySet = targetDataLines.entrySet();
 			executor = new ScheduledThreadPoolExecutor(1);
 
@@ -450,100 +464,67 @@ public class InputAdministrator {
 
 						targetEntry.getValue().read(readData, 0, packageSize);
 
-						// ArrayList<Integer> marshalledData = new ArrayList<>
-						// (outPackageSize);
-						int[] marshalledData = new int[packageSize];
-						LinkedList<Integer> soundLevelData = new LinkedList<>();
-
-						for (int i = 0; i < outPackageSize; i++) {
-							int intValue = 0;
-
-							intValue = intValue | Byte.toUnsignedInt(readData[2 * i]);
-							intValue <<= 8;
-							intValue = intValue | Byte.toUnsignedInt(readData[2 * i + 1]);
+						// The marshalled data is only read afterwards -> the
+						// buffer can be reused for the next package
+						double[] marshalledData = getMarshalledBuffer(targetEntry.getKey());
 
-							intValue <<= 16;
-							intValue >>= 16;
-
-							marshalledData[i] = intValue;
-							soundLevelData.add(intValue);
-						}
+						DspKernels.int16BigEndianToSamples(readData, 0, marshalledData, 0, outPackageSize);
 
-						SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(targetEntry.getKey(), soundLevelData,
+						SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(targetEntry.getKey(), marshalledData,
 								true);
-
-						marshalledBuffer.put(targetEntry.getKey(), marshalledData);
 					}
 
 					for (Map.Entry<String, IteratableAudioInputStream> inputEntry : inputStreams.entrySet()) {
 						byte[] readData = inputEntry.getValue().read(packageSize * 2);
-						int[] marshalledData = new int[outPackageSize];
-						LinkedList<Integer> soundLevelData = new LinkedList<>();
-
-						for (int i = 0; i < outPackageSize; i++) {
-							int intValueLeftStereo = 0;
-							int intValueRightStereo = 0;
-							int intValueMono = 0;
-							
-							// TODO byte to integer conversion works here only for 4
-							// bytes/frame and big endian
-							// need different conversions implementations
-							// for different coding formats
-
-							// Checks if the wave file has ended or not (no more
-							// data left to read). Left and right stereo channel
-							// from the wave file are merged to a mono channel
-							// (average value is calculated)
-							
-							intValueLeftStereo = intValueLeftStereo
-									| Byte.toUnsignedInt(readData[4 * i + 1]);
-							intValueLeftStereo <<= 8;
-							intValueLeftStereo = intValueLeftStereo
-									| Byte.toUnsignedInt(readData[4 * i]);
-							intValueLeftStereo <<= 16;
-							intValueLeftStereo >>= 16;
-
-							intValueRightStereo = intValueRightStereo
-									| Byte.toUnsignedInt(readData[4 * i + 3]);
-							intValueRightStereo <<= 8;
-							intValueRightStereo = intValueRightStereo
-									| Byte.toUnsignedInt(readData[4 * i + 2]);
-							intValueRightStereo <<= 16;
-							intValueRightStereo >>= 16;
-
-							intValueMono = (intValueRightStereo + intValueLeftStereo) / 2;		
-
-							marshalledData[i] = intValueMono;
-							soundLevelData.add(intValueMono);
-						}
-						marshalledBuffer.put(inputEntry.getKey(), marshalledData);
-						SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(inputEntry.getKey(), soundLevelData,
+						double[] marshalledData = getMarshalledBuffer(inputEntry.getKey());
+
+						// TODO byte to sample conversion works here only for 4
+						// bytes/frame and little endian
+						// need different conversions implementations
+						// for different coding formats
+
+						// Left and right stereo channel from the wave file are
+						// merged to a mono channel (average value is
+						// calculated)
+						DspKernels.int16LittleEndianStereoToMonoSamples(readData, 0, marshalledData, 0,
+								outPackageSize);
+
+						SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(inputEntry.getKey(), marshalledData,
 								true);
 					}
 
 					for (Map.Entry<InputDataListener, Collection<String>> destEntry : distributionMap.entrySet()) {
 
 						boolean first = true;
-						int[] destData = new int[outPackageSize];
+						// Every listener gets its own array, because the
+						// signal processing may work in place
+						double[] destData = new double[outPackageSize];
 
 						for (String input : destEntry.getValue()) {
-							int[] inputData = marshalledBuffer.get(input);
+							double[] inputData = marshalledBuffer.get(input);
 
 							if (first) {
-								for (int i = 0; i < outPackageSize; i++) {
-									destData[i] = inputData[i];
-									first = false;
-								}
+								System.arraycopy(inputData, 0, destData, 0, outPackageSize);
+								first = false;
 							} else {
-								for (int i = 0; i < outPackageSize; i++) {
-									destData[i] += inputData[i];
-								}
+								DspKernels.add(inputData, destData, outPackageSize);
 							}
 						}
 
 						destEntry.getKey().putData(destData);
 					}
 				}
+
+				private double[] getMarshalledBuffer(String input) {
+					double[] buffer = marshalledBuffer.get(input);
+
+					if (buffer == null) {
+						buffer = new double[outPackageSize];
+						marshalledBuffer.put(input, buffer);
+					}
+
+					return buffer;
+				}
 			};
 
 			executor.scheduleAtFixedRate(readRunnable, 0, 1, TimeUnit.MILLISECONDS);
@@ -28,6 +28,7 @@ import javax.sound.sampled.SourceDataLine;
 import channel.Channel;
 import channel.InputDataListener;
 import channel.OutputDataSpeaker;
+import dsp.DspKernels;
 import gui.USPGui;
 import gui.soundLevelDisplay.SoundLevelBar;
 import i18n.LanguageResourceHandler;
@@ -35,6 +36,7 @@ import inputhandler.InputAdministrator;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.TextArea;
+import logging.CommonLogger;
 import resourceframework.GlobalResourceProvider;
 import resourceframework.ResourceProviderException;
 
@@ -50,6 +52,10 @@ import resourceframework.ResourceProviderException;
 public class OutputAdministrator {
 
 	private static OutputAdministrator outputAdministrator;
+
+	// AudioFormat(sample rate, bits per sample, channel number
+	// (stereo/mono), signed, bigEndian)
+	private static final AudioFormat OUTPUT_FORMAT = new AudioFormat(44100, 16, 1, true, true);
 	private static HashMap<String, Mixer> allSoundOutputDevices;
 	private static HashMap<String, Mixer> selectedDevices;
 	private static HashMap<String, SourceDataLine> sourceDataLines;
@@ -59,6 +65,7 @@ public class OutputAdministrator {
 	private ScheduledThreadPoolExecutor executor;
 
 	private long latency;
+	private int retrospectiveMinutes;
 	private int byteBufferSize = 100;
 
 	// SoundOutputDevice -> Signal processing Channel -> Queue with sound values
@@ -67,6 +74,7 @@ public class OutputAdministrator {
 
 	private HashMap<OutputDataSpeaker, Collection<String>> distributionMap = new HashMap<>();
 	private HashMap<String, LinkedList<byte[]>> waveData = new HashMap<>();
+	private final HashMap<String, RetrospectiveRecorder> retrospectiveRecorders = new HashMap<>();
 
 	public static OutputAdministrator getOutputAdministrator() {
 
@@ -92,6 +100,16 @@ public class OutputAdministrator {
 		} else {
 			latency = 10;
 		}
+
+		if (resProv.checkRegistered("retrospectiveMinutes")) {
+			try {
+				retrospectiveMinutes = (int) resProv.getResource("retrospectiveMinutes");
+			} catch (ResourceProviderException e) {
+				// Won't happen due to previous check
+			}
+		} else {
+			retrospectiveMinutes = 5;
+		}
 	}
 
 	/**
@@ -134,6 +152,16 @@ public class OutputAdministrator {
 		return selectedDevices;
 	}
 
+	/**
+	 * Returns the number of samples within one package which is fetched from
+	 * the {@linkplain OutputDataSpeaker}s.
+	 * 
+	 * @return the package size in samples
+	 */
+	public int getPackageSize() {
+		return byteBufferSize;
+	}
+
 	/**
 	 * Returns all open {@linkplain SourceDataLines}.
 	 * 
@@ -174,29 +202,13 @@ public class OutputAdministrator {
 
 	public void startOutput() {
 
+		openRetrospectiveRecorders();
+
 		executor = new ScheduledThreadPoolExecutor(1);
 
 		executor.scheduleAtFixedRate(new OutputRunnable(), 0, 1, TimeUnit.MILLISECONDS);
 	}
 
-	private void writeInt(final DataOutputStream output, final int value) throws IOException {
-		output.write(value >> 0);
-		output.write(value >> 8);
-		output.write(value >> 16);
-		output.write(value >> 24);
-	}
-
-	private void writeShort(final DataOutputStream output, final short value) throws IOException {
-		output.write(value >> 0);
-		output.write(value >> 8);
-	}
-
-	private void writeString(final DataOutputStream output, final String value) throws IOException {
-		for (int i = 0; i < value.length(); i++) {
-			output.write(value.charAt(i));
-		}
-	}
-
 	private void createWaveFiles() {
 		
 		for (Map.Entry<String, FileOutputStream> entry : waveFileStreams.entrySet()) {
@@ -204,24 +216,8 @@ public class OutputAdministrator {
 			try {
 				int waveSize = waveData.get(entry.getKey()).size(); 
 				
-				// RIFF section
-				writeString(output, "RIFF");
-				writeInt(output, waveSize * byteBufferSize * 2 + 36);
-				writeString(output, "WAVE");
-				
-				// format section
-				writeString(output, "fmt "); // header signature (space necessary)
-				writeInt(output, 16); // following format section size
-				writeShort(output, (short) 1); // audio format (1 = PCM)
-				writeShort(output, (short) 1); // number of channels
-				writeInt(output, 44100); // sample rate
-				writeInt(output, 44100 * 2); // byte rate (byte/second)
-				writeShort(output, (short) 2); // frame size
-				writeShort(output, (short) 16); // bits per sample
-				
-				// data section
-				writeString(output, "data"); // header signature
-				writeInt(output, waveSize * byteBufferSize * 2); // following data section size 				
+				WaveFileWriter.writeHeader(output, (int) OUTPUT_FORMAT.getSampleRate(),
+						waveSize * byteBufferSize * 2);
 				while (!waveData.get(entry.getKey()).isEmpty()) {
 					byte[] b = waveData.get(entry.getKey()).removeFirst();
 					output.write(b);
@@ -240,8 +236,183 @@ public class OutputAdministrator {
 	public void stopPlayback() {
 
 		executor.shutdownNow();
+
+		try {
+			// The recorders must not be written after they have been closed
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
 		createWaveFiles();
-		
+		closeRetrospectiveRecorders();
+	}
+
+	/**
+	 * Creates a {@link RetrospectiveRecorder} for every output which hasn't one
+	 * yet. The ring files are located in the "retrospective" directory of the
+	 * working directory.
+	 */
+	private void openRetrospectiveRecorders() {
+
+		if (retrospectiveMinutes <= 0) {
+			return;
+		}
+
+		try {
+			File ringDir = getRingDir();
+			if (!ringDir.isDirectory()) {
+				ringDir.mkdir();
+			}
+
+			synchronized (retrospectiveRecorders) {
+				for (String output : distributionQueue.keySet()) {
+					if (!retrospectiveRecorders.containsKey(output)) {
+						retrospectiveRecorders.put(output, openRetrospectiveRecorder(getRingFile(ringDir, output)));
+					}
+				}
+			}
+		} catch (ResourceProviderException | IOException e) {
+			CommonLogger.getInstance().logException(e);
+		}
+	}
+
+	private static File getRingDir() throws ResourceProviderException {
+		return new File((String) GlobalResourceProvider.getInstance().getResource("workDir") + File.separator
+				+ "retrospective");
+	}
+
+	private RetrospectiveRecorder openRetrospectiveRecorder(File ringFile) throws IOException {
+		return new RetrospectiveRecorder(ringFile, (int) OUTPUT_FORMAT.getSampleRate(), retrospectiveMinutes * 60);
+	}
+
+	private static File getRingFile(File ringDir, String output) {
+		return new File(ringDir, output.replaceAll("[^a-zA-Z0-9._-]", "_") + ".ring");
+	}
+
+	/**
+	 * Flushes and closes all {@link RetrospectiveRecorder}s. Their recordings
+	 * stay available in the ring files and are continued on the next start.
+	 */
+	private void closeRetrospectiveRecorders() {
+
+		synchronized (retrospectiveRecorders) {
+			for (RetrospectiveRecorder recorder : retrospectiveRecorders.values()) {
+				recorder.close();
+			}
+
+			retrospectiveRecorders.clear();
+		}
+	}
+
+	/**
+	 * The maximum latency of all {@linkplain OutputDataSpeaker}s which are
+	 * mixed into the given output.
+	 * 
+	 * @param output
+	 *            The name of the output device or wave file.
+	 * @return the latency in samples. 0 if there isn't any speaker for this
+	 *         output.
+	 */
+	public synchronized int getLatency(String output) {
+		int latency = 0;
+
+		if (distributionQueue.containsKey(output)) {
+			for (OutputDataSpeaker speaker : distributionQueue.get(output)) {
+				latency = Math.max(latency, speaker.getLatency());
+			}
+		}
+
+		return latency;
+	}
+
+	/**
+	 * Returns all outputs for which a retrospective recording is available.
+	 * 
+	 * @return A copy of the names of the outputs.
+	 */
+	public Set<String> getRetrospectiveOutputs() {
+
+		HashSet<String> outputs = new HashSet<>();
+
+		synchronized (retrospectiveRecorders) {
+			outputs.addAll(retrospectiveRecorders.keySet());
+		}
+
+		if (retrospectiveMinutes > 0) {
+			try {
+				File ringDir = getRingDir();
+
+				// Recordings of a stopped playback
+				synchronized (this) {
+					for (String output : distributionQueue.keySet()) {
+						if (getRingFile(ringDir, output).isFile()) {
+							outputs.add(output);
+						}
+					}
+				}
+			} catch (ResourceProviderException e) {
+				CommonLogger.getInstance().logException(e);
+			}
+		}
+
+		return outputs;
+	}
+
+	/**
+	 * Writes the last minutes of the given output to a wave file. The playback
+	 * continues while the file is written, so this method shouldn't be called
+	 * from the output thread.
+	 * 
+	 * @param output
+	 *            The name of the output device or wave file.
+	 * @param waveFile
+	 *            The wave file to create.
+	 * @throws IOException
+	 *             if an error occurs within the file handling.
+	 * @throws IllegalArgumentException
+	 *             if there is no recording for the given output.
+	 */
+	public void dumpRetrospectiveRecording(String output, File waveFile) throws IOException {
+
+		RetrospectiveRecorder recorder;
+
+		synchronized (retrospectiveRecorders) {
+			recorder = retrospectiveRecorders.get(output);
+		}
+
+		if (recorder != null) {
+			recorder.dumpToWaveFile(waveFile);
+			return;
+		}
+
+		// The playback has been stopped -> the ring file is opened only for
+		// the dump
+		File ringFile;
+
+		try {
+			ringFile = getRingFile(getRingDir(), output);
+		} catch (ResourceProviderException e) {
+			throw new IOException(e);
+		}
+
+		if (retrospectiveMinutes <= 0 || !ringFile.isFile()) {
+			throw new IllegalArgumentException("No retrospective recording for output " + output);
+		}
+
+		// The length of the ring may have been changed since the recording,
+		// so the ring is opened with the length stored in the file
+		recorder = RetrospectiveRecorder.openRecording(ringFile);
+
+		if (recorder == null) {
+			throw new IllegalArgumentException("No retrospective recording for output " + output);
+		}
+
+		try {
+			recorder.dumpToWaveFile(waveFile);
+		} finally {
+			recorder.close();
+		}
 	}
 
 	/**
@@ -260,13 +431,9 @@ public class OutputAdministrator {
 			DataLine.Info info = new DataLine.Info(SourceDataLine.class, null);
 			SourceDataLine line = null;
 
-			// AudioFormat(sample rate, bits per sample, channel number
-			// (stereo/mono), signed, bigEndian)
-			AudioFormat audioFormat = new AudioFormat(44100, 16, 1, true, true);
-
 			try {
 				line = (SourceDataLine) allSoundOutputDevices.get(deviceName).getLine(info);
-				line.open(audioFormat);
+				line.open(OUTPUT_FORMAT);
 
 				// We have to write a few data at the beginning, because the
 				// first write operation causes a delay at playback.
@@ -437,7 +604,12 @@ public class OutputAdministrator {
 		private int inputPackageSize = byteBufferSize;
 		private int outputPackageSize = inputPackageSize * 2;
 
-		private HashMap<OutputDataSpeaker, int[]> data = new HashMap<>();
+		private HashMap<OutputDataSpeaker, double[]> data = new HashMap<>();
+
+		// Buffers are reused for every package
+		private double[] outData = new double[inputPackageSize];
+		private byte[] outByteData = new byte[outputPackageSize];
+		private byte[] waveByteData = new byte[outputPackageSize];
 
 		public OutputRunnable() {
 
@@ -463,7 +635,7 @@ public class OutputAdministrator {
 
 				for (OutputDataSpeaker speaker : allSpeaker) {
 					if (!data.containsKey(speaker)) {
-						int[] speakerData = speaker.fetchData();
+						double[] speakerData = speaker.fetchData();
 
 						if (speakerData == null) {
 							missing = true;
@@ -485,47 +657,44 @@ public class OutputAdministrator {
 				for (Map.Entry<String, HashSet<OutputDataSpeaker>> entry : distributionQueue.entrySet()) {
 					boolean firstData = true;
 
-					int[] outData = new int[inputPackageSize];
-
 					for (OutputDataSpeaker speaker : entry.getValue()) {
 
-						int[] inData = data.get(speaker);
+						double[] inData = data.get(speaker);
 
 						if (firstData) {
-							for (int i = 0; i < inputPackageSize; i++) {
-								outData[i] = inData[i];
-							}
+							System.arraycopy(inData, 0, outData, 0, inputPackageSize);
+							firstData = false;
 						} else {
-							for (int i = 0; i < inputPackageSize; i++) {
-								outData[i] += inData[i];
-							}
+							DspKernels.add(inData, outData, inputPackageSize);
 						}
+					}
 
-						LinkedList<Integer> soundValueData = new LinkedList<>();
+					// The samples are converted only once for all speakers
+					RetrospectiveRecorder recorder = retrospectiveRecorders.get(entry.getKey());
+					boolean waveFile = waveFileStreams.containsKey(entry.getKey());
 
-						byte[] outByteData = new byte[outputPackageSize];
-						byte[] waveByteData = new byte[outputPackageSize];
+					if (recorder != null || waveFile) {
+						DspKernels.samplesToInt16LittleEndian(outData, 0, waveByteData, 0, inputPackageSize);
+					}
 
-						for (int i = 0; i < inputPackageSize; i++) {
-							int intSample = outData[i];
+					if (recorder != null) {
+						recorder.write(waveByteData, 0, outputPackageSize);
+					}
 
-							soundValueData.add(intSample);
+					if (waveFile) {
+						// The wave data is kept until the wave file is written
+						waveData.get(entry.getKey()).add(waveByteData.clone());
+					} else {
+						DspKernels.samplesToInt16BigEndian(outData, 0, outByteData, 0, inputPackageSize);
+						sourceDataLines.get(entry.getKey()).write(outByteData, 0, outputPackageSize);
+					}
 
-							outByteData[2 * i] = (byte) ((intSample & 0xFF00) >> 8);
-							outByteData[2 * i + 1] = (byte) (intSample & 0xFF);
+					SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(entry.getKey(), outData, false);
+				}
 
-							waveByteData[2 * i + 1] = outByteData[2 * i];
-							waveByteData[2 * i] = outByteData[2 * i + 1];
-						}
-		
-						if (waveFileStreams.containsKey(entry.getKey())) {
-							waveData.get(entry.getKey()).add(waveByteData);
-							SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(entry.getKey(), soundValueData, false);
-						} else {							
-							sourceDataLines.get(entry.getKey()).write(outByteData, 0, outputPackageSize);
-							SoundLevelBar.getSoundLevelBar().updateSoundLevelItems(entry.getKey(), soundValueData, false);		
-						}
-					}
+				// The packages have been mixed and can be reused
+				for (Map.Entry<OutputDataSpeaker, double[]> entry : data.entrySet()) {
+					entry.getKey().recycleData(entry.getValue());
 				}
 				data.clear();
 			}
@@ -0,0 +1,224 @@
+package outputhandler;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Circular recording buffer which always holds the last minutes of one output.
+ * The buffer is memory mapped to a file, so the recorded data survives a crash
+ * of the application and is continued on the next start.<br/>
+ * <br/>
+ * {@link #write(byte[], int, int)} is called from the output thread and
+ * doesn't allocate any memory. {@link #dumpToWaveFile(File)} can be called from
+ * any other thread while the playback is running.
+ *
+ * @author Kone
+ *
+ */
+public class RetrospectiveRecorder {
+
+	private static final int MAGIC = 0x55535052;
+	private static final int HEADER_SIZE = 32;
+	private static final int MAGIC_POSITION = 0;
+	private static final int SAMPLE_RATE_POSITION = 4;
+	private static final int CAPACITY_POSITION = 8;
+	private static final int WRITE_POSITION = 16;
+
+	private static final int BYTES_PER_SAMPLE = 2;
+
+	private final int sampleRate;
+	private final int capacity;
+	private final RandomAccessFile ringFile;
+	private final MappedByteBuffer mappedBuffer;
+
+	// Only used by the writing thread.
+	private final ByteBuffer writeBuffer;
+
+	// Total number of bytes written since the ring file was created. Guarded
+	// by the lock, which is only held for a single write or to take a
+	// snapshot of the position.
+	private final Object lock = new Object();
+	private long writePosition;
+
+	/**
+	 * Opens or creates the ring file. If the file already contains a recording
+	 * with the same sample rate and capacity, the recording will be continued.
+	 *
+	 * @param file
+	 *            The ring file. Must not be null.
+	 * @param sampleRate
+	 *            The sample rate of the recorded output.
+	 * @param seconds
+	 *            How many seconds the ring will hold.
+	 * @throws IOException
+	 *             if the ring file can't be created or mapped.
+	 */
+	public RetrospectiveRecorder(@Nonnull File file, int sampleRate, int seconds) throws IOException {
+		this.sampleRate = sampleRate;
+		this.capacity = sampleRate * seconds * BYTES_PER_SAMPLE;
+
+		ringFile = new RandomAccessFile(file, "rw");
+		mappedBuffer = ringFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+
+		if (mappedBuffer.getInt(MAGIC_POSITION) == MAGIC && mappedBuffer.getInt(SAMPLE_RATE_POSITION) == sampleRate
+				&& mappedBuffer.getInt(CAPACITY_POSITION) == capacity) {
+			// Recording of a previous session -> continue it
+			writePosition = mappedBuffer.getLong(WRITE_POSITION);
+		} else {
+			mappedBuffer.putInt(MAGIC_POSITION, MAGIC);
+			mappedBuffer.putInt(SAMPLE_RATE_POSITION, sampleRate);
+			mappedBuffer.putInt(CAPACITY_POSITION, capacity);
+			mappedBuffer.putLong(WRITE_POSITION, 0);
+			writePosition = 0;
+		}
+
+		mappedBuffer.position(HEADER_SIZE);
+		writeBuffer = mappedBuffer.slice();
+	}
+
+	/**
+	 * Opens the recording of an existing ring file with the sample rate and
+	 * capacity stored in its header. Used to dump a recording while nothing
+	 * is recorded, so the recording is kept even if the length of the ring
+	 * has been changed in the meantime.
+	 *
+	 * @param file
+	 *            The ring file. Must not be null.
+	 * @return the recorder or null, if the file doesn't contain a recording.
+	 * @throws IOException
+	 *             if the ring file can't be read or mapped.
+	 */
+	@CheckForNull
+	public static RetrospectiveRecorder openRecording(@Nonnull File file) throws IOException {
+
+		int sampleRate;
+		int capacity;
+
+		try (RandomAccessFile headerFile = new RandomAccessFile(file, "r")) {
+			if (headerFile.length() < HEADER_SIZE) {
+				return null;
+			}
+
+			headerFile.seek(MAGIC_POSITION);
+			int magic = headerFile.readInt();
+			headerFile.seek(SAMPLE_RATE_POSITION);
+			sampleRate = headerFile.readInt();
+			headerFile.seek(CAPACITY_POSITION);
+			capacity = headerFile.readInt();
+
+			// The ring must not be resized or reset by the constructor
+			if (magic != MAGIC || sampleRate <= 0 || capacity <= 0
+					|| capacity % (sampleRate * BYTES_PER_SAMPLE) != 0
+					|| headerFile.length() < HEADER_SIZE + (long) capacity) {
+				return null;
+			}
+		}
+
+		return new RetrospectiveRecorder(file, sampleRate, capacity / (sampleRate * BYTES_PER_SAMPLE));
+	}
+
+	/**
+	 * Appends 16 bit little endian samples to the ring. The oldest data will be
+	 * overwritten.
+	 *
+	 * @param data
+	 *            The samples as bytes. Must not be null.
+	 * @param offset
+	 *            The first byte to write.
+	 * @param length
+	 *            The number of bytes to write.
+	 */
+	public void write(@Nonnull byte[] data, int offset, int length) {
+
+		synchronized (lock) {
+			int ringPosition = (int) (writePosition % capacity);
+			int firstPart = Math.min(length, capacity - ringPosition);
+
+			writeBuffer.position(ringPosition);
+			writeBuffer.put(data, offset, firstPart);
+
+			if (firstPart < length) {
+				writeBuffer.position(0);
+				writeBuffer.put(data, offset + firstPart, length - firstPart);
+			}
+
+			writePosition += length;
+			mappedBuffer.putLong(WRITE_POSITION, writePosition);
+		}
+	}
+
+	/**
+	 * Writes the content of the ring to a wave file. The playback won't be
+	 * interrupted: the ring is copied without holding the lock, afterwards
+	 * the data which has been overwritten in the meantime is skipped.
+	 *
+	 * @param file
+	 *            The wave file to create. Must not be null.
+	 * @throws IOException
+	 *             if an error occurs within the file handling.
+	 */
+	public void dumpToWaveFile(@Nonnull File file) throws IOException {
+
+		long end;
+
+		synchronized (lock) {
+			end = writePosition;
+		}
+
+		long start = Math.max(0, end - capacity);
+		int size = (int) (end - start);
+
+		ByteBuffer readBuffer = writeBuffer.duplicate();
+		byte[] data = new byte[size];
+
+		int ringPosition = (int) (start % capacity);
+		int firstPart = Math.min(size, capacity - ringPosition);
+
+		readBuffer.position(ringPosition);
+		readBuffer.get(data, 0, firstPart);
+
+		if (firstPart < size) {
+			readBuffer.position(0);
+			readBuffer.get(data, firstPart, size - firstPart);
+		}
+
+		// Every write which has started before is finished when the lock is
+		// taken, so all bytes before this position are still valid
+		long overwritten;
+
+		synchronized (lock) {
+			overwritten = writePosition - capacity;
+		}
+
+		int skip = (int) Math.min(size, Math.max(0, overwritten - start));
+		skip += skip % BYTES_PER_SAMPLE;
+
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+			WaveFileWriter.writeHeader(output, sampleRate, size - skip);
+			output.write(data, skip, size - skip);
+		}
+	}
+
+	/**
+	 * Flushes the ring to the disk and closes the ring file.
+	 */
+	public void close() {
+		synchronized (lock) {
+			mappedBuffer.force();
+		}
+		try {
+			ringFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
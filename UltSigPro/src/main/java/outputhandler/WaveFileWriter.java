@@ -0,0 +1,70 @@
+package outputhandler;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Helper for writing the header of mono 16 bit PCM wave files.
+ *
+ * @author Kone
+ *
+ */
+class WaveFileWriter {
+
+	private WaveFileWriter() {
+
+	}
+
+	/**
+	 * Writes the RIFF, format and data section headers. The sample data has to
+	 * be written afterwards as 16 bit little endian values.
+	 *
+	 * @param output
+	 *            The stream to write to.
+	 * @param sampleRate
+	 *            The sample rate of the wave file.
+	 * @param dataSize
+	 *            The size of the following data section in bytes.
+	 * @throws IOException
+	 *             if the stream can't be written.
+	 */
+	static void writeHeader(DataOutputStream output, int sampleRate, int dataSize) throws IOException {
+
+		// RIFF section
+		writeString(output, "RIFF");
+		writeInt(output, dataSize + 36);
+		writeString(output, "WAVE");
+
+		// format section
+		writeString(output, "fmt "); // header signature (space necessary)
+		writeInt(output, 16); // following format section size
+		writeShort(output, (short) 1); // audio format (1 = PCM)
+		writeShort(output, (short) 1); // number of channels
+		writeInt(output, sampleRate); // sample rate
+		writeInt(output, sampleRate * 2); // byte rate (byte/second)
+		writeShort(output, (short) 2); // frame size
+		writeShort(output, (short) 16); // bits per sample
+
+		// data section
+		writeString(output, "data"); // header signature
+		writeInt(output, dataSize); // following data section size
+	}
+
+	private static void writeInt(final DataOutputStream output, final int value) throws IOException {
+		output.write(value >> 0);
+		output.write(value >> 8);
+		output.write(value >> 16);
+		output.write(value >> 24);
+	}
+
+	private static void writeShort(final DataOutputStream output, final short value) throws IOException {
+		output.write(value >> 0);
+		output.write(value >> 8);
+	}
+
+	private static void writeString(final DataOutputStream output, final String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			output.write(value.charAt(i));
+		}
+	}
+}
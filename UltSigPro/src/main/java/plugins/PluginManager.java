@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
 import java.util.List;
 
 import javax.annotation.CheckForNull;
@@ -14,6 +15,7 @@ import logging.CommonLogger;
 import pluginframework.PluginLoader;
 import plugins.commonplugins.CommonPlugin;
 import plugins.sigproplugins.SigproPlugin;
+import plugins.sigproplugins.sandbox.SandboxedPlugin;
 import resourceframework.GlobalResourceProvider;
 import resourceframework.ResourceProviderException;
 
@@ -33,6 +35,9 @@ public class PluginManager {
 	private File sigproDirFile;
 	private File commonDirFile;
 
+	// External signal processing plugins which run in a sandbox host
+	private HashSet<String> sandboxedPlugins = new HashSet<>();
+
 	private static PluginManager instance;
 
 	/**
@@ -66,6 +71,16 @@ public class PluginManager {
 
 			registerPlugins("common");
 			registerPlugins("sigpro");
+
+			GlobalResourceProvider resProv = GlobalResourceProvider.getInstance();
+
+			if (resProv.checkRegistered("sandboxedPlugins")) {
+				for (String name : ((String) resProv.getResource("sandboxedPlugins")).split(",")) {
+					if (!name.trim().isEmpty()) {
+						sandboxedPlugins.add(name.trim());
+					}
+				}
+			}
 		} catch (ResourceProviderException e) {
 			CommonLogger.getInstance().logMessageAndException("Working directory requested but not registered", e);
 			throw new RuntimeException(e);
@@ -214,7 +229,10 @@ public class PluginManager {
 	}
 
 	/**
-	 * Creates a new instance of the requested signal processing plugin
+	 * Creates a new instance of the requested signal processing plugin. An
+	 * external plugin which is sandboxed (see
+	 * {@link #setSandboxed(String, boolean)}) is started in a separate JVM
+	 * and returned as {@link SandboxedPlugin}.
 	 * 
 	 * @param name
 	 *            the name of the requested plugin. Must not be null.
@@ -226,9 +244,44 @@ public class PluginManager {
 	 */
 	@CheckForNull
 	public SigproPlugin getSigproPlugin(String name) throws InstantiationException, IllegalAccessException {
+		if (isSandboxed(name) && getAvailableExternSigproPlugins().contains(name)) {
+			return new SandboxedPlugin(name, new File(sigproDir + File.separator + name + ".jar"));
+		}
 		return sigproLoader.getPlugin(name);
 	}
 
+	/**
+	 * Selects if new instances of an external signal processing plugin run in
+	 * a separate JVM, so a crash or a hanging plugin can't affect the signal
+	 * processing. Existing instances aren't changed. The initial selection is
+	 * read from the resource "sandboxedPlugins", a comma separated list of
+	 * plugin names.
+	 * 
+	 * @param name
+	 *            the name of the plugin. Must not be null.
+	 * @param sandboxed
+	 *            true to run the plugin in a sandbox.
+	 */
+	public void setSandboxed(@Nonnull String name, boolean sandboxed) {
+		if (sandboxed) {
+			sandboxedPlugins.add(name);
+		} else {
+			sandboxedPlugins.remove(name);
+		}
+	}
+
+	/**
+	 * Checks if new instances of a plugin run in a sandbox, see
+	 * {@link #setSandboxed(String, boolean)}.
+	 * 
+	 * @param name
+	 *            the name of the plugin. Must not be null.
+	 * @return true if the plugin is sandboxed.
+	 */
+	public boolean isSandboxed(@Nonnull String name) {
+		return sandboxedPlugins.contains(name);
+	}
+
 	/**
 	 * Creates a new instance of the requested common plugin
 	 * 
@@ -0,0 +1,162 @@
+package plugins.sigproplugins;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A value of a plugin which can be changed while the plugin is processed,
+ * e.g. a gain. The GUI and automation write the value with
+ * {@link #setValue(double)} from any thread. The value is a volatile field,
+ * so neither the writers nor the signal processing wait for a lock or
+ * allocate memory.<br/>
+ * <br/>
+ * Plugins which use a {@link channel.dataflow.ProcessContext} don't read the
+ * value directly. The signal processing ramps from the previous to the new
+ * value within the smoothing time and provides one value per sample, so a
+ * change doesn't cause zipper noise.
+ * 
+ * @author roland
+ *
+ */
+public class Parameter {
+
+	/**
+	 * The default smoothing time in seconds.
+	 */
+	public static final double DEFAULT_SMOOTHING_TIME = 0.02;
+
+	private final String name;
+	private final String unit;
+	private final double min;
+	private final double max;
+	private final double defaultValue;
+	private final double smoothingTime;
+
+	private volatile double value;
+
+	/**
+	 * Creates a new parameter with the default smoothing time.
+	 * 
+	 * @param name
+	 *            The name which is shown to the user. Must not be null.
+	 * @param unit
+	 *            The unit of the value, e.g. "dB". Empty for factors. Must not
+	 *            be null.
+	 * @param min
+	 *            The lowest value.
+	 * @param max
+	 *            The highest value.
+	 * @param defaultValue
+	 *            The initial value. Must be within [min, max].
+	 */
+	public Parameter(@Nonnull String name, @Nonnull String unit, double min, double max, double defaultValue) {
+		this(name, unit, min, max, defaultValue, DEFAULT_SMOOTHING_TIME);
+	}
+
+	/**
+	 * Creates a new parameter.
+	 * 
+	 * @param name
+	 *            The name which is shown to the user. Must not be null.
+	 * @param unit
+	 *            The unit of the value, e.g. "dB". Empty for factors. Must not
+	 *            be null.
+	 * @param min
+	 *            The lowest value.
+	 * @param max
+	 *            The highest value.
+	 * @param defaultValue
+	 *            The initial value. Must be within [min, max].
+	 * @param smoothingTime
+	 *            The time in seconds in which the signal processing ramps to
+	 *            a new value. 0 for values which must change immediately.
+	 */
+	public Parameter(@Nonnull String name, @Nonnull String unit, double min, double max, double defaultValue,
+			double smoothingTime) {
+
+		if (min > max || defaultValue < min || defaultValue > max) {
+			throw new IllegalArgumentException("The default value of " + name + " isn't within its range");
+		}
+
+		this.name = name;
+		this.unit = unit;
+		this.min = min;
+		this.max = max;
+		this.defaultValue = defaultValue;
+		this.smoothingTime = Math.max(0, smoothingTime);
+		this.value = defaultValue;
+	}
+
+	/**
+	 * Sets a new value. May be called from any thread. Values outside of the
+	 * range are limited to the range.
+	 * 
+	 * @param value
+	 *            The new value. NaN is ignored.
+	 */
+	public void setValue(double value) {
+
+		if (Double.isNaN(value)) {
+			return;
+		}
+
+		this.value = limit(value);
+	}
+
+	/**
+	 * Limits a value to the range of this parameter.
+	 * 
+	 * @param value
+	 *            The value.
+	 * @return the value within [min, max]
+	 */
+	public double limit(double value) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * The value which has been set last. May be called from any thread.
+	 * 
+	 * @return the value without smoothing
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * Sets the default value.
+	 */
+	public void reset() {
+		value = defaultValue;
+	}
+
+	@Nonnull
+	public String getName() {
+		return name;
+	}
+
+	@Nonnull
+	public String getUnit() {
+		return unit;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getDefaultValue() {
+		return defaultValue;
+	}
+
+	/**
+	 * The time in which the signal processing ramps to a new value.
+	 * 
+	 * @return the smoothing time in seconds
+	 */
+	public double getSmoothingTime() {
+		return smoothingTime;
+	}
+}
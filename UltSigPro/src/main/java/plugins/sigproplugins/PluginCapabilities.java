@@ -0,0 +1,126 @@
+package plugins.sigproplugins;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The declarations of one plugin which the signal processing uses to
+ * schedule it, see the corresponding methods of {@link SigproPlugin}. The
+ * declarations are read once and normalized, so a plan doesn't depend on
+ * plugins which change their answers.
+ * 
+ * @author roland
+ *
+ */
+public final class PluginCapabilities {
+
+	private final boolean processContext;
+	private final boolean inPlace;
+	private final boolean stateless;
+	private final boolean optional;
+	private final int latency;
+	private final int tailLength;
+	private final int rateDivisor;
+	private final int preferredBlockSize;
+	private final boolean blockSizeRequired;
+	private final boolean threadSafe;
+	private final boolean realtimeSafe;
+
+	/**
+	 * Reads the declarations of a plugin.
+	 * 
+	 * @param plugin
+	 *            The plugin. Must not be null.
+	 */
+	public PluginCapabilities(@Nonnull SigproPlugin plugin) {
+		this.processContext = plugin.usesProcessContext();
+		// Plugins with a process context never modify their inputs
+		this.inPlace = plugin.isInPlace() && !processContext;
+		this.stateless = plugin.isStateless();
+		this.optional = plugin.isOptional();
+		this.latency = Math.max(0, plugin.getLatency());
+		this.tailLength = Math.max(SigproPlugin.INFINITE_TAIL, plugin.getTailLength());
+		this.rateDivisor = plugin.getRateDivisor();
+		this.preferredBlockSize = Math.max(0, plugin.getPreferredBlockSize());
+		this.blockSizeRequired = preferredBlockSize > 0 && plugin.isBlockSizeRequired();
+		this.threadSafe = plugin.isThreadSafe();
+		// putData creates the lists of its outputs with every call
+		this.realtimeSafe = processContext && plugin.isRealtimeSafe();
+	}
+
+	/**
+	 * @see SigproPlugin#usesProcessContext()
+	 */
+	public boolean usesProcessContext() {
+		return processContext;
+	}
+
+	/**
+	 * @see SigproPlugin#isInPlace()
+	 */
+	public boolean isInPlace() {
+		return inPlace;
+	}
+
+	/**
+	 * @see SigproPlugin#isStateless()
+	 */
+	public boolean isStateless() {
+		return stateless;
+	}
+
+	/**
+	 * @see SigproPlugin#isOptional()
+	 */
+	public boolean isOptional() {
+		return optional;
+	}
+
+	/**
+	 * @see SigproPlugin#getLatency()
+	 */
+	public int getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @see SigproPlugin#getTailLength()
+	 */
+	public int getTailLength() {
+		return tailLength;
+	}
+
+	/**
+	 * @see SigproPlugin#getRateDivisor()
+	 */
+	public int getRateDivisor() {
+		return rateDivisor;
+	}
+
+	/**
+	 * @see SigproPlugin#getPreferredBlockSize()
+	 */
+	public int getPreferredBlockSize() {
+		return preferredBlockSize;
+	}
+
+	/**
+	 * @see SigproPlugin#isBlockSizeRequired()
+	 */
+	public boolean isBlockSizeRequired() {
+		return blockSizeRequired;
+	}
+
+	/**
+	 * @see SigproPlugin#isThreadSafe()
+	 */
+	public boolean isThreadSafe() {
+		return threadSafe;
+	}
+
+	/**
+	 * @see SigproPlugin#isRealtimeSafe()
+	 */
+	public boolean isRealtimeSafe() {
+		return realtimeSafe;
+	}
+}
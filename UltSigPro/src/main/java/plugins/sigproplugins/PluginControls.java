@@ -0,0 +1,144 @@
+package plugins.sigproplugins;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Bypass, mute and wet/dry mix of one plugin instance. These controls are
+ * provided by the signal processing for every plugin, so a plugin doesn't
+ * need to implement them. May be changed from any thread.<br/>
+ * <br/>
+ * The signal processing fades between the states within
+ * {@link #CROSSFADE_TIME}, so toggling doesn't click. A bypassed or muted
+ * plugin isn't called once the fade has finished. The dry signal is the data
+ * of the first input of the plugin, which is passed to all outputs.<br/>
+ * <br/>
+ * The bypass may be changed by the context menu of the plugin, its own GUI or
+ * the signal processing, e.g. if an external plugin fails. A GUI which shows
+ * the state registers a {@link Listener}.
+ * 
+ * @author roland
+ *
+ */
+public class PluginControls {
+
+	/**
+	 * The time in seconds of the fade between the states.
+	 */
+	public static final double CROSSFADE_TIME = 0.005;
+
+	/**
+	 * Is informed about changes of the controls.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called by the thread which has changed the bypass, which may be a
+		 * thread of the signal processing. A GUI must hand the update to the
+		 * JavaFX thread.
+		 * 
+		 * @param bypassed
+		 *            The new state of the bypass.
+		 */
+		void bypassChanged(boolean bypassed);
+	}
+
+	private final Parameter mix = new Parameter("Mix", "", 0.0, 1.0, 1.0, CROSSFADE_TIME);
+
+	private volatile boolean bypassed = false;
+	private volatile boolean muted = false;
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Registers a listener for changes of the controls.
+	 * 
+	 * @param listener
+	 *            The {@link Listener}. Must not be null.
+	 */
+	public void addListener(@Nonnull Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(@Nonnull Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Bypasses the plugin. The data of its first input is passed to all
+	 * outputs.
+	 * 
+	 * @param bypassed
+	 *            true to bypass the plugin.
+	 */
+	public void setBypassed(boolean bypassed) {
+
+		if (this.bypassed == bypassed) {
+			return;
+		}
+
+		this.bypassed = bypassed;
+
+		for (Listener listener : listeners) {
+			listener.bypassChanged(bypassed);
+		}
+	}
+
+	public boolean isBypassed() {
+		return bypassed;
+	}
+
+	/**
+	 * Mutes all outputs of the plugin.
+	 * 
+	 * @param muted
+	 *            true to mute the plugin.
+	 */
+	public void setMuted(boolean muted) {
+		this.muted = muted;
+	}
+
+	public boolean isMuted() {
+		return muted;
+	}
+
+	/**
+	 * The ratio of the processed signal within the outputs of the plugin. 0
+	 * passes only the dry signal, 1 only the processed signal. Can be
+	 * automated like a parameter of the plugin.
+	 * 
+	 * @return the mix {@link Parameter}. Won't be null.
+	 */
+	@Nonnull
+	public Parameter getMix() {
+		return mix;
+	}
+
+	/**
+	 * The ratio of the processed signal which is currently requested.
+	 * 
+	 * @return 0 if the plugin is bypassed, else the mix.
+	 */
+	public double getEffectAmount() {
+		return bypassed ? 0.0 : mix.getValue();
+	}
+
+	/**
+	 * The output level which is currently requested.
+	 * 
+	 * @return 0 if the plugin is muted, else 1.
+	 */
+	public double getLevel() {
+		return muted ? 0.0 : 1.0;
+	}
+
+	/**
+	 * Sets the defaults: not bypassed, not muted and only the processed
+	 * signal.
+	 */
+	public void reset() {
+		setBypassed(false);
+		muted = false;
+		mix.reset();
+	}
+}
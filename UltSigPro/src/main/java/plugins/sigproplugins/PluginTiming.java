@@ -0,0 +1,103 @@
+package plugins.sigproplugins;
+
+import java.util.Arrays;
+
+/**
+ * Execution time of one plugin instance. The signal processing only times a
+ * sample of the invocations, so the measurement doesn't add a noticeable
+ * load. The mean is a moving average, the percentiles are calculated over the
+ * last 128 samples.<br/>
+ * <br/>
+ * The samples are recorded without a lock by the thread which processes the
+ * plugin. Only one thread may record at a time. The readers take a snapshot
+ * of the window, which may already contain samples which have been recorded
+ * while it has been copied.
+ * 
+ * @author roland
+ *
+ */
+public class PluginTiming {
+
+	private static final int WINDOW_SIZE = 128;
+	private static final double SMOOTHING = 1.0 / 16;
+
+	private final long[] window = new long[WINDOW_SIZE];
+	private volatile double average = 0;
+
+	// The number of samples which have ever been recorded. It is written
+	// after the sample, so a reader sees the samples up to this number.
+	private volatile long recorded = 0;
+	// The value of recorded at the last reset
+	private volatile long resetPosition = 0;
+
+	/**
+	 * Records the execution time of one invocation. Doesn't allocate memory
+	 * and doesn't lock.
+	 * 
+	 * @param nanos
+	 *            The execution time in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long position = recorded;
+		double current = average;
+
+		window[(int) (position % WINDOW_SIZE)] = nanos;
+		average = position <= resetPosition ? nanos : current + SMOOTHING * (nanos - current);
+		recorded = position + 1;
+	}
+
+	/**
+	 * The number of samples within the window.
+	 * 
+	 * @return the number of samples. 0 if the plugin hasn't been timed yet.
+	 */
+	public int getCount() {
+		return (int) Math.min(WINDOW_SIZE, Math.max(0, recorded - resetPosition));
+	}
+
+	/**
+	 * The moving average of the execution time.
+	 * 
+	 * @return the execution time in nanoseconds
+	 */
+	public long getAverage() {
+		return getCount() == 0 ? 0 : (long) average;
+	}
+
+	/**
+	 * The execution time which isn't exceeded by the given fraction of the
+	 * recent samples.
+	 * 
+	 * @param percentile
+	 *            The percentile between 0 and 1, e.g. 0.99.
+	 * @return the execution time in nanoseconds
+	 */
+	public long getPercentile(double percentile) {
+
+		long end = recorded;
+		int count = (int) Math.min(WINDOW_SIZE, Math.max(0, end - resetPosition));
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long[] sorted = new long[count];
+
+		for (int k = 0; k < count; k++) {
+			sorted[k] = window[(int) ((end - 1 - k) % WINDOW_SIZE)];
+		}
+
+		Arrays.sort(sorted);
+
+		int index = (int) Math.ceil(count * percentile) - 1;
+
+		return sorted[Math.max(0, Math.min(count - 1, index))];
+	}
+
+	/**
+	 * Discards all samples.
+	 */
+	public void reset() {
+		resetPosition = recorded;
+	}
+}
@@ -1,22 +1,29 @@
 package plugins.sigproplugins;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import javax.annotation.Nonnull;
 
 import channel.OutputDataWrapper;
+import channel.dataflow.ProcessContext;
+import channel.dataflow.SamplePrecision;
 import channel.gui.Input;
 import channel.gui.MaxCoordinatesInterface;
 import channel.gui.Output;
 import channel.gui.PluginConfigGroup;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.input.ContextMenuEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
+import javafx.stage.WindowEvent;
 import pluginframework.PluginInterface;
 
 /**
@@ -28,9 +35,29 @@ import pluginframework.PluginInterface;
  */
 public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInterface {
 
+	/**
+	 * Tail length of plugins which must never be skipped, see
+	 * {@link #getTailLength()}.
+	 */
+	public static final int INFINITE_TAIL = -1;
+
+	private static final Parameter[] NO_PARAMETERS = new Parameter[0];
+
 	protected Pane gui;
 	
 	private ContextMenu contextMenu;
+	private Label loadLabel;
+	
+	private final PluginTiming timing = new PluginTiming();
+	private final PluginControls controls = new PluginControls();
+
+	// Conversion buffers of the default putFloatData per port
+	private final HashMap<String, double[]> doubleInputBuffers = new HashMap<>();
+	private final HashMap<String, float[]> floatOutputBuffers = new HashMap<>();
+
+	// Copies of the joined inputs for the default process per port
+	private final HashMap<String, double[]> contextInputs = new HashMap<>();
+	private final HashMap<String, float[]> floatContextInputs = new HashMap<>();
 	
 	private boolean dragged = false;
 	private boolean hovered = false;
@@ -72,7 +99,46 @@ public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInt
 				
 			});
 			
-			contextMenu.getItems().add(deleteItem);
+			final CheckMenuItem bypassItem = new CheckMenuItem("Bypass");
+			bypassItem.setOnAction(new EventHandler<ActionEvent> () {
+
+				@Override
+				public void handle(ActionEvent event) {
+					
+					controls.setBypassed(bypassItem.isSelected());
+				}
+				
+			});
+			
+			final CheckMenuItem muteItem = new CheckMenuItem("Stumm");
+			muteItem.setOnAction(new EventHandler<ActionEvent> () {
+
+				@Override
+				public void handle(ActionEvent event) {
+					
+					controls.setMuted(muteItem.isSelected());
+				}
+				
+			});
+			
+			// The controls may have been changed by the plugin or automation
+			contextMenu.setOnShowing(new EventHandler<WindowEvent> () {
+
+				@Override
+				public void handle(WindowEvent event) {
+					
+					bypassItem.setSelected(controls.isBypassed());
+					muteItem.setSelected(controls.isMuted());
+				}
+				
+			});
+			
+			contextMenu.getItems().addAll(bypassItem, muteItem, deleteItem);
+			
+			// The load is shown below the plugin
+			loadLabel = new Label();
+			loadLabel.layoutYProperty().bind(gui.heightProperty());
+			gui.getChildren().add(loadLabel);
 			
 			gui.addEventHandler(MouseEvent.MOUSE_CLICKED, new EventHandler<MouseEvent>() {
 
@@ -226,6 +292,50 @@ public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInt
 		this.coordinatesListener = coordinatesListener;
 	}
 	
+	/**
+	 * Provides the execution time of this plugin, which is measured by the
+	 * signal processing.
+	 * 
+	 * @return the {@link PluginTiming}. Won't be null.
+	 */
+	@Nonnull
+	public PluginTiming getTiming() {
+		return timing;
+	}
+	
+	/**
+	 * Provides the bypass, mute and wet/dry mix of this plugin, which are
+	 * applied by the signal processing.
+	 * 
+	 * @return the {@link PluginControls}. Won't be null.
+	 */
+	@Nonnull
+	public PluginControls getControls() {
+		return controls;
+	}
+	
+	/**
+	 * Shows the mean and the 99th percentile of the execution time as
+	 * percentage of the block period below the gui. Must be called on the
+	 * JavaFX application thread.
+	 * 
+	 * @param blockPeriod
+	 *            The time between two blocks of the channel in nanoseconds.
+	 */
+	public void updateLoadDisplay(long blockPeriod) {
+		
+		if(loadLabel == null || blockPeriod <= 0) {
+			return;
+		}
+		
+		if(timing.getCount() == 0) {
+			loadLabel.setText("");
+		} else {
+			loadLabel.setText(String.format("CPU %.1f %% (p99 %.1f %%)", 100.0 * timing.getAverage() / blockPeriod,
+					100.0 * timing.getPercentile(0.99) / blockPeriod));
+		}
+	}
+	
 	/**
 	 * Returns the name of the plugin. The name will be displayed in the header
 	 * of the external gui.
@@ -264,7 +374,14 @@ public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInt
 	/**
 	 * Will be called by the underlying signal processing system. The
 	 * implementation of this method must execute the signal processing and
-	 * write the data to the outputs.
+	 * write the data to the outputs. Plugins which process with a
+	 * {@link ProcessContext} (see {@link #usesProcessContext()}) aren't called
+	 * with this method.<br/>
+	 * <br/>
+	 * The data array may be shared with other plugins. It may only be modified
+	 * or returned as output if {@link #isInPlace()} returns true. Arrays returned in the
+	 * {@link OutputDataWrapper}s are passed to the connected plugins without a
+	 * copy, so they must not be used as internal state.
 	 * 
 	 * @param input
 	 * 
@@ -273,6 +390,332 @@ public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInt
 	 */
 	public abstract LinkedList<OutputDataWrapper> putData(String input, double[] data);
 
+	/**
+	 * Single precision variant of {@link #putData(String, double[])}. Will be
+	 * called instead of putData if the session uses
+	 * {@link channel.dataflow.SamplePrecision#FLOAT}. The same rules for
+	 * modifying and returning the data apply.<br/>
+	 * <br/>
+	 * The default implementation converts the data and calls putData. The
+	 * converted data is kept in buffers per port, which are reused with the
+	 * next call, so only the list of the outputs is created per call. Plugins
+	 * should override it to avoid the conversion.
+	 * 
+	 * @param input
+	 *            The input which receives the data.
+	 * @param data
+	 *            The new data package.
+	 * @return the data for the outputs as float arrays or null if there isn't
+	 *         any output data.
+	 */
+	public LinkedList<OutputDataWrapper> putFloatData(String input, float[] data) {
+
+		double[] doubleData = doubleInputBuffers.get(input);
+
+		if (doubleData == null || doubleData.length != data.length) {
+			doubleData = new double[data.length];
+			doubleInputBuffers.put(input, doubleData);
+		}
+
+		for (int i = 0; i < data.length; i++) {
+			doubleData[i] = data[i];
+		}
+
+		LinkedList<OutputDataWrapper> outputs = putData(input, doubleData);
+
+		if (outputs == null) {
+			return null;
+		}
+
+		LinkedList<OutputDataWrapper> floatOutputs = new LinkedList<>();
+
+		for (OutputDataWrapper output : outputs) {
+			double[] outputData = output.getOutputData();
+			String outputName = output.getOutputInfo().getSourceOutput();
+			float[] floatData = floatOutputBuffers.get(outputName);
+
+			if (floatData == null || floatData.length != outputData.length) {
+				floatData = new float[outputData.length];
+				floatOutputBuffers.put(outputName, floatData);
+			}
+
+			for (int i = 0; i < outputData.length; i++) {
+				floatData[i] = (float) outputData[i];
+			}
+
+			floatOutputs.add(new OutputDataWrapper(output.getOutputInfo(), floatData));
+		}
+
+		return floatOutputs;
+	}
+
+	/**
+	 * Declares if this plugin processes its data with
+	 * {@link #process(ProcessContext)} instead of one input after another with
+	 * {@link #putData(String, double[])}. The signal processing collects the
+	 * data of all inputs of a block and provides preallocated output buffers,
+	 * so the processing doesn't need to compare port names or allocate any
+	 * memory. New plugins should use the process context. The putData
+	 * methods are kept for existing plugins.
+	 * 
+	 * @return true if {@link #process(ProcessContext)} is used. The default is
+	 *         false.
+	 */
+	public boolean usesProcessContext() {
+		return false;
+	}
+
+	/**
+	 * The inputs of this plugin in a fixed order. The position of an input
+	 * within the array is its index within the {@link ProcessContext}, so
+	 * the ports are bound to indices when the plugins are connected.
+	 * 
+	 * @return the names of the inputs. Won't be null. The default are the
+	 *         inputs of {@link #getInputConfig()} in alphabetical order.
+	 */
+	@Nonnull
+	public String[] getInputPorts() {
+		String[] ports = getInputConfig().toArray(new String[0]);
+		Arrays.sort(ports);
+		return ports;
+	}
+
+	/**
+	 * The outputs of this plugin in a fixed order, see
+	 * {@link #getInputPorts()}.
+	 * 
+	 * @return the names of the outputs. Won't be null. The default are the
+	 *         outputs of {@link #getOutputConfig()} in alphabetical order.
+	 */
+	@Nonnull
+	public String[] getOutputPorts() {
+		String[] ports = getOutputConfig().toArray(new String[0]);
+		Arrays.sort(ports);
+		return ports;
+	}
+
+	/**
+	 * The parameters of this plugin in a fixed order. The position of a
+	 * parameter within the array is its index within the
+	 * {@link ProcessContext}. Must return the same instances with every
+	 * call.
+	 * 
+	 * @return the parameters. Won't be null. The default is an empty array.
+	 */
+	@Nonnull
+	public Parameter[] getParameters() {
+		return NO_PARAMETERS;
+	}
+
+	/**
+	 * Will be called by the underlying signal processing system once per
+	 * block if {@link #usesProcessContext()} returns true. The implementation
+	 * must read the inputs from the context and write all outputs of the
+	 * context. It must not allocate memory.<br/>
+	 * <br/>
+	 * The default implementation passes a copy of every joined input to
+	 * putData or putFloatData and copies the returned data into the outputs,
+	 * like the processing without a context. Plugins which use the context
+	 * should override it.
+	 * 
+	 * @param context
+	 *            The input and output buffers of the current block. Must not
+	 *            be null.
+	 */
+	public void process(@Nonnull ProcessContext context) {
+
+		int blockSize = context.getBlockSize();
+		boolean single = context.getPrecision() == SamplePrecision.FLOAT;
+
+		for (int o = 0; o < context.getOutputCount(); o++) {
+			if (single) {
+				Arrays.fill(context.getFloatOutput(o), 0, blockSize, 0.0f);
+			} else {
+				Arrays.fill(context.getOutput(o), 0, blockSize, 0.0);
+			}
+		}
+
+		for (int i = 0; i < context.getInputCount(); i++) {
+			String input = context.getInputName(i);
+			LinkedList<OutputDataWrapper> outputs;
+
+			// The joined input may be read again by the signal processing,
+			// e.g. for the dry signal
+			if (single) {
+				float[] data = floatContextInputs.get(input);
+
+				if (data == null || data.length != blockSize) {
+					data = new float[blockSize];
+					floatContextInputs.put(input, data);
+				}
+
+				System.arraycopy(context.getFloatInput(i), 0, data, 0, blockSize);
+				outputs = putFloatData(input, data);
+			} else {
+				double[] data = contextInputs.get(input);
+
+				if (data == null || data.length != blockSize) {
+					data = new double[blockSize];
+					contextInputs.put(input, data);
+				}
+
+				System.arraycopy(context.getInput(i), 0, data, 0, blockSize);
+				outputs = putData(input, data);
+			}
+
+			if (outputs == null) {
+				continue;
+			}
+
+			for (OutputDataWrapper output : outputs) {
+				int o = context.getOutputIndex(output.getOutputInfo().getSourceOutput());
+
+				if (o < 0) {
+					continue;
+				}
+
+				if (single && output.getFloatOutputData() != null) {
+					float[] data = output.getFloatOutputData();
+					System.arraycopy(data, 0, context.getFloatOutput(o), 0, Math.min(blockSize, data.length));
+				} else if (!single && output.getOutputData() != null) {
+					double[] data = output.getOutputData();
+					System.arraycopy(data, 0, context.getOutput(o), 0, Math.min(blockSize, data.length));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Declares if this plugin works in place, which means it writes into the
+	 * data arrays given to {@link #putData(String, double[])} or passes them on
+	 * as output. Plugins which only read their input data within putData and
+	 * don't keep a reference to it should return false. This allows the
+	 * signal processing system to pass the same array to several plugins
+	 * without copying it.
+	 * 
+	 * @return true if the input data may be modified, false if not. The
+	 *         default is true.
+	 */
+	public boolean isInPlace() {
+		return true;
+	}
+
+	/**
+	 * Declares if this plugin may be bypassed while its channel is
+	 * overloaded, see {@link channel.DegradationPolicy#BYPASS_OPTIONAL}. A
+	 * bypassed plugin isn't called, the data of its first input is passed to
+	 * all of its outputs.
+	 * 
+	 * @return true if the plugin isn't essential for the signal. The default
+	 *         is false.
+	 */
+	public boolean isOptional() {
+		return false;
+	}
+
+	/**
+	 * Declares the processing latency of this plugin, e.g. the lookahead of a
+	 * limiter. If paths with different latencies are merged, the signal
+	 * processing delays the faster paths, so all inputs of a plugin are time
+	 * aligned.
+	 * 
+	 * @return the delay between input and output data in samples. The
+	 *         default is 0.
+	 */
+	public int getLatency() {
+		return 0;
+	}
+
+	/**
+	 * Declares how long the output of this plugin may still contain a signal
+	 * after its inputs have become silent, e.g. the decay of a reverb. A
+	 * plugin whose inputs have been silent for longer than its tail isn't
+	 * called, its outputs are silent until one of the inputs carries a
+	 * signal again.
+	 * 
+	 * @return the tail length in samples or {@link #INFINITE_TAIL} if the
+	 *         plugin must never be skipped, e.g. because it generates a
+	 *         signal on its own. The default is {@link #INFINITE_TAIL}.
+	 */
+	public int getTailLength() {
+		return INFINITE_TAIL;
+	}
+
+	/**
+	 * Declares the rate at which this plugin is executed. Analysis or control
+	 * plugins, e.g. envelope followers, don't need the full sample rate. A
+	 * plugin with a rate divisor of n receives its data at 1/n of the device
+	 * rate and is only executed every n blocks. The signal processing
+	 * converts the data at connections between different rates.
+	 * 
+	 * @return 1, 2, 4 or 8. The default is 1.
+	 */
+	public int getRateDivisor() {
+		return 1;
+	}
+
+	/**
+	 * Declares if the output of this plugin only depends on the current
+	 * block of its inputs, e.g. a gain or a mixer. A stateless plugin doesn't
+	 * need to be reset when it is resumed after it hasn't been called.
+	 * 
+	 * @return true if the plugin keeps no state between blocks. The default
+	 *         is false.
+	 */
+	public boolean isStateless() {
+		return false;
+	}
+
+	/**
+	 * Declares the block size which suits this plugin best, e.g. the size of
+	 * an FFT. The channel uses it if no block size is configured.
+	 * 
+	 * @return the block size in samples or 0 if the plugin works with any
+	 *         block size. The default is 0.
+	 */
+	public int getPreferredBlockSize() {
+		return 0;
+	}
+
+	/**
+	 * Declares if this plugin only works with its preferred block size (see
+	 * {@link #getPreferredBlockSize()}). The channel uses this block size
+	 * regardless of its configuration, as soon as it is stopped.
+	 * 
+	 * @return true if the preferred block size is required. The default is
+	 *         false.
+	 */
+	public boolean isBlockSizeRequired() {
+		return false;
+	}
+
+	/**
+	 * Declares if several instances of this plugin may be processed at the
+	 * same time by different threads. Plugins which share state between
+	 * their instances, e.g. static buffers, must return false. Their
+	 * instances within one channel are then processed by one thread.
+	 * 
+	 * @return true if the instances are independent. The default is true.
+	 */
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	/**
+	 * Declares if the processing of this plugin never allocates memory,
+	 * blocks or waits for a lock, see {@link #process(ProcessContext)}. Only
+	 * plugins which use the process context can be realtime safe. A parallel
+	 * branch with a plugin which isn't realtime safe isn't forked, it is
+	 * processed by the thread which processes the channel. This thread is a
+	 * worker of the shared {@link channel.dataflow.AudioWorkerPool} as well,
+	 * so a plugin which blocks still delays other channels.
+	 * 
+	 * @return true if the processing is realtime safe. The default is false.
+	 */
+	public boolean isRealtimeSafe() {
+		return false;
+	}
+
 	/**
 	 * Provides the config for the outputs. Each output is marked by a
 	 * {@link String}.
@@ -302,6 +745,43 @@ public abstract class SigproPlugin implements PluginInterface, MaxCoordinatesInt
 	 */
 	public abstract void setPlay(boolean play);
 
+	/**
+	 * Prepares the plugin for the signal processing with the given format.
+	 * Will be called before the plugin is processed for the first time and
+	 * whenever the format changes, but never while the plugin is processed.
+	 * All buffers and filter states should be allocated here, so the
+	 * processing doesn't need to allocate any memory.
+	 * 
+	 * @param sampleRate
+	 *            The sample rate of the data of this plugin in Hz. Already
+	 *            divided by the rate divisor of the plugin.
+	 * @param maxBlockSize
+	 *            The highest number of samples per block.
+	 */
+	public void prepare(int sampleRate, int maxBlockSize) {
+
+	}
+
+	/**
+	 * Clears the state of the plugin, e.g. filter histories and delay lines,
+	 * as if no data has been processed since {@link #prepare(int, int)}. May
+	 * be called by the signal processing thread, so it must not allocate
+	 * memory, block or wait for locks.
+	 */
+	public void reset() {
+
+	}
+
+	/**
+	 * Frees the resources which have been allocated by
+	 * {@link #prepare(int, int)}. Will be called when the plugin is removed
+	 * from the signal processing. The plugin may be prepared again
+	 * afterwards.
+	 */
+	public void release() {
+
+	}
+
 	/**
 	 * The default width of this plugins GUI.
 	 * 
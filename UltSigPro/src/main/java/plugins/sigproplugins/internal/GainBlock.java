@@ -7,6 +7,10 @@ import java.util.LinkedList;
 
 import channel.OutputDataWrapper;
 import channel.OutputInfoWrapper;
+import channel.dataflow.ProcessContext;
+import channel.dataflow.SamplePrecision;
+import dsp.DspKernels;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -21,6 +25,8 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import plugins.sigproplugins.Parameter;
+import plugins.sigproplugins.PluginControls;
 import plugins.sigproplugins.SigproPlugin;
 
 /**
@@ -31,7 +37,16 @@ import plugins.sigproplugins.SigproPlugin;
  */
 public class GainBlock extends SigproPlugin {
 
-	private double gain = 1.0;
+	private static final String INPUT = "In";
+	private static final String OUTPUT = "Out";
+
+	// Indices within the process context, see getInputPorts
+	private static final int INPUT_PORT = 0;
+	private static final int OUTPUT_PORT = 0;
+	private static final int GAIN_PARAMETER = 0;
+
+	private final Parameter gain = new Parameter("Gain", "", 0.0, 16.0, 1.0);
+	private final Parameter[] parameters = { gain };
 	
 	private String name = "Gain";
 	
@@ -42,26 +57,54 @@ public class GainBlock extends SigproPlugin {
 	private TextField gainTextField = new TextField();
 	private Button onButton = new Button("On");
 	private Rectangle onRect = new Rectangle(width - 10, 25);
-	
-	private boolean on = false;
 
 	/**
 	 * Empty default constructor. Needed for instantiation by reflection. 
 	 */
 	public GainBlock() {
+		// The gain is switched on and off by the bypass of the signal
+		// processing, which fades between both states
+		getControls().setBypassed(true);
+		
 		onButton.setOnAction(new EventHandler<ActionEvent>() {
 			
 			@Override
 			public void handle(ActionEvent event) {
 				
-				on = !on;
+				getControls().setBypassed(!getControls().isBypassed());
+			}
+		});
+		
+		// The bypass may also be changed by the context menu or the signal
+		// processing
+		getControls().addListener(new PluginControls.Listener() {
+			
+			@Override
+			public void bypassChanged(final boolean bypassed) {
 				
-				if(on) {
-					onRect.setFill(Color.GREEN);
-				} else {
-					onRect.setFill(Color.GREY);
+				Platform.runLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						onRect.setFill(bypassed ? Color.GREY : Color.GREEN);
+					}
+				});
+			}
+		});
+		
+		gainTextField.setText(Double.toString(gain.getValue()));
+		gainTextField.setOnAction(new EventHandler<ActionEvent>() {
+			
+			@Override
+			public void handle(ActionEvent event) {
+				
+				try {
+					gain.setValue(Double.parseDouble(gainTextField.getText().trim()));
+				} catch (NumberFormatException e) {
+					// Shows the current value again
 				}
 				
+				gainTextField.setText(Double.toString(gain.getValue()));
 			}
 		});
 		
@@ -109,28 +152,96 @@ public class GainBlock extends SigproPlugin {
 		return gui;
 	}
 
+	@Override
+	public boolean usesProcessContext() {
+		
+		return true;
+	}
+
+	@Override
+	public Parameter[] getParameters() {
+		
+		return parameters;
+	}
+
+	@Override
+	public void process(ProcessContext context) {
+		
+		int length = context.getBlockSize();
+		double[] gains = context.getParameter(GAIN_PARAMETER);
+		
+		boolean changing = context.isParameterChanging(GAIN_PARAMETER);
+		
+		if (context.getPrecision() == SamplePrecision.FLOAT) {
+			float[] input = context.getFloatInput(INPUT_PORT);
+			float[] output = context.getFloatOutput(OUTPUT_PORT);
+			
+			if (changing) {
+				DspKernels.multiply(input, gains, output, length);
+			} else {
+				DspKernels.scale(input, (float) gains[0], output, length);
+			}
+		} else {
+			double[] input = context.getInput(INPUT_PORT);
+			double[] output = context.getOutput(OUTPUT_PORT);
+			
+			if (changing) {
+				DspKernels.multiply(input, gains, output, length);
+			} else {
+				DspKernels.scale(input, gains[0], output, length);
+			}
+		}
+	}
+
 	@Override
 	public LinkedList<OutputDataWrapper> putData(String input, double[] data) {
 
-		if(on) {
-			if (input.contentEquals("in")) {
-				for (int i = 0; i < data.length; i++) {
-					data[i] = gain * data[i];
-				}
-			}			
+		if (input.equals(INPUT)) {
+			DspKernels.scale(data, gain.getValue(), data, data.length);
 		}
 
 		LinkedList<OutputDataWrapper> output = new LinkedList<> ();
-		output.add(new OutputDataWrapper(new OutputInfoWrapper(this, "out"), data));
+		output.add(new OutputDataWrapper(new OutputInfoWrapper(this, OUTPUT), data));
+		
+		return output;
+	}
+
+	@Override
+	public LinkedList<OutputDataWrapper> putFloatData(String input, float[] data) {
+		
+		if (input.equals(INPUT)) {
+			DspKernels.scale(data, (float) gain.getValue(), data, data.length);
+		}
+		
+		LinkedList<OutputDataWrapper> output = new LinkedList<> ();
+		output.add(new OutputDataWrapper(new OutputInfoWrapper(this, OUTPUT), data));
 		
 		return output;
 	}
 
+	@Override
+	public int getTailLength() {
+		
+		return 0;
+	}
+
+	@Override
+	public boolean isStateless() {
+		
+		return true;
+	}
+
+	@Override
+	public boolean isRealtimeSafe() {
+		
+		return true;
+	}
+
 	@Override
 	public HashSet<String> getOutputConfig() {
 
 		HashSet<String> outputs = new HashSet<>();
-		outputs.add("Out");
+		outputs.add(OUTPUT);
 
 		return outputs;
 	}
@@ -151,7 +262,7 @@ public class GainBlock extends SigproPlugin {
 	public HashSet<String> getInputConfig() {
 		
 		HashSet<String> inputInfo = new HashSet<>();
-		inputInfo.add("In");
+		inputInfo.add(INPUT);
 		
 		return inputInfo;
 	}
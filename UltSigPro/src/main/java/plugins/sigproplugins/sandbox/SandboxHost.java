@@ -0,0 +1,326 @@
+package plugins.sigproplugins.sandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import channel.dataflow.PluginRunner;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import logging.CommonLogger;
+import pluginframework.PluginLoader;
+import plugins.sigproplugins.SigproPlugin;
+import resourceframework.GlobalResourceProvider;
+
+/**
+ * Main class of the separate JVM in which a {@link SandboxedPlugin} runs an
+ * external plugin. A crash or a hanging plugin can't affect the signal
+ * processing of the application.<br/>
+ * <br/>
+ * The host loads the plugin from its .jar file and reports its ports and
+ * declarations on the standard output, see {@link #READY}. Afterwards the
+ * blocks and commands are exchanged by the {@link SandboxRing}. Messages of
+ * the plugin are redirected to the error output, exceptions are logged to
+ * the logging directory of the application. The host exits when the
+ * application closes the standard input, e.g. because it has terminated.
+ * 
+ * @author roland
+ *
+ */
+public class SandboxHost {
+
+	static final String INPUT = "INPUT";
+	static final String OUTPUT = "OUTPUT";
+	static final String VERSION = "VERSION";
+	static final String LATENCY = "LATENCY";
+	static final String TAIL = "TAIL";
+	static final String DIVISOR = "DIVISOR";
+	static final String ERROR = "ERROR";
+
+	/**
+	 * The last line of the handshake. The ring file has been created.
+	 */
+	static final String READY = "READY";
+
+	// The sample rate until the plugin is prepared
+	private static final int DEFAULT_SAMPLE_RATE = 44100;
+
+	// Number of empty polls before the host starts to sleep
+	private static final int SPIN_COUNT = 20000;
+	private static final long PARK_TIME = 50000;
+
+	private final SigproPlugin plugin;
+	private final SandboxRing ring;
+	private final int inputCount;
+	private final int outputCount;
+
+	private PluginRunner runner;
+	private int blockSize = 0;
+	private double[][] inputs;
+	private double[][] outputs;
+
+	SandboxHost(SigproPlugin plugin, SandboxRing ring, int inputCount, int outputCount) {
+		this.plugin = plugin;
+		this.ring = ring;
+		this.inputCount = inputCount;
+		this.outputCount = outputCount;
+		this.runner = new PluginRunner(plugin, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * Starts the host.
+	 * 
+	 * @param args
+	 *            The path of the .jar file, the name of the plugin, the path
+	 *            of the ring file and optionally the logging directory.
+	 */
+	public static void main(String[] args) {
+
+		// The standard output is reserved for the handshake
+		PrintStream handshake = System.out;
+		System.setOut(System.err);
+
+		if (args.length != 3 && args.length != 4) {
+			handshake.println(ERROR + " Usage: SandboxHost <jar file> <plugin name> <ring file> [logging path]");
+			System.exit(1);
+		}
+
+		if (args.length == 4) {
+			GlobalResourceProvider.getInstance().registerResource("loggingPath", args[3]);
+		}
+
+		SandboxHost host;
+
+		try {
+			startToolkit();
+
+			PluginLoader<SigproPlugin> loader = new PluginLoader<>();
+			loader.registerExternPlugin(Paths.get(args[0]));
+			SigproPlugin plugin = loader.getPlugin(args[1]);
+
+			if (plugin == null) {
+				throw new InstantiationException("Plugin " + args[1] + " not found in " + args[0]);
+			}
+
+			String[] inputPorts = plugin.getInputPorts();
+			String[] outputPorts = plugin.getOutputPorts();
+			host = new SandboxHost(plugin, SandboxRing.create(new File(args[2]), inputPorts.length,
+					outputPorts.length), inputPorts.length, outputPorts.length);
+
+			for (String input : inputPorts) {
+				handshake.println(INPUT + " " + input);
+			}
+
+			for (String output : outputPorts) {
+				handshake.println(OUTPUT + " " + output);
+			}
+
+			handshake.println(VERSION + " " + plugin.getVersion());
+			handshake.println(LATENCY + " " + plugin.getLatency());
+			handshake.println(TAIL + " " + plugin.getTailLength());
+			handshake.println(DIVISOR + " " + plugin.getRateDivisor());
+			handshake.println(READY);
+			handshake.flush();
+		} catch (Throwable e) {
+			handshake.println(ERROR + " " + e);
+			handshake.flush();
+			logThrowable("The sandbox host couldn't load " + args[1], e);
+			System.exit(1);
+			return;
+		}
+
+		watchParent();
+		host.run();
+		System.exit(0);
+	}
+
+	/**
+	 * The constructors of most plugins create their GUI, which requires the
+	 * JavaFX toolkit. The GUI is never shown. The toolkit is started by the
+	 * first {@link JFXPanel}.
+	 */
+	private static void startToolkit() {
+		try {
+			new JFXPanel();
+			Platform.setImplicitExit(false);
+		} catch (RuntimeException | Error e) {
+			// Plugins without controls can be loaded anyway
+			logThrowable("JavaFX toolkit not available", e);
+		}
+	}
+
+	/**
+	 * Logs an exception or an error of the plugin, which must not terminate
+	 * the host.
+	 */
+	private static void logThrowable(String message, Throwable e) {
+		CommonLogger.getInstance().logMessageAndException(message,
+				e instanceof Exception ? (Exception) e : new Exception(e));
+	}
+
+	/**
+	 * Exits the host as soon as the standard input is closed, so no host is
+	 * left behind by a crashed application.
+	 */
+	private static void watchParent() {
+		Thread watcher = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				InputStream input = System.in;
+				try {
+					while (input.read() >= 0) {
+						// Nothing is sent by the application
+					}
+				} catch (IOException e) {
+					// Closed
+				}
+				System.exit(0);
+			}
+		}, "SandboxParentWatcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Processes the requests of the ring until the exit command.
+	 */
+	void run() {
+
+		long processed = ring.getResponseSequence();
+		long commands = ring.getCommandAck();
+		long resets = ring.getResetSequence();
+		int idle = 0;
+
+		while (true) {
+			boolean busy = false;
+
+			long commandSequence = ring.getCommandSequence();
+
+			if (commandSequence != commands) {
+				commands = commandSequence;
+				int command = ring.getCommand();
+				ring.acknowledgeCommand(commands, handleCommand(command));
+
+				if (command == SandboxRing.COMMAND_EXIT) {
+					return;
+				}
+				busy = true;
+			}
+
+			long resetSequence = ring.getResetSequence();
+
+			if (resetSequence != resets) {
+				resets = resetSequence;
+				try {
+					plugin.reset();
+				} catch (Throwable e) {
+					logThrowable("Reset of " + plugin.getName() + " failed", e);
+				}
+				busy = true;
+			}
+
+			// Blocks which the proxy has already given up are processed
+			// anyway, so the state of the plugin stays continuous
+			if (ring.getRequestSequence() > processed) {
+				processed++;
+				processBlock(SandboxRing.getSlot(processed));
+				ring.setResponseSequence(processed);
+				busy = true;
+			}
+
+			if (busy) {
+				idle = 0;
+			} else if (idle < SPIN_COUNT) {
+				Thread.yield();
+				idle++;
+			} else {
+				LockSupport.parkNanos(PARK_TIME);
+			}
+		}
+	}
+
+	private int handleCommand(int command) {
+
+		try {
+			switch (command) {
+			case SandboxRing.COMMAND_PREPARE:
+				int sampleRate = ring.getCommandArgument(0);
+				plugin.prepare(sampleRate, ring.getCommandArgument(1));
+				runner = new PluginRunner(plugin, sampleRate);
+				break;
+			case SandboxRing.COMMAND_RELEASE:
+				plugin.release();
+				break;
+			default:
+				break;
+			}
+		} catch (Throwable e) {
+			logThrowable("Command " + command + " of " + plugin.getName() + " failed", e);
+			return SandboxRing.STATUS_FAILED;
+		}
+
+		return SandboxRing.STATUS_OK;
+	}
+
+	private void processBlock(int slot) {
+
+		int size = ring.getBlockSize(slot);
+
+		if (size <= 0 || size > SandboxRing.MAX_BLOCK_SIZE) {
+			ring.setStatus(slot, SandboxRing.STATUS_FAILED);
+			return;
+		}
+
+		setBlockSize(size);
+
+		for (int i = 0; i < inputs.length; i++) {
+			ring.readInput(slot, i, inputs[i], blockSize);
+		}
+
+		try {
+			runner.process(inputs, outputs, blockSize);
+		} catch (Throwable e) {
+			logThrowable("Processing of " + plugin.getName() + " failed", e);
+			ring.setStatus(slot, SandboxRing.STATUS_FAILED);
+			return;
+		}
+
+		for (int o = 0; o < outputs.length; o++) {
+			ring.writeOutput(slot, o, outputs[o], blockSize);
+		}
+
+		ring.setStatus(slot, SandboxRing.STATUS_OK);
+	}
+
+	/**
+	 * Creates the buffers of the ports if the block size changes.
+	 */
+	private void setBlockSize(int blockSize) {
+
+		if (this.blockSize == blockSize) {
+			return;
+		}
+
+		this.blockSize = blockSize;
+		inputs = createBuffers(inputCount, blockSize);
+		outputs = createBuffers(outputCount, blockSize);
+	}
+
+	@Nonnull
+	private static double[][] createBuffers(int count, int blockSize) {
+
+		double[][] buffers = new double[count][];
+
+		for (int b = 0; b < count; b++) {
+			buffers[b] = new double[blockSize];
+		}
+
+		return buffers;
+	}
+}
@@ -0,0 +1,313 @@
+package plugins.sigproplugins.sandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nonnull;
+
+import logging.CommonLogger;
+
+/**
+ * Memory mapped file which is shared by a {@link SandboxedPlugin} and its
+ * {@link SandboxHost}. It holds {@link #SLOT_COUNT} slots with the input and
+ * output data of one block each. The proxy writes a block into the slot of
+ * its sequence number and increments the request sequence, the host
+ * processes the requests in order and increments the response sequence
+ * after it has written the outputs. Both sides poll the sequences, so no
+ * system call is needed per block. A sequence is written after a barrier
+ * and read before a barrier, so the data of its slot is complete on the
+ * other side.<br/>
+ * <br/>
+ * Commands, e.g. prepare, are passed the same way with a command sequence,
+ * which is acknowledged by the host.
+ * 
+ * @author roland
+ *
+ */
+class SandboxRing {
+
+	/**
+	 * The number of blocks which can be in flight.
+	 */
+	static final int SLOT_COUNT = 4;
+
+	/**
+	 * The highest number of samples per block.
+	 */
+	static final int MAX_BLOCK_SIZE = 8192;
+
+	static final int STATUS_OK = 0;
+	static final int STATUS_FAILED = 1;
+
+	static final int COMMAND_PREPARE = 1;
+	static final int COMMAND_RELEASE = 2;
+	static final int COMMAND_EXIT = 3;
+
+	private static final int MAGIC = 0x55535053;
+	private static final int MAGIC_POSITION = 0;
+	private static final int INPUT_COUNT_POSITION = 4;
+	private static final int OUTPUT_COUNT_POSITION = 8;
+	private static final int REQUEST_POSITION = 16;
+	private static final int RESPONSE_POSITION = 24;
+	private static final int COMMAND_SEQUENCE_POSITION = 32;
+	private static final int COMMAND_ACK_POSITION = 40;
+	private static final int RESET_POSITION = 48;
+	private static final int COMMAND_POSITION = 56;
+	private static final int COMMAND_ARGUMENT_POSITION = 60;
+	private static final int COMMAND_STATUS_POSITION = 68;
+	private static final int HEADER_SIZE = 128;
+
+	// Block size and status of a slot
+	private static final int SLOT_HEADER_SIZE = 8;
+	private static final int CHANNEL_SIZE = MAX_BLOCK_SIZE * 8;
+
+	private final RandomAccessFile ringFile;
+	private final MappedByteBuffer buffer;
+	private final int inputCount;
+	private final int outputCount;
+	private final int slotSize;
+
+	// Orders the plain accesses of the mapped buffer around the sequences,
+	// which are otherwise free to be reordered by the compiler and the CPU,
+	// see barrier()
+	private volatile int fence;
+
+	private SandboxRing(File file, int inputCount, int outputCount) throws IOException {
+		this.inputCount = inputCount;
+		this.outputCount = outputCount;
+		this.slotSize = SLOT_HEADER_SIZE + (inputCount + outputCount) * CHANNEL_SIZE;
+
+		ringFile = new RandomAccessFile(file, "rw");
+		buffer = ringFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				HEADER_SIZE + (long) SLOT_COUNT * slotSize);
+		// Both processes run on the same machine
+		buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Creates the ring for a plugin. Called by the host.
+	 * 
+	 * @param file
+	 *            The ring file. Must not be null.
+	 * @throws IOException
+	 *             if the file can't be created or mapped.
+	 */
+	@Nonnull
+	static SandboxRing create(@Nonnull File file, int inputCount, int outputCount) throws IOException {
+		SandboxRing ring = new SandboxRing(file, inputCount, outputCount);
+
+		ring.buffer.putInt(INPUT_COUNT_POSITION, inputCount);
+		ring.buffer.putInt(OUTPUT_COUNT_POSITION, outputCount);
+		ring.buffer.putLong(REQUEST_POSITION, 0);
+		ring.buffer.putLong(RESPONSE_POSITION, 0);
+		ring.buffer.putLong(COMMAND_SEQUENCE_POSITION, 0);
+		ring.buffer.putLong(COMMAND_ACK_POSITION, 0);
+		ring.buffer.putLong(RESET_POSITION, 0);
+		ring.barrier();
+		ring.buffer.putInt(MAGIC_POSITION, MAGIC);
+
+		return ring;
+	}
+
+	/**
+	 * Maps a ring which has been created by the host. Called by the proxy.
+	 * 
+	 * @param file
+	 *            The ring file. Must not be null.
+	 * @throws IOException
+	 *             if the file can't be mapped or doesn't match the ports.
+	 */
+	@Nonnull
+	static SandboxRing open(@Nonnull File file, int inputCount, int outputCount) throws IOException {
+		SandboxRing ring = new SandboxRing(file, inputCount, outputCount);
+
+		if (ring.buffer.getInt(MAGIC_POSITION) != MAGIC || ring.buffer.getInt(INPUT_COUNT_POSITION) != inputCount
+				|| ring.buffer.getInt(OUTPUT_COUNT_POSITION) != outputCount) {
+			ring.close();
+			throw new IOException("Sandbox ring " + file + " doesn't match the plugin");
+		}
+
+		return ring;
+	}
+
+	long getRequestSequence() {
+		return getSequence(REQUEST_POSITION);
+	}
+
+	/**
+	 * Publishes the block of the slot of the sequence.
+	 */
+	void setRequestSequence(long sequence) {
+		setSequence(REQUEST_POSITION, sequence);
+	}
+
+	long getResponseSequence() {
+		return getSequence(RESPONSE_POSITION);
+	}
+
+	/**
+	 * Publishes the outputs of the slot of the sequence.
+	 */
+	void setResponseSequence(long sequence) {
+		setSequence(RESPONSE_POSITION, sequence);
+	}
+
+	long getResetSequence() {
+		return getSequence(RESET_POSITION);
+	}
+
+	void setResetSequence(long sequence) {
+		setSequence(RESET_POSITION, sequence);
+	}
+
+	long getCommandSequence() {
+		return getSequence(COMMAND_SEQUENCE_POSITION);
+	}
+
+	/**
+	 * Publishes a command with its arguments.
+	 */
+	void postCommand(long sequence, int command, int argument1, int argument2) {
+		buffer.putInt(COMMAND_POSITION, command);
+		buffer.putInt(COMMAND_ARGUMENT_POSITION, argument1);
+		buffer.putInt(COMMAND_ARGUMENT_POSITION + 4, argument2);
+		setSequence(COMMAND_SEQUENCE_POSITION, sequence);
+	}
+
+	int getCommand() {
+		return buffer.getInt(COMMAND_POSITION);
+	}
+
+	int getCommandArgument(int index) {
+		return buffer.getInt(COMMAND_ARGUMENT_POSITION + 4 * index);
+	}
+
+	long getCommandAck() {
+		return getSequence(COMMAND_ACK_POSITION);
+	}
+
+	int getCommandStatus() {
+		return buffer.getInt(COMMAND_STATUS_POSITION);
+	}
+
+	/**
+	 * Acknowledges the command of the sequence with its result.
+	 */
+	void acknowledgeCommand(long sequence, int status) {
+		buffer.putInt(COMMAND_STATUS_POSITION, status);
+		setSequence(COMMAND_ACK_POSITION, sequence);
+	}
+
+	private long getSequence(int position) {
+		long sequence = buffer.getLong(position);
+		// The data of the sequence is read afterwards
+		barrier();
+		return sequence;
+	}
+
+	private void setSequence(int position, long sequence) {
+		// The data of the sequence has been written before
+		barrier();
+		buffer.putLong(position, sequence);
+	}
+
+	/**
+	 * Full barrier for the accesses of the mapped buffer. The volatile write
+	 * keeps all previous accesses before it, the volatile read keeps all
+	 * following accesses after it, and both can't be swapped.
+	 */
+	private void barrier() {
+		fence = 0;
+		int sync = fence;
+	}
+
+	/**
+	 * @return the slot of the block with the sequence number.
+	 */
+	static int getSlot(long sequence) {
+		return (int) (sequence % SLOT_COUNT);
+	}
+
+	int getBlockSize(int slot) {
+		return buffer.getInt(HEADER_SIZE + slot * slotSize);
+	}
+
+	void setBlockSize(int slot, int blockSize) {
+		buffer.putInt(HEADER_SIZE + slot * slotSize, blockSize);
+	}
+
+	int getStatus(int slot) {
+		return buffer.getInt(HEADER_SIZE + slot * slotSize + 4);
+	}
+
+	void setStatus(int slot, int status) {
+		buffer.putInt(HEADER_SIZE + slot * slotSize + 4, status);
+	}
+
+	private int getChannelPosition(int slot, int channel) {
+		return HEADER_SIZE + slot * slotSize + SLOT_HEADER_SIZE + channel * CHANNEL_SIZE;
+	}
+
+	void writeInput(int slot, int input, double[] data, int blockSize) {
+		write(getChannelPosition(slot, input), data, blockSize);
+	}
+
+	void writeInput(int slot, int input, float[] data, int blockSize) {
+		write(getChannelPosition(slot, input), data, blockSize);
+	}
+
+	void readInput(int slot, int input, double[] data, int blockSize) {
+		read(getChannelPosition(slot, input), data, blockSize);
+	}
+
+	void writeOutput(int slot, int output, double[] data, int blockSize) {
+		write(getChannelPosition(slot, inputCount + output), data, blockSize);
+	}
+
+	void readOutput(int slot, int output, double[] data, int blockSize) {
+		read(getChannelPosition(slot, inputCount + output), data, blockSize);
+	}
+
+	void readOutput(int slot, int output, float[] data, int blockSize) {
+		read(getChannelPosition(slot, inputCount + output), data, blockSize);
+	}
+
+	private void write(int position, double[] data, int blockSize) {
+		for (int k = 0; k < blockSize; k++) {
+			buffer.putDouble(position + 8 * k, data[k]);
+		}
+	}
+
+	private void write(int position, float[] data, int blockSize) {
+		for (int k = 0; k < blockSize; k++) {
+			buffer.putDouble(position + 8 * k, data[k]);
+		}
+	}
+
+	private void read(int position, double[] data, int blockSize) {
+		for (int k = 0; k < blockSize; k++) {
+			data[k] = buffer.getDouble(position + 8 * k);
+		}
+	}
+
+	private void read(int position, float[] data, int blockSize) {
+		for (int k = 0; k < blockSize; k++) {
+			data[k] = (float) buffer.getDouble(position + 8 * k);
+		}
+	}
+
+	/**
+	 * Closes the ring file. The mapping stays valid until it is collected.
+	 */
+	void close() {
+		try {
+			ringFile.close();
+		} catch (IOException e) {
+			CommonLogger.getInstance().logException(e);
+		}
+	}
+}
@@ -0,0 +1,725 @@
+package plugins.sigproplugins.sandbox;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import channel.OutputDataWrapper;
+import channel.dataflow.ProcessContext;
+import channel.dataflow.SamplePrecision;
+import i18n.LanguageResourceHandler;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.CornerRadii;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import logging.CommonLogger;
+import plugins.sigproplugins.SigproPlugin;
+import resourceframework.GlobalResourceProvider;
+import resourceframework.ResourceProviderException;
+
+/**
+ * Proxy for an external plugin which runs in a separate JVM, see
+ * {@link SandboxHost}. The blocks are exchanged by a memory mapped
+ * {@link SandboxRing}, so an exception, a crash or a hanging plugin can't
+ * affect the signal processing of the application.<br/>
+ * <br/>
+ * Every block must be answered within {@link #DEADLINE_RATIO} of its
+ * period. A late block is replaced by the dry signal. After
+ * {@link #MAX_MISSES} late blocks in a row, an exception of the plugin or a
+ * crash of the host, the host is terminated and the plugin is bypassed by
+ * its {@link plugins.sigproplugins.PluginControls}. Both are done by a
+ * separate thread, not by the audio thread which has detected the failure.
+ * The plugin stays bypassed until it is added again.<br/>
+ * <br/>
+ * The processing thread waits for the answer of the host, so the proxy
+ * isn't realtime safe. It polls shortly and blocks afterwards as a
+ * {@link ForkJoinPool.ManagedBlocker}, so the
+ * {@link channel.dataflow.AudioWorkerPool} can run a spare worker for the
+ * other channels while the host processes the block.<br/>
+ * <br/>
+ * The GUI and the parameters of the sandboxed plugin aren't available.
+ * 
+ * @author roland
+ *
+ */
+public class SandboxedPlugin extends SigproPlugin {
+
+	/**
+	 * The part of the block period which the host may use to process a
+	 * block.
+	 */
+	public static final double DEADLINE_RATIO = 0.5;
+
+	/**
+	 * The number of late blocks in a row after which the plugin is bypassed.
+	 */
+	public static final int MAX_MISSES = 8;
+
+	private static final long HANDSHAKE_TIMEOUT = 10000;
+	private static final long COMMAND_TIMEOUT = 5000000000L;
+
+	// Number of polls before the proxy blocks while it waits
+	private static final int SPIN_COUNT = 100;
+	private static final long PARK_TIME = 20000;
+
+	private static final String FAILED_TEXT = "failed";
+
+	// Terminates the hosts of failed plugins off the audio threads
+	private static final ExecutorService TEARDOWN = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "SandboxTeardown");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String pluginName;
+	private final File jarFile;
+
+	private String name;
+	private String version = "";
+	private String[] inputPorts;
+	private String[] outputPorts;
+	private int latency = 0;
+	private int tailLength = INFINITE_TAIL;
+	private int rateDivisor = 1;
+
+	private Process host;
+	private File ringFile;
+	private SandboxRing ring;
+
+	private int sampleRate = 44100;
+	private long requestSequence = 0;
+	private long resetSequence = 0;
+	private long commandSequence = 0;
+	private int misses = 0;
+	private volatile boolean failed = false;
+	private final ResponseBlocker responseBlocker = new ResponseBlocker();
+
+	private final int width = 100;
+	private final int height = 60;
+
+	private Label nameLabel;
+	private Label stateLabel = new Label("Sandbox");
+
+	/**
+	 * Starts the host of an external plugin.
+	 * 
+	 * @param pluginName
+	 *            The name of the plugin. Must not be null.
+	 * @param jarFile
+	 *            The .jar file of the plugin. Must not be null.
+	 * @throws InstantiationException
+	 *             if the host can't be started or can't load the plugin.
+	 */
+	public SandboxedPlugin(@Nonnull String pluginName, @Nonnull File jarFile) throws InstantiationException {
+		this.pluginName = pluginName;
+		this.jarFile = jarFile;
+		this.name = pluginName;
+
+		try {
+			startHost();
+		} catch (IOException e) {
+			throw new InstantiationException("Sandbox for " + pluginName + " can't be started: " + e.getMessage());
+		}
+
+		nameLabel = new Label(name);
+		nameLabel.setMaxWidth(width - 10);
+		stateLabel.setMaxWidth(width - 10);
+	}
+
+	/**
+	 * Starts a host and reads its handshake. The ports of a restarted host
+	 * must match the first one.
+	 */
+	private void startHost() throws IOException {
+
+		ringFile = File.createTempFile("sandbox", ".ring");
+		ringFile.deleteOnExit();
+
+		ArrayList<String> command = new ArrayList<>(Arrays.asList(
+				System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", "-cp",
+				System.getProperty("java.class.path"), SandboxHost.class.getName(), jarFile.getPath(), pluginName,
+				ringFile.getPath()));
+		GlobalResourceProvider resProv = GlobalResourceProvider.getInstance();
+
+		// The host logs into the same directory
+		if (resProv.checkRegistered("loggingPath")) {
+			try {
+				command.add(resProv.getResource("loggingPath").toString());
+			} catch (ResourceProviderException e) {
+				// Won't happen due to previous check
+			}
+		}
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		host = builder.start();
+
+		try {
+			readHandshake(host);
+			ring = SandboxRing.open(ringFile, inputPorts.length, outputPorts.length);
+		} catch (IOException e) {
+			stopHost();
+			throw e;
+		}
+
+		requestSequence = 0;
+		resetSequence = 0;
+		commandSequence = 0;
+		misses = 0;
+	}
+
+	private void readHandshake(Process process) throws IOException {
+
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+		// Reads the handshake without blocking the caller for longer than the
+		// timeout
+		Thread readerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						lines.add(line);
+					}
+				} catch (IOException e) {
+					// Closed
+				}
+				lines.add(SandboxHost.ERROR + " Sandbox host terminated");
+			}
+		}, "SandboxHandshake-" + pluginName);
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		ArrayList<String> inputs = new ArrayList<>();
+		ArrayList<String> outputs = new ArrayList<>();
+		long deadline = System.currentTimeMillis() + HANDSHAKE_TIMEOUT;
+
+		while (true) {
+			String line;
+
+			try {
+				line = lines.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for the sandbox host");
+			}
+
+			if (line == null) {
+				throw new IOException("No answer of the sandbox host");
+			}
+
+			if (line.equals(SandboxHost.READY)) {
+				break;
+			}
+
+			int separator = line.indexOf(' ');
+			String key = separator < 0 ? line : line.substring(0, separator);
+			String value = separator < 0 ? "" : line.substring(separator + 1);
+
+			try {
+				switch (key) {
+				case SandboxHost.INPUT:
+					inputs.add(value);
+					break;
+				case SandboxHost.OUTPUT:
+					outputs.add(value);
+					break;
+				case SandboxHost.VERSION:
+					version = value;
+					break;
+				case SandboxHost.LATENCY:
+					latency = Integer.parseInt(value);
+					break;
+				case SandboxHost.TAIL:
+					tailLength = Integer.parseInt(value);
+					break;
+				case SandboxHost.DIVISOR:
+					rateDivisor = Integer.parseInt(value);
+					break;
+				case SandboxHost.ERROR:
+					throw new IOException(value);
+				default:
+					// Unknown lines are ignored
+					break;
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid handshake of the sandbox host: " + line);
+			}
+		}
+
+		String[] inputArray = inputs.toArray(new String[0]);
+		String[] outputArray = outputs.toArray(new String[0]);
+
+		if (inputPorts == null) {
+			inputPorts = inputArray;
+			outputPorts = outputArray;
+		} else if (!Arrays.equals(inputPorts, inputArray) || !Arrays.equals(outputPorts, outputArray)) {
+			throw new IOException("The ports of " + pluginName + " have changed");
+		}
+	}
+
+	/**
+	 * Terminates the host and deletes the ring file.
+	 */
+	private void stopHost() {
+
+		if (ring != null) {
+			ring.close();
+			ring = null;
+		}
+
+		if (host != null) {
+			try {
+				// The host exits when its input is closed
+				host.getOutputStream().close();
+
+				if (!host.waitFor(1, TimeUnit.SECONDS)) {
+					host.destroyForcibly();
+				}
+			} catch (IOException | InterruptedException e) {
+				host.destroyForcibly();
+			}
+			host = null;
+		}
+
+		if (ringFile != null) {
+			ringFile.delete();
+			ringFile = null;
+		}
+	}
+
+	/**
+	 * Posts a command to the host and waits for its acknowledgement.
+	 * 
+	 * @return true if the command has been executed successfully.
+	 */
+	private boolean sendCommand(int command, int argument1, int argument2) {
+
+		commandSequence++;
+		ring.postCommand(commandSequence, command, argument1, argument2);
+
+		long start = System.nanoTime();
+
+		while (ring.getCommandAck() != commandSequence) {
+			if (System.nanoTime() - start > COMMAND_TIMEOUT || !host.isAlive()) {
+				return false;
+			}
+			LockSupport.parkNanos(PARK_TIME);
+		}
+
+		return ring.getCommandStatus() == SandboxRing.STATUS_OK;
+	}
+
+	/**
+	 * Stops passing blocks to the host. Called once, mostly by an audio
+	 * thread. The bypass, the termination of the host and the messages are
+	 * handed to the teardown thread.
+	 */
+	private void fail(final String reason) {
+
+		failed = true;
+		final Process process = host;
+
+		TEARDOWN.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				getControls().setBypassed(true);
+
+				if (process != null) {
+					process.destroyForcibly();
+				}
+
+				CommonLogger.getInstance().logMessageAndException("Sandboxed plugin " + name + " bypassed",
+						new IllegalStateException(reason));
+
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							stateLabel.setText(LanguageResourceHandler.getInstance()
+									.getLocalizedText(SandboxedPlugin.class, FAILED_TEXT));
+						} catch (ResourceProviderException e) {
+							CommonLogger.getInstance().logException(e);
+						}
+						stateLabel.setTextFill(Color.RED);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Checks if the plugin has been bypassed because its host has failed.
+	 * 
+	 * @return true if the host has been terminated by the watchdog.
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public void process(ProcessContext context) {
+
+		int blockSize = context.getBlockSize();
+
+		if (failed) {
+			passDry(context);
+			return;
+		}
+
+		if (blockSize > SandboxRing.MAX_BLOCK_SIZE) {
+			fail("block size " + blockSize + " exceeds " + SandboxRing.MAX_BLOCK_SIZE);
+			passDry(context);
+			return;
+		}
+
+		// A host which hasn't finished the previous blocks gets no new one,
+		// its slots may still be in use
+		if (requestSequence - ring.getResponseSequence() >= SandboxRing.SLOT_COUNT) {
+			miss(context);
+			return;
+		}
+
+		long sequence = requestSequence + 1;
+		int slot = SandboxRing.getSlot(sequence);
+
+		for (int i = 0; i < inputPorts.length; i++) {
+			if (context.getPrecision() == SamplePrecision.FLOAT) {
+				ring.writeInput(slot, i, context.getFloatInput(i), blockSize);
+			} else {
+				ring.writeInput(slot, i, context.getInput(i), blockSize);
+			}
+		}
+
+		ring.setBlockSize(slot, blockSize);
+		ring.setRequestSequence(sequence);
+		requestSequence = sequence;
+
+		if (!awaitResponse(sequence, (long) (DEADLINE_RATIO * blockSize * 1e9 / sampleRate))) {
+			miss(context);
+			return;
+		}
+
+		if (ring.getStatus(slot) != SandboxRing.STATUS_OK) {
+			fail("the plugin has thrown an exception");
+			passDry(context);
+			return;
+		}
+
+		misses = 0;
+
+		for (int o = 0; o < outputPorts.length; o++) {
+			if (context.getPrecision() == SamplePrecision.FLOAT) {
+				ring.readOutput(slot, o, context.getFloatOutput(o), blockSize);
+			} else {
+				ring.readOutput(slot, o, context.getOutput(o), blockSize);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the host has answered the block. Polls first and blocks
+	 * afterwards, see {@link ResponseBlocker}.
+	 * 
+	 * @return false if the deadline has passed.
+	 */
+	private boolean awaitResponse(long sequence, long timeout) {
+
+		responseBlocker.start(sequence, System.nanoTime() + timeout);
+
+		for (int spins = 0; spins < SPIN_COUNT && !responseBlocker.isReleasable(); spins++) {
+			// Leaves the core to the host if both share it
+			Thread.yield();
+		}
+
+		if (!responseBlocker.isReleasable()) {
+			try {
+				ForkJoinPool.managedBlock(responseBlocker);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return responseBlocker.isAnswered();
+	}
+
+	/**
+	 * Sleeps until the host has answered a block or its deadline has passed.
+	 * If the waiting thread is a worker of a {@link ForkJoinPool}, the pool
+	 * may activate another worker in the meantime.
+	 */
+	private class ResponseBlocker implements ForkJoinPool.ManagedBlocker {
+
+		private long sequence;
+		private long deadline;
+
+		void start(long sequence, long deadline) {
+			this.sequence = sequence;
+			this.deadline = deadline;
+		}
+
+		boolean isAnswered() {
+			return ring.getResponseSequence() >= sequence;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return isAnswered() || System.nanoTime() - deadline >= 0;
+		}
+
+		@Override
+		public boolean block() {
+
+			while (!isReleasable()) {
+				LockSupport.parkNanos(PARK_TIME);
+			}
+
+			return true;
+		}
+	}
+
+	private void miss(ProcessContext context) {
+
+		misses++;
+
+		if (!host.isAlive()) {
+			fail("the sandbox host has terminated");
+		} else if (misses >= MAX_MISSES) {
+			fail(misses + " blocks missed their deadline");
+		}
+
+		passDry(context);
+	}
+
+	/**
+	 * Passes the data of the first input to all outputs, like the bypass of
+	 * the signal processing.
+	 */
+	private void passDry(ProcessContext context) {
+
+		int blockSize = context.getBlockSize();
+
+		for (int o = 0; o < outputPorts.length; o++) {
+			if (context.getPrecision() == SamplePrecision.FLOAT) {
+				float[] output = context.getFloatOutput(o);
+
+				if (inputPorts.length > 0) {
+					System.arraycopy(context.getFloatInput(0), 0, output, 0, blockSize);
+				} else {
+					Arrays.fill(output, 0.0f);
+				}
+			} else {
+				double[] output = context.getOutput(o);
+
+				if (inputPorts.length > 0) {
+					System.arraycopy(context.getInput(0), 0, output, 0, blockSize);
+				} else {
+					Arrays.fill(output, 0.0);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void prepare(int sampleRate, int maxBlockSize) {
+
+		this.sampleRate = sampleRate;
+
+		if (failed) {
+			return;
+		}
+
+		// The host has been stopped by a previous release
+		if (host == null) {
+			try {
+				startHost();
+			} catch (IOException e) {
+				fail(e.getMessage());
+				return;
+			}
+		}
+
+		if (maxBlockSize > SandboxRing.MAX_BLOCK_SIZE) {
+			fail("block size " + maxBlockSize + " exceeds " + SandboxRing.MAX_BLOCK_SIZE);
+		} else if (!sendCommand(SandboxRing.COMMAND_PREPARE, sampleRate, maxBlockSize)) {
+			fail("the plugin couldn't be prepared");
+		}
+	}
+
+	@Override
+	public void reset() {
+
+		if (!failed && ring != null) {
+			resetSequence++;
+			ring.setResetSequence(resetSequence);
+		}
+	}
+
+	@Override
+	public void release() {
+
+		if (host == null) {
+			return;
+		}
+
+		if (!failed) {
+			sendCommand(SandboxRing.COMMAND_RELEASE, 0, 0);
+			sendCommand(SandboxRing.COMMAND_EXIT, 0, 0);
+		}
+
+		stopHost();
+	}
+
+	@Override
+	public boolean usesProcessContext() {
+
+		return true;
+	}
+
+	@Override
+	public String[] getInputPorts() {
+
+		return inputPorts.clone();
+	}
+
+	@Override
+	public String[] getOutputPorts() {
+
+		return outputPorts.clone();
+	}
+
+	@Override
+	public int getLatency() {
+
+		return latency;
+	}
+
+	@Override
+	public int getTailLength() {
+
+		return tailLength;
+	}
+
+	@Override
+	public int getRateDivisor() {
+
+		return rateDivisor;
+	}
+
+	@Override
+	public LinkedList<OutputDataWrapper> putData(String input, double[] data) {
+
+		// Not used, the blocks are passed by the process context
+		return null;
+	}
+
+	@Override
+	public String getName() {
+
+		return name;
+	}
+
+	@Override
+	public void setName(String name) {
+
+		this.name = name;
+	}
+
+	@Override
+	public String getVersion() {
+
+		return version;
+	}
+
+	@Override
+	public Pane getGUI() {
+
+		if (gui == null) {
+			gui = getInternalGUI();
+			gui.setPrefSize(width, height);
+			gui.setMaxSize(width, height);
+
+			GridPane grid = new GridPane();
+
+			grid.add(nameLabel, 0, 0);
+			grid.add(stateLabel, 0, 1);
+			grid.setPadding(new Insets(5));
+			grid.setVgap(5);
+
+			gui.getChildren().add(grid);
+			gui.setBackground(new Background(new BackgroundFill(Color.DARKGRAY, new CornerRadii(3), Insets.EMPTY)));
+		}
+
+		return gui;
+	}
+
+	@Override
+	public HashSet<String> getOutputConfig() {
+
+		return new HashSet<>(Arrays.asList(outputPorts));
+	}
+
+	@Override
+	public HashSet<String> getInputConfig() {
+
+		return new HashSet<>(Arrays.asList(inputPorts));
+	}
+
+	@Override
+	public void setPlay(boolean play) {
+		// Nothing to do here
+
+	}
+
+	@Override
+	public int getWidth() {
+
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+
+		return height;
+	}
+
+	@Override
+	public double getMaxX() {
+
+		return gui.getLayoutX() + width;
+	}
+
+	@Override
+	public double getMaxY() {
+
+		return gui.getLayoutY() + height;
+	}
+
+}
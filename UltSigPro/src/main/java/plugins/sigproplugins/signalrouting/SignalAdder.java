@@ -1,14 +1,16 @@
 package plugins.sigproplugins.signalrouting;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import channel.OutputDataWrapper;
-import channel.OutputInfoWrapper;
+import channel.dataflow.ProcessContext;
+import channel.dataflow.SamplePrecision;
+import dsp.DspKernels;
 import gui.USPGui;
 import javafx.scene.layout.Pane;
 import plugins.sigproplugins.SigproPlugin;
@@ -16,19 +18,21 @@ import plugins.sigproplugins.SigproPlugin;
 /**
  * Class which is used as {@link SigproPlugin}. It has multiple inputs and one
  * output. The values of the inputs will be added and written to the output.
+ * The inputs are collected by the signal processing, see
+ * {@link SigproPlugin#usesProcessContext()}.
  * 
  * @author roland
  *
  */
 public class SignalAdder extends SigproPlugin {
 
+	// The only output port
+	private static final int OUTPUT = 0;
+
 	private HashSet<String> inputs = new HashSet<>();
-	private HashMap<String, double[]> dataBuffer = new HashMap<>();
 
 	private boolean play = false;
 	
-	private int distributionSize = 100;
-	
 	private String name = "Add";
 
 	/**
@@ -41,31 +45,54 @@ public class SignalAdder extends SigproPlugin {
 	@Override
 	public LinkedList<OutputDataWrapper> putData(String input, double[] data) {
 
-		dataBuffer.put(input, data);
-		
-		boolean first = true;
-		
-		if(dataBuffer.size() == inputs.size()) {
-			double[] outputData = new double[distributionSize];
-			
-			for(double[] addData : dataBuffer.values()) {
-				for(int i=0; i<distributionSize; i++) {
-					if(first) {
-						outputData[i] = addData[i];
-					} else {
-						outputData[i] += addData[i];
-					}
-				}				
-				first = false;
+		// Not used, the inputs are joined by the signal processing
+		return null;
+	}
+
+	@Override
+	public boolean usesProcessContext() {
+
+		return true;
+	}
+
+	@Override
+	public void process(ProcessContext context) {
+
+		int length = context.getBlockSize();
+
+		if (context.getPrecision() == SamplePrecision.FLOAT) {
+			float[] outputData = context.getFloatOutput(OUTPUT);
+			Arrays.fill(outputData, 0.0f);
+
+			for (int i = 0; i < context.getInputCount(); i++) {
+				DspKernels.add(context.getFloatInput(i), outputData, length);
+			}
+		} else {
+			double[] outputData = context.getOutput(OUTPUT);
+			Arrays.fill(outputData, 0.0);
+
+			for (int i = 0; i < context.getInputCount(); i++) {
+				DspKernels.add(context.getInput(i), outputData, length);
 			}
-			
-			LinkedList<OutputDataWrapper> outputWrappers = new LinkedList<>();
-			outputWrappers.add(new OutputDataWrapper(new OutputInfoWrapper(this, "out"), outputData));
-			
-			return outputWrappers;
 		}
-		
-		return null;
+	}
+
+	@Override
+	public int getTailLength() {
+
+		return 0;
+	}
+
+	@Override
+	public boolean isStateless() {
+
+		return true;
+	}
+
+	@Override
+	public boolean isRealtimeSafe() {
+
+		return true;
 	}
 
 	private void play() {
@@ -0,0 +1,130 @@
+package channel.dataflow;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ControlEventQueueTest {
+
+	private static final int BLOCK_SIZE = 64;
+
+	private ControlEventQueue queue;
+	private BlockEvents events;
+	private TestPlugin plugin;
+
+	@Before
+	public void setUp() {
+		queue = new ControlEventQueue(16);
+		events = new BlockEvents();
+		plugin = TestPlugin.gain("Plugin", 1.0);
+	}
+
+	@Test
+	public void testEventsAreSortedByOffset() {
+
+		queue.postTrigger(plugin, 1, 0.0, 40);
+		queue.postTrigger(plugin, 2, 0.0, 10);
+		queue.postTrigger(plugin, 3, 0.0, 25);
+		queue.postTrigger(plugin, 4, 0.0, 10);
+
+		queue.drain(events, BLOCK_SIZE);
+
+		assertEquals(4, events.count);
+		assertEquals(10, events.offsets[0]);
+		assertEquals(10, events.offsets[1]);
+		assertEquals(25, events.offsets[2]);
+		assertEquals(40, events.offsets[3]);
+
+		// Events at the same offset keep the order in which they have been
+		// posted
+		assertEquals(2, events.ids[0]);
+		assertEquals(4, events.ids[1]);
+		assertEquals(3, events.ids[2]);
+		assertEquals(1, events.ids[3]);
+		assertSame(plugin, events.targets[0]);
+		assertEquals(ControlEventType.TRIGGER, events.types[0]);
+	}
+
+	@Test
+	public void testLateEventsAreClampedToFirstSample() {
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(0, events.count);
+		assertEquals(BLOCK_SIZE, queue.getSamplePosition());
+
+		// Both events are too late for the second block
+		queue.postTrigger(plugin, 1, 0.0, 10);
+		queue.postTrigger(plugin, 2, 0.0, ControlEventQueue.IMMEDIATE);
+		queue.postTrigger(plugin, 3, 0.0, BLOCK_SIZE + 5);
+
+		queue.drain(events, BLOCK_SIZE);
+
+		assertEquals(3, events.count);
+		assertEquals(0, events.offsets[0]);
+		assertEquals(0, events.offsets[1]);
+		assertEquals(5, events.offsets[2]);
+		assertEquals(2, events.ids[0]);
+		assertEquals(1, events.ids[1]);
+		assertEquals(3, events.ids[2]);
+	}
+
+	@Test
+	public void testEventsOfLaterBlocksArePending() {
+
+		queue.postTrigger(plugin, 1, 0.0, 3 * BLOCK_SIZE + 7);
+		queue.postTrigger(plugin, 2, 0.0, BLOCK_SIZE + 1);
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(0, events.count);
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(1, events.count);
+		assertEquals(1, events.offsets[0]);
+		assertEquals(2, events.ids[0]);
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(0, events.count);
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(1, events.count);
+		assertEquals(7, events.offsets[0]);
+		assertEquals(1, events.ids[0]);
+	}
+
+	@Test
+	public void testFullQueueDropsEvents() {
+
+		for (int e = 0; e < 16; e++) {
+			assertTrue(queue.postTrigger(plugin, e, 0.0, e));
+		}
+
+		assertFalse(queue.postTrigger(plugin, 16, 0.0, 16));
+		assertEquals(1, queue.getDroppedEvents());
+
+		queue.drain(events, BLOCK_SIZE);
+		assertEquals(16, events.count);
+
+		// The slots are free again
+		assertTrue(queue.postTrigger(plugin, 17, 0.0, BLOCK_SIZE));
+	}
+
+	@Test
+	public void testFullBlockDropsEvents() {
+
+		for (int e = 0; e < BlockEvents.CAPACITY; e++) {
+			assertTrue(events.add(e % BLOCK_SIZE, ControlEventType.TRIGGER, plugin, e, 0.0));
+		}
+
+		assertFalse(events.add(0, ControlEventType.TRIGGER, plugin, BlockEvents.CAPACITY, 0.0));
+		assertEquals(BlockEvents.CAPACITY, events.count);
+
+		for (int e = 1; e < events.count; e++) {
+			assertTrue(events.offsets[e - 1] <= events.offsets[e]);
+		}
+
+		events.clear();
+		assertEquals(0, events.count);
+		assertNull(events.targets[0]);
+	}
+}
@@ -0,0 +1,292 @@
+package channel.dataflow;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import channel.InputInfoWrapper;
+import channel.OutputInfoWrapper;
+
+public class DataflowCompilerTest {
+
+	private static final int BLOCK_SIZE = 16;
+	private static final int SAMPLE_RATE = 44100;
+
+	private LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap;
+	private TestPlugin input;
+	private TestPlugin output;
+
+	@Before
+	public void setUp() {
+		dataflowMap = new LinkedHashMap<>();
+		input = TestPlugin.channelInput();
+		output = TestPlugin.channelOutput();
+	}
+
+	private ExecutionPlan compile() {
+		ExecutionPlan plan = DataflowCompiler.compile(dataflowMap, input, output, SamplePrecision.DOUBLE,
+				SAMPLE_RATE, BLOCK_SIZE);
+		// The tests expect the serial order of the chains
+		plan.setParallelThreshold(Long.MAX_VALUE);
+		return plan;
+	}
+
+	private static double[] constant(double value) {
+		double[] data = new double[BLOCK_SIZE];
+		Arrays.fill(data, value);
+		return data;
+	}
+
+	@Test
+	public void testTopologicalOrder() {
+
+		ArrayList<String> invocations = new ArrayList<>();
+		TestPlugin a = TestPlugin.gain("A", 2.0).setInPlace(false).setInvocations(invocations);
+		TestPlugin b = TestPlugin.gain("B", 3.0).setInPlace(false).setInvocations(invocations);
+		TestPlugin c = TestPlugin.gain("C", 5.0).setInPlace(false).setInvocations(invocations);
+		output.setInvocations(invocations);
+
+		// The connections are added against the direction of the data
+		TestPlugin.connect(dataflowMap, b, "out", output, "in", 0);
+		TestPlugin.connect(dataflowMap, c, "out", b, "in", 0);
+		TestPlugin.connect(dataflowMap, a, "out", c, "in", 0);
+		TestPlugin.connect(dataflowMap, a, "out", b, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", a, "in", 0);
+
+		ExecutionPlan plan = compile();
+		assertEquals(4, plan.getNodeCount());
+
+		plan.process(constant(1.0));
+
+		assertEquals(5, invocations.size());
+		assertEquals("A", invocations.get(0));
+		assertEquals("C", invocations.get(1));
+		assertEquals("B", invocations.get(2));
+		assertEquals("B", invocations.get(3));
+		assertEquals("Output", invocations.get(4));
+	}
+
+	@Test
+	public void testCycleWithoutDelayIsRejected() {
+
+		TestPlugin a = TestPlugin.gain("A", 1.0);
+		TestPlugin b = TestPlugin.gain("B", 1.0);
+
+		TestPlugin.connect(dataflowMap, input, "Input", a, "in", 0);
+		TestPlugin.connect(dataflowMap, a, "out", b, "in", 0);
+		TestPlugin.connect(dataflowMap, b, "out", a, "in", 0);
+		TestPlugin.connect(dataflowMap, b, "out", output, "in", 0);
+
+		assertFalse(DataflowCompiler.isSchedulable(dataflowMap));
+
+		try {
+			compile();
+			fail("A cycle without delay must not be compiled");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testCycleWithDelayIsAccepted() {
+
+		// A adds the input and the feedback
+		TestPlugin a = TestPlugin.gain("A", 1.0).setProcessContext(true);
+		TestPlugin b = TestPlugin.gain("B", 0.5).setInPlace(false);
+
+		TestPlugin.connect(dataflowMap, input, "Input", a, "in", 0);
+		TestPlugin.connect(dataflowMap, a, "out", b, "in", 0);
+		TestPlugin.connect(dataflowMap, b, "out", a, "in", 1);
+		TestPlugin.connect(dataflowMap, b, "out", output, "in", 0);
+
+		assertTrue(DataflowCompiler.isSchedulable(dataflowMap));
+
+		ExecutionPlan plan = compile();
+
+		// The feedback of the first block is silent
+		assertArrayEquals(constant(0.5), plan.process(constant(1.0)), 0.0);
+		assertArrayEquals(constant(0.75), plan.process(constant(1.0)), 0.0);
+		assertArrayEquals(constant(0.875), plan.process(constant(1.0)), 0.0);
+	}
+
+	@Test
+	public void testDelayOfBlocks() {
+
+		TestPlugin a = TestPlugin.gain("A", 1.0);
+
+		TestPlugin.connect(dataflowMap, input, "Input", a, "in", 3);
+		TestPlugin.connect(dataflowMap, a, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+
+		// The delay line starts with silence
+		for (int b = 1; b <= 3; b++) {
+			assertArrayEquals(constant(0.0), plan.process(constant(b)), 0.0);
+		}
+
+		for (int b = 4; b <= 6; b++) {
+			assertArrayEquals(constant(b - 3), plan.process(constant(b)), 0.0);
+		}
+	}
+
+	@Test
+	public void testLatencyCompensationOfMergedPaths() {
+
+		TestPlugin slow = TestPlugin.gain("Slow", 1.0).setLatency(5);
+		TestPlugin adder = TestPlugin.gain("Adder", 1.0).setProcessContext(true);
+
+		TestPlugin.connect(dataflowMap, input, "Input", slow, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, slow, "out", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, adder, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+		assertEquals(5, plan.getLatency());
+
+		double[] impulse = constant(0.0);
+		impulse[0] = 1.0;
+
+		// The direct path is delayed like the slow path, so both impulses
+		// arrive at the same sample
+		double[] expected = constant(0.0);
+		expected[5] = 2.0;
+
+		assertArrayEquals(expected, plan.process(impulse), 0.0);
+		assertArrayEquals(constant(0.0), plan.process(constant(0.0)), 0.0);
+	}
+
+	@Test
+	public void testDefaultProcessCallsPutData() {
+
+		TestPlugin legacy = TestPlugin.gain("Legacy", 3.0).setDefaultProcess(true);
+		TestPlugin adder = TestPlugin.gain("Adder", 1.0).setProcessContext(true);
+
+		// The adder reads the joined input of the legacy plugin again
+		TestPlugin.connect(dataflowMap, input, "Input", legacy, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, legacy, "out", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, adder, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+
+		assertArrayEquals(constant(4.0), plan.process(constant(1.0)), 0.0);
+		assertArrayEquals(constant(3.0), legacy.lastInput, 0.0);
+	}
+
+	@Test
+	public void testSlotIsAliasedForReadingPlugins() {
+
+		TestPlugin first = TestPlugin.gain("First", 1.0).setInPlace(false);
+		TestPlugin second = TestPlugin.gain("Second", 1.0).setInPlace(false);
+		TestPlugin modifying = TestPlugin.gain("Modifying", 4.0).setInPlace(true);
+
+		TestPlugin.connect(dataflowMap, input, "Input", first, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", second, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", modifying, "in", 0);
+		TestPlugin.connect(dataflowMap, modifying, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+		double[] inputData = constant(1.0);
+
+		assertArrayEquals(constant(4.0), plan.process(inputData), 0.0);
+
+		// The readers share the array of the slot, the modifying plugin got
+		// its own copy
+		assertSame(inputData, first.lastInput);
+		assertSame(inputData, second.lastInput);
+		assertNotSame(inputData, modifying.lastInput);
+		assertArrayEquals(constant(1.0), inputData, 0.0);
+	}
+
+	@Test
+	public void testSingleReaderTakesOverSlot() {
+
+		TestPlugin modifying = TestPlugin.gain("Modifying", 2.0).setInPlace(true);
+
+		TestPlugin.connect(dataflowMap, input, "Input", modifying, "in", 0);
+		TestPlugin.connect(dataflowMap, modifying, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+		double[] inputData = constant(1.0);
+
+		assertSame(inputData, plan.process(inputData));
+		assertSame(inputData, modifying.lastInput);
+		assertArrayEquals(constant(2.0), inputData, 0.0);
+	}
+
+	@Test
+	public void testBypassedNodePassesOwnedArray() {
+
+		TestPlugin bypassed = TestPlugin.gain("Bypassed", 3.0);
+		bypassed.getControls().setBypassed(true);
+
+		TestPlugin.connect(dataflowMap, input, "Input", bypassed, "in", 0);
+		TestPlugin.connect(dataflowMap, bypassed, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+		double[] inputData = constant(1.0);
+
+		assertSame(inputData, plan.process(inputData));
+		assertArrayEquals(constant(1.0), inputData, 0.0);
+		assertNull(bypassed.lastInput);
+	}
+
+	@Test
+	public void testBypassedNodeCopiesSharedArray() {
+
+		TestPlugin bypassed = TestPlugin.gain("Bypassed", 3.0);
+		TestPlugin modifying = TestPlugin.gain("Modifying", 5.0).setInPlace(true);
+		TestPlugin other = TestPlugin.gain("Other", 2.0).setInPlace(false);
+		TestPlugin adder = TestPlugin.gain("Adder", 1.0).setProcessContext(true);
+		bypassed.getControls().setBypassed(true);
+
+		// The only reader of the bypassed node modifies its input, the input
+		// of the channel is also read by another plugin
+		TestPlugin.connect(dataflowMap, input, "Input", bypassed, "in", 0);
+		TestPlugin.connect(dataflowMap, bypassed, "out", modifying, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", other, "in", 0);
+		TestPlugin.connect(dataflowMap, modifying, "out", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, other, "out", adder, "in", 0);
+		TestPlugin.connect(dataflowMap, adder, "out", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+		double[] inputData = constant(1.0);
+
+		assertArrayEquals(constant(7.0), plan.process(inputData), 0.0);
+		assertArrayEquals(constant(1.0), inputData, 0.0);
+		assertArrayEquals(constant(1.0), other.lastInput, 0.0);
+	}
+
+	@Test
+	public void testUnconnectedOutputs() {
+
+		TestPlugin splitter = new TestPlugin("Splitter", new String[] { "in" }, new String[] { "a", "b" }, 3.0)
+				.setInPlace(false);
+		TestPlugin deadEnd = TestPlugin.gain("DeadEnd", 7.0).setInPlace(false);
+
+		TestPlugin.connect(dataflowMap, input, "Input", splitter, "in", 0);
+		TestPlugin.connect(dataflowMap, input, "Input", deadEnd, "in", 0);
+		TestPlugin.connect(dataflowMap, splitter, "a", output, "in", 0);
+
+		ExecutionPlan plan = compile();
+
+		assertEquals(3, plan.getNodeCount());
+		assertArrayEquals(constant(3.0), plan.process(constant(1.0)), 0.0);
+		assertNotNull(deadEnd.lastInput);
+	}
+
+	@Test
+	public void testUnreachedOutput() {
+
+		TestPlugin a = TestPlugin.gain("A", 1.0);
+		TestPlugin.connect(dataflowMap, input, "Input", a, "in", 0);
+
+		assertNull(compile().process(constant(1.0)));
+	}
+}
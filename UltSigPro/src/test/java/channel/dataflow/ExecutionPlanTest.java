@@ -0,0 +1,142 @@
+package channel.dataflow;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import channel.InputInfoWrapper;
+import channel.OutputDataWrapper;
+import channel.OutputInfoWrapper;
+import plugins.sigproplugins.SigproPlugin;
+
+public class ExecutionPlanTest {
+
+	private static final int BLOCK_SIZE = 256;
+	private static final int SAMPLE_RATE = 44100;
+
+	/**
+	 * Compares the plan with the recursive walk over the connections which
+	 * has been used before the plans. Both must produce the same output for
+	 * chains of 10 to 200 plugins.
+	 */
+	@Test
+	public void testPlanMatchesRecursiveWalker() {
+
+		for (int plugins : new int[] { 10, 50, 100, 200 }) {
+			LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap = new LinkedHashMap<>();
+			TestPlugin input = TestPlugin.channelInput();
+			TestPlugin output = TestPlugin.channelOutput();
+			SigproPlugin previous = input;
+			String previousOutput = "Input";
+
+			for (int p = 0; p < plugins; p++) {
+				TestPlugin gain = TestPlugin.gain("Gain" + p, p % 2 == 0 ? 2.0 : 0.5);
+				TestPlugin.connect(dataflowMap, previous, previousOutput, gain, "in", 0);
+				previous = gain;
+				previousOutput = "out";
+			}
+
+			TestPlugin.connect(dataflowMap, previous, previousOutput, output, "in", 0);
+
+			ExecutionPlan plan = DataflowCompiler.compile(dataflowMap, input, output, SamplePrecision.DOUBLE,
+					SAMPLE_RATE, BLOCK_SIZE);
+			double[] inputData = createSignal();
+
+			assertArrayEquals(plugins + " plugins", walk(dataflowMap, input, output, inputData.clone()),
+					plan.process(inputData.clone()), 1e-12);
+		}
+	}
+
+	@Test
+	public void testStateTransfer() {
+
+		LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap = new LinkedHashMap<>();
+		TestPlugin input = TestPlugin.channelInput();
+		TestPlugin output = TestPlugin.channelOutput();
+		TestPlugin gain = TestPlugin.gain("Gain", 1.0);
+
+		TestPlugin.connect(dataflowMap, input, "Input", gain, "in", 2);
+		TestPlugin.connect(dataflowMap, gain, "out", output, "in", 0);
+
+		ExecutionPlan previous = DataflowCompiler.compile(dataflowMap, input, output, SamplePrecision.DOUBLE,
+				SAMPLE_RATE, BLOCK_SIZE);
+		previous.process(constant(1.0));
+		previous.process(constant(2.0));
+
+		ExecutionPlan plan = DataflowCompiler.compile(dataflowMap, input, output, SamplePrecision.DOUBLE,
+				SAMPLE_RATE, BLOCK_SIZE);
+		assertTrue(plan.sharesStatefulPlugins(previous));
+
+		plan.prepareStateTransfer(previous, BLOCK_SIZE);
+		plan.transferState();
+
+		// The delay line continues with the blocks of the previous plan
+		assertArrayEquals(constant(1.0), plan.process(constant(3.0)), 0.0);
+		assertArrayEquals(constant(2.0), plan.process(constant(4.0)), 0.0);
+		assertArrayEquals(constant(3.0), plan.process(constant(5.0)), 0.0);
+	}
+
+	private static double[] constant(double value) {
+		double[] data = new double[BLOCK_SIZE];
+		Arrays.fill(data, value);
+		return data;
+	}
+
+	private static double[] createSignal() {
+		double[] data = new double[BLOCK_SIZE];
+
+		for (int k = 0; k < data.length; k++) {
+			data[k] = Math.sin(2 * Math.PI * 440 * k / SAMPLE_RATE);
+		}
+
+		return data;
+	}
+
+	/**
+	 * The recursive signal processing of the channel before the execution
+	 * plans. Every connection gets a copy of the data.
+	 */
+	private static double[] walk(LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap,
+			SigproPlugin input, SigproPlugin output, double[] inputData) {
+
+		double[] outputData = null;
+
+		for (OutputDataWrapper outputWrapper : input.putData("Input", inputData)) {
+			for (InputInfoWrapper inputInfo : dataflowMap.get(outputWrapper.getOutputInfo())) {
+				double[] result = walk(dataflowMap, inputInfo, output, inputData.clone());
+
+				if (result != null) {
+					outputData = result;
+				}
+			}
+		}
+
+		return outputData;
+	}
+
+	private static double[] walk(LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap,
+			InputInfoWrapper inputInfo, SigproPlugin output, double[] data) {
+
+		double[] outputData = null;
+
+		for (OutputDataWrapper outputWrapper : inputInfo.getDestPlugin().putData(inputInfo.getDestInput(), data)) {
+			if (outputWrapper.getOutputInfo().getSourcePlugin().equals(output)) {
+				outputData = outputWrapper.getOutputData();
+			} else {
+				for (InputInfoWrapper next : dataflowMap.get(outputWrapper.getOutputInfo())) {
+					double[] result = walk(dataflowMap, next, output, outputWrapper.getOutputData().clone());
+
+					if (result != null) {
+						outputData = result;
+					}
+				}
+			}
+		}
+
+		return outputData;
+	}
+}
@@ -0,0 +1,70 @@
+package channel.dataflow;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import channel.InputInfoWrapper;
+import channel.OutputInfoWrapper;
+
+public class RateConverterTest {
+
+	private static final int BLOCK_SIZE = 64;
+	private static final int SAMPLE_RATE = 44100;
+	private static final int BLOCKS = 16;
+
+	/**
+	 * Sends an impulse through a plugin with a reduced rate and compares the
+	 * position of the peak at the channel output with the latency of the
+	 * plan, which consists of the latencies of both converters. The
+	 * decimation depends on the phase of the impulse, so the peak may be one
+	 * sample off.
+	 */
+	@Test
+	public void testLatencyAgainstImpulse() {
+
+		for (int rateDivisor : new int[] { 2, 4, 8 }) {
+			for (int position : new int[] { 0, 1, 10, 33 }) {
+				LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap = new LinkedHashMap<>();
+				TestPlugin input = TestPlugin.channelInput();
+				TestPlugin output = TestPlugin.channelOutput();
+				TestPlugin slow = TestPlugin.gain("Slow", 1.0).setRateDivisor(rateDivisor);
+
+				TestPlugin.connect(dataflowMap, input, "Input", slow, "in", 0);
+				TestPlugin.connect(dataflowMap, slow, "out", output, "in", 0);
+
+				ExecutionPlan plan = DataflowCompiler.compile(dataflowMap, input, output, SamplePrecision.DOUBLE,
+						SAMPLE_RATE, BLOCK_SIZE);
+				int latency = new RateConverter(1, rateDivisor, BLOCK_SIZE).getLatency()
+						+ new RateConverter(rateDivisor, 1, BLOCK_SIZE).getLatency();
+				assertEquals(latency, plan.getLatency());
+
+				int peak = -1;
+				double peakValue = 0;
+
+				for (int b = 0; b < BLOCKS; b++) {
+					double[] data = new double[BLOCK_SIZE];
+
+					if (b == 0) {
+						data[position] = 1.0;
+					}
+
+					double[] outputData = plan.process(data);
+
+					for (int k = 0; outputData != null && k < BLOCK_SIZE; k++) {
+						if (Math.abs(outputData[k]) > peakValue) {
+							peakValue = Math.abs(outputData[k]);
+							peak = b * BLOCK_SIZE + k;
+						}
+					}
+				}
+
+				assertTrue("Divisor " + rateDivisor + ", peak at " + (peak - position) + " instead of " + latency,
+						Math.abs(peak - position - latency) <= 1);
+			}
+		}
+	}
+}
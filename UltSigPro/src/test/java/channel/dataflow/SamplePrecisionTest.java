@@ -0,0 +1,128 @@
+package channel.dataflow;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import channel.InputInfoWrapper;
+import channel.OutputInfoWrapper;
+import dsp.DspKernels;
+import plugins.sigproplugins.SigproPlugin;
+
+public class SamplePrecisionTest {
+
+	private static final int BLOCK_SIZE = 256;
+	private static final int SAMPLE_RATE = 44100;
+	private static final int CHANNELS = 128;
+	private static final int PLUGINS_PER_CHANNEL = 8;
+	private static final int WARMUP_BLOCKS = 200;
+	private static final int CHECKED_BLOCKS = 500;
+
+	private static ExecutionPlan createChain(SamplePrecision precision, int plugins, boolean processContext) {
+
+		LinkedHashMap<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap = new LinkedHashMap<>();
+		TestPlugin input = TestPlugin.channelInput();
+		TestPlugin output = TestPlugin.channelOutput().setProcessContext(processContext);
+		SigproPlugin previous = input;
+		String previousOutput = "Input";
+
+		for (int p = 0; p < plugins; p++) {
+			TestPlugin gain = TestPlugin.gain("Gain" + p, p % 2 == 0 ? 2.0 : 0.5).setProcessContext(processContext);
+			TestPlugin.connect(dataflowMap, previous, previousOutput, gain, "in", 0);
+			previous = gain;
+			previousOutput = "out";
+		}
+
+		TestPlugin.connect(dataflowMap, previous, previousOutput, output, "in", 0);
+
+		return DataflowCompiler.compile(dataflowMap, input, output, precision, SAMPLE_RATE, BLOCK_SIZE);
+	}
+
+	private static double[] createSignal() {
+		double[] data = new double[BLOCK_SIZE];
+
+		for (int k = 0; k < data.length; k++) {
+			data[k] = 0.5 * Math.sin(2 * Math.PI * 440 * k / SAMPLE_RATE);
+		}
+
+		return data;
+	}
+
+	@Test
+	public void testDefaultFloatConversionReusesBuffers() {
+
+		// Gains of 2 and 0.5
+		ExecutionPlan plan = createChain(SamplePrecision.FLOAT, 2, false);
+		float[] inputData = new float[BLOCK_SIZE];
+		DspKernels.toFloat(createSignal(), inputData, BLOCK_SIZE);
+
+		float[] first = plan.process(inputData.clone());
+		float[] firstCopy = first.clone();
+		float[] second = plan.process(inputData.clone());
+
+		// The putData plugins are called through the default putFloatData
+		assertSame(first, second);
+		assertArrayEquals(firstCopy, second, 0.0f);
+		assertArrayEquals(inputData, second, 1e-7f);
+	}
+
+	/**
+	 * Processes 128 channels with both precisions, including the conversion
+	 * at the channel boundaries with preallocated buffers. Both precisions
+	 * must produce the same output and the single precision processing must
+	 * not allocate memory per block.
+	 */
+	@Test
+	public void testFloatAt128ChannelsWithoutAllocation() {
+
+		ExecutionPlan[] doublePlans = new ExecutionPlan[CHANNELS];
+		ExecutionPlan[] floatPlans = new ExecutionPlan[CHANNELS];
+
+		for (int c = 0; c < CHANNELS; c++) {
+			doublePlans[c] = createChain(SamplePrecision.DOUBLE, PLUGINS_PER_CHANNEL, true);
+			floatPlans[c] = createChain(SamplePrecision.FLOAT, PLUGINS_PER_CHANNEL, true);
+		}
+
+		double[] signal = createSignal();
+		double[] inputData = new double[BLOCK_SIZE];
+		float[] floatInput = new float[BLOCK_SIZE];
+		double[] doubleOutput = new double[BLOCK_SIZE];
+		double[] floatOutput = new double[BLOCK_SIZE];
+
+		long allocated = 0;
+
+		// The first blocks aren't checked, until the JIT has compiled the
+		// processing
+		for (int b = 0; b < WARMUP_BLOCKS + CHECKED_BLOCKS; b++) {
+			for (ExecutionPlan plan : doublePlans) {
+				// The plans may modify the input
+				System.arraycopy(signal, 0, inputData, 0, BLOCK_SIZE);
+				System.arraycopy(plan.process(inputData), 0, doubleOutput, 0, BLOCK_SIZE);
+			}
+
+			long allocationStart = AllocationCheck.getAllocatedBytes();
+
+			for (ExecutionPlan plan : floatPlans) {
+				DspKernels.toFloat(signal, floatInput, BLOCK_SIZE);
+				DspKernels.toDouble(plan.process(floatInput), floatOutput, BLOCK_SIZE);
+			}
+
+			long allocationEnd = AllocationCheck.getAllocatedBytes();
+
+			if (b >= WARMUP_BLOCKS) {
+				allocated += allocationEnd - allocationStart - AllocationCheck.OVERHEAD;
+			}
+		}
+
+		assertArrayEquals(doubleOutput, floatOutput, 1e-6);
+
+		// The JVM itself may allocate a few bytes once in a while, a
+		// conversion per block would allocate far more
+		if (AllocationCheck.isSupported()) {
+			assertTrue("Allocated " + allocated + " bytes", allocated < BLOCK_SIZE * 4);
+		}
+	}
+}
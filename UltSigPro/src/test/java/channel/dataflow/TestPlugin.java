@@ -0,0 +1,286 @@
+package channel.dataflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+import channel.InputInfoWrapper;
+import channel.OutputDataWrapper;
+import channel.OutputInfoWrapper;
+import javafx.scene.layout.Pane;
+import plugins.sigproplugins.SigproPlugin;
+
+/**
+ * Plugin for the tests of the signal processing. Multiplies the data of
+ * every input with a gain and passes it to all of its outputs. Records its
+ * invocations and the arrays it has received. With a latency, putData delays
+ * the data by the latency.
+ * 
+ * @author roland
+ *
+ */
+class TestPlugin extends SigproPlugin {
+
+	private String name;
+	private final String[] inputs;
+	private final String[] outputs;
+	private final double gain;
+
+	private boolean inPlace = true;
+	private boolean processContext = false;
+	private boolean defaultProcess = false;
+	private int latency = 0;
+	private double[] latencyLine = new double[0];
+	private int latencyPosition = 0;
+	private int rateDivisor = 1;
+	private ArrayList<String> invocations;
+
+	// The last array which has been passed to putData
+	double[] lastInput;
+	int resetCount = 0;
+
+	/**
+	 * @param name
+	 *            Must be unique within a test.
+	 * @param inputs
+	 *            The names of the inputs.
+	 * @param outputs
+	 *            The names of the outputs.
+	 * @param gain
+	 *            The factor for the data.
+	 */
+	TestPlugin(String name, String[] inputs, String[] outputs, double gain) {
+		this.name = name;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.gain = gain;
+	}
+
+	/**
+	 * A plugin with one input "in" and one output "out".
+	 */
+	static TestPlugin gain(String name, double gain) {
+		return new TestPlugin(name, new String[] { "in" }, new String[] { "out" }, gain);
+	}
+
+	/**
+	 * The plugin which represents the channel input.
+	 */
+	static TestPlugin channelInput() {
+		return new TestPlugin("Input", new String[] { "Input" }, new String[] { "Input" }, 1.0);
+	}
+
+	/**
+	 * The plugin which represents the channel output.
+	 */
+	static TestPlugin channelOutput() {
+		return new TestPlugin("Output", new String[] { "in" }, new String[] { "Output" }, 1.0);
+	}
+
+	/**
+	 * Adds a connection to the given connections of a channel.
+	 */
+	static void connect(Map<OutputInfoWrapper, LinkedList<InputInfoWrapper>> dataflowMap, SigproPlugin source,
+			String output, SigproPlugin dest, String input, int delay) {
+
+		OutputInfoWrapper outputInfo = new OutputInfoWrapper(source, output);
+
+		if (!dataflowMap.containsKey(outputInfo)) {
+			dataflowMap.put(outputInfo, new LinkedList<InputInfoWrapper>());
+		}
+
+		dataflowMap.get(outputInfo).add(new InputInfoWrapper(dest, input, delay));
+	}
+
+	TestPlugin setInPlace(boolean inPlace) {
+		this.inPlace = inPlace;
+		return this;
+	}
+
+	TestPlugin setProcessContext(boolean processContext) {
+		this.processContext = processContext;
+		return this;
+	}
+
+	/**
+	 * Uses the context with the default process of the plugins, which calls
+	 * putData.
+	 */
+	TestPlugin setDefaultProcess(boolean defaultProcess) {
+		this.processContext |= defaultProcess;
+		this.defaultProcess = defaultProcess;
+		return this;
+	}
+
+	TestPlugin setLatency(int latency) {
+		this.latency = latency;
+		this.latencyLine = new double[latency];
+		return this;
+	}
+
+	TestPlugin setRateDivisor(int rateDivisor) {
+		this.rateDivisor = rateDivisor;
+		return this;
+	}
+
+	/**
+	 * Appends the name of the plugin to the given list with every
+	 * invocation.
+	 */
+	TestPlugin setInvocations(ArrayList<String> invocations) {
+		this.invocations = invocations;
+		return this;
+	}
+
+	@Override
+	public LinkedList<OutputDataWrapper> putData(String input, double[] data) {
+
+		lastInput = data;
+
+		if (invocations != null) {
+			invocations.add(name);
+		}
+
+		double[] outputData = inPlace ? data : new double[data.length];
+
+		for (int k = 0; k < data.length; k++) {
+			outputData[k] = data[k] * gain;
+
+			if (latency > 0) {
+				double delayed = latencyLine[latencyPosition];
+				latencyLine[latencyPosition] = outputData[k];
+				latencyPosition = (latencyPosition + 1) % latency;
+				outputData[k] = delayed;
+			}
+		}
+
+		LinkedList<OutputDataWrapper> wrappers = new LinkedList<>();
+
+		for (String output : outputs) {
+			wrappers.add(new OutputDataWrapper(new OutputInfoWrapper(this, output), outputData));
+		}
+
+		return wrappers;
+	}
+
+	@Override
+	public boolean usesProcessContext() {
+		return processContext;
+	}
+
+	@Override
+	public void process(ProcessContext context) {
+
+		if (defaultProcess) {
+			super.process(context);
+			return;
+		}
+
+		if (invocations != null) {
+			invocations.add(name);
+		}
+
+		for (int o = 0; o < context.getOutputCount(); o++) {
+			if (context.getPrecision() == SamplePrecision.FLOAT) {
+				float[] output = context.getFloatOutput(o);
+				Arrays.fill(output, 0, context.getBlockSize(), 0.0f);
+
+				for (int i = 0; i < context.getInputCount(); i++) {
+					float[] input = context.getFloatInput(i);
+
+					for (int k = 0; k < context.getBlockSize(); k++) {
+						output[k] += input[k] * (float) gain;
+					}
+				}
+			} else {
+				double[] output = context.getOutput(o);
+				Arrays.fill(output, 0, context.getBlockSize(), 0.0);
+
+				for (int i = 0; i < context.getInputCount(); i++) {
+					double[] input = context.getInput(i);
+
+					for (int k = 0; k < context.getBlockSize(); k++) {
+						output[k] += input[k] * gain;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isInPlace() {
+		return inPlace;
+	}
+
+	@Override
+	public int getLatency() {
+		return latency;
+	}
+
+	@Override
+	public int getRateDivisor() {
+		return rateDivisor;
+	}
+
+	@Override
+	public void reset() {
+		resetCount++;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getVersion() {
+		return "1.0.0";
+	}
+
+	@Override
+	public Pane getGUI() {
+		return null;
+	}
+
+	@Override
+	public HashSet<String> getOutputConfig() {
+		return new HashSet<>(Arrays.asList(outputs));
+	}
+
+	@Override
+	public HashSet<String> getInputConfig() {
+		return new HashSet<>(Arrays.asList(inputs));
+	}
+
+	@Override
+	public void setPlay(boolean play) {
+
+	}
+
+	@Override
+	public int getWidth() {
+		return 0;
+	}
+
+	@Override
+	public int getHeight() {
+		return 0;
+	}
+
+	@Override
+	public double getMaxX() {
+		return 0;
+	}
+
+	@Override
+	public double getMaxY() {
+		return 0;
+	}
+}
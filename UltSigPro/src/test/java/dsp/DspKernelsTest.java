@@ -0,0 +1,115 @@
+package dsp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DspKernelsTest {
+
+	@Test
+	public void testInt16RoundTrip() {
+
+		int[] values = { Short.MIN_VALUE, -12345, -1, 0, 1, 255, 256, 12345, Short.MAX_VALUE };
+		double[] samples = new double[values.length];
+
+		for (int i = 0; i < values.length; i++) {
+			samples[i] = values[i] / 32768.0;
+		}
+
+		byte[] bigEndian = new byte[2 * values.length];
+		byte[] littleEndian = new byte[2 * values.length];
+		DspKernels.samplesToInt16BigEndian(samples, 0, bigEndian, 0, values.length);
+		DspKernels.samplesToInt16LittleEndian(samples, 0, littleEndian, 0, values.length);
+
+		for (int i = 0; i < values.length; i++) {
+			assertEquals((byte) (values[i] >> 8), bigEndian[2 * i]);
+			assertEquals((byte) values[i], bigEndian[2 * i + 1]);
+			assertEquals((byte) values[i], littleEndian[2 * i]);
+			assertEquals((byte) (values[i] >> 8), littleEndian[2 * i + 1]);
+		}
+
+		double[] converted = new double[values.length + 1];
+		DspKernels.int16BigEndianToSamples(bigEndian, 0, converted, 1, values.length);
+
+		assertEquals(0.0, converted[0], 0.0);
+
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(samples[i], converted[i + 1], 0.0);
+		}
+	}
+
+	@Test
+	public void testInt24RoundTrip() {
+
+		int[] values = { -8388608, -1234567, -256, -1, 0, 1, 255, 65536, 1234567, 8388607 };
+		double[] samples = new double[values.length];
+
+		for (int i = 0; i < values.length; i++) {
+			samples[i] = values[i] / 8388608.0;
+		}
+
+		byte[] data = new byte[3 * values.length];
+		DspKernels.samplesToInt24LittleEndian(samples, 0, data, 0, values.length);
+
+		for (int i = 0; i < values.length; i++) {
+			assertEquals((byte) values[i], data[3 * i]);
+			assertEquals((byte) (values[i] >> 8), data[3 * i + 1]);
+			assertEquals((byte) (values[i] >> 16), data[3 * i + 2]);
+		}
+
+		double[] converted = new double[values.length];
+		DspKernels.int24LittleEndianToSamples(data, 0, converted, 0, values.length);
+
+		assertArrayEquals(samples, converted, 0.0);
+	}
+
+	@Test
+	public void testClipping() {
+
+		assertEquals(Short.MAX_VALUE, DspKernels.toInt16(1.0));
+		assertEquals(Short.MAX_VALUE, DspKernels.toInt16(1.5));
+		assertEquals(Short.MIN_VALUE, DspKernels.toInt16(-1.0));
+		assertEquals(Short.MIN_VALUE, DspKernels.toInt16(-1.5));
+		assertEquals(0, DspKernels.toInt16(0.4 / 32768.0));
+		assertEquals(1, DspKernels.toInt16(0.6 / 32768.0));
+
+		assertEquals(8388607, DspKernels.toInt24(1.0));
+		assertEquals(8388607, DspKernels.toInt24(2.0));
+		assertEquals(-8388608, DspKernels.toInt24(-1.0));
+		assertEquals(-8388608, DspKernels.toInt24(-2.0));
+		assertEquals(-1, DspKernels.toInt24(-0.6 / 8388608.0));
+
+		// The clipped values are written without an overflow
+		byte[] data = new byte[4];
+		DspKernels.samplesToInt16BigEndian(new double[] { 1.5, -1.5 }, 0, data, 0, 2);
+
+		assertEquals((byte) 0x7F, data[0]);
+		assertEquals((byte) 0xFF, data[1]);
+		assertEquals((byte) 0x80, data[2]);
+		assertEquals((byte) 0x00, data[3]);
+	}
+
+	@Test
+	public void testLittleEndianStereoToMono() {
+
+		// Frames of left and right channel
+		int[][] frames = { { 1000, 3000 }, { -32768, -32768 }, { 32767, -32768 }, { -1, 1 }, { 256, 0 } };
+		byte[] data = new byte[2 + 4 * frames.length];
+
+		for (int f = 0; f < frames.length; f++) {
+			for (int c = 0; c < 2; c++) {
+				data[2 + 4 * f + 2 * c] = (byte) frames[f][c];
+				data[2 + 4 * f + 2 * c + 1] = (byte) (frames[f][c] >> 8);
+			}
+		}
+
+		double[] samples = new double[frames.length];
+		DspKernels.int16LittleEndianStereoToMonoSamples(data, 2, samples, 0, frames.length);
+
+		assertEquals(2000 / 32768.0, samples[0], 0.0);
+		assertEquals(-1.0, samples[1], 0.0);
+		assertEquals(-0.5 / 32768.0, samples[2], 0.0);
+		assertEquals(0.0, samples[3], 0.0);
+		assertEquals(128 / 32768.0, samples[4], 0.0);
+	}
+}
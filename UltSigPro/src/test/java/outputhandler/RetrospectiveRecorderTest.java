@@ -0,0 +1,71 @@
+package outputhandler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetrospectiveRecorderTest {
+
+	private static final int SAMPLE_RATE = 8000;
+	private static final int WAVE_HEADER_SIZE = 44;
+
+	private File ringFile;
+	private File waveFile;
+
+	@Before
+	public void setUp() throws IOException {
+		ringFile = File.createTempFile("retrospective", ".ring");
+		waveFile = File.createTempFile("retrospective", ".wav");
+		ringFile.deleteOnExit();
+		waveFile.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		ringFile.delete();
+		waveFile.delete();
+	}
+
+	@Test
+	public void testDumpKeepsRecordingOfOtherLength() throws IOException {
+
+		byte[] data = new byte[1000];
+
+		for (int k = 0; k < data.length; k++) {
+			data[k] = (byte) k;
+		}
+
+		RetrospectiveRecorder recorder = new RetrospectiveRecorder(ringFile, SAMPLE_RATE, 2);
+		recorder.write(data, 0, data.length);
+		recorder.close();
+
+		// The length of the ring has been changed to one second since the
+		// recording
+		recorder = RetrospectiveRecorder.openRecording(ringFile);
+		assertNotNull(recorder);
+
+		try {
+			recorder.dumpToWaveFile(waveFile);
+		} finally {
+			recorder.close();
+		}
+
+		byte[] wave = Files.readAllBytes(waveFile.toPath());
+		assertArrayEquals(data, Arrays.copyOfRange(wave, WAVE_HEADER_SIZE, wave.length));
+
+		// The ring still holds two seconds behind its header of 32 bytes
+		assertEquals(32 + 2 * SAMPLE_RATE * 2, ringFile.length());
+	}
+
+	@Test
+	public void testNoRecording() throws IOException {
+		assertNull(RetrospectiveRecorder.openRecording(ringFile));
+	}
+}
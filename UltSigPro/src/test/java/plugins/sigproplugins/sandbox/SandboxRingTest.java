@@ -0,0 +1,276 @@
+package plugins.sigproplugins.sandbox;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import channel.OutputDataWrapper;
+import channel.OutputInfoWrapper;
+import javafx.scene.layout.Pane;
+import plugins.sigproplugins.SigproPlugin;
+import resourceframework.GlobalResourceProvider;
+
+public class SandboxRingTest {
+
+	private static final int BLOCK_SIZE = 256;
+	private static final int BLOCKS = 5000;
+	private static final long TIMEOUT = 10000000000L;
+
+	private File file;
+	private DoublingPlugin plugin;
+	private SandboxRing ring;
+	private Thread hostThread;
+
+	/**
+	 * Runs a host in a thread of its own. The test is the proxy, which maps
+	 * the ring file a second time.
+	 */
+	@Before
+	public void setUp() throws IOException {
+
+		file = File.createTempFile("sandbox", ".ring");
+		file.deleteOnExit();
+		plugin = new DoublingPlugin();
+
+		// The host logs the exceptions of the plugin
+		GlobalResourceProvider resProv = GlobalResourceProvider.getInstance();
+
+		if (!resProv.checkRegistered("loggingPath")) {
+			resProv.registerResource("loggingPath", System.getProperty("java.io.tmpdir"));
+		}
+
+		final SandboxHost host = new SandboxHost(plugin, SandboxRing.create(file, 1, 1), 1, 1);
+		ring = SandboxRing.open(file, 1, 1);
+
+		hostThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				host.run();
+			}
+		}, "SandboxHost");
+		hostThread.setDaemon(true);
+		hostThread.start();
+	}
+
+	@After
+	public void tearDown() {
+		ring.close();
+		file.delete();
+	}
+
+	@Test
+	public void testBlocksInFlight() throws InterruptedException {
+
+		assertEquals(SandboxRing.STATUS_OK, command(1, SandboxRing.COMMAND_PREPARE, 48000, BLOCK_SIZE));
+		assertEquals(48000, plugin.sampleRate);
+
+		double[] input = new double[BLOCK_SIZE];
+		double[] output = new double[BLOCK_SIZE];
+		long sent = 0;
+		long received = 0;
+		long start = System.nanoTime();
+
+		// All slots are kept in flight, so the host reads every slot while
+		// the next blocks are written
+		while (received < BLOCKS) {
+			if (sent < BLOCKS && sent - received < SandboxRing.SLOT_COUNT) {
+				sent++;
+				int slot = SandboxRing.getSlot(sent);
+				fill(input, sent, 1.0);
+				ring.writeInput(slot, 0, input, BLOCK_SIZE);
+				ring.setBlockSize(slot, BLOCK_SIZE);
+				ring.setRequestSequence(sent);
+			} else if (ring.getResponseSequence() > received) {
+				received++;
+				int slot = SandboxRing.getSlot(received);
+				assertEquals(SandboxRing.STATUS_OK, ring.getStatus(slot));
+				ring.readOutput(slot, 0, output, BLOCK_SIZE);
+				fill(input, received, 2.0);
+				assertArrayEquals("Block " + received, input, output, 0.0);
+			} else {
+				waitForHost(start);
+			}
+		}
+
+		assertEquals(SandboxRing.STATUS_OK, command(2, SandboxRing.COMMAND_EXIT, 0, 0));
+		hostThread.join(TIMEOUT / 1000000);
+		assertFalse(hostThread.isAlive());
+	}
+
+	@Test
+	public void testExceptionAndReset() throws InterruptedException {
+
+		double[] input = new double[BLOCK_SIZE];
+		double[] output = new double[BLOCK_SIZE];
+
+		// Negative data is rejected by the plugin
+		fill(input, 1, -1.0);
+		assertEquals(SandboxRing.STATUS_FAILED, process(1, input, output));
+
+		fill(input, 2, 1.0);
+		assertEquals(SandboxRing.STATUS_OK, process(2, input, output));
+		fill(input, 2, 2.0);
+		assertArrayEquals(input, output, 0.0);
+
+		ring.setResetSequence(1);
+		long start = System.nanoTime();
+
+		while (plugin.resetCount == 0) {
+			waitForHost(start);
+		}
+
+		assertEquals(SandboxRing.STATUS_OK, command(1, SandboxRing.COMMAND_EXIT, 0, 0));
+		hostThread.join(TIMEOUT / 1000000);
+		assertEquals(1, plugin.resetCount);
+	}
+
+	/**
+	 * Passes a single block to the host and waits for its answer.
+	 *
+	 * @return the status of the block.
+	 */
+	private int process(long sequence, double[] input, double[] output) {
+
+		int slot = SandboxRing.getSlot(sequence);
+		ring.writeInput(slot, 0, input, BLOCK_SIZE);
+		ring.setBlockSize(slot, BLOCK_SIZE);
+		ring.setRequestSequence(sequence);
+
+		long start = System.nanoTime();
+
+		while (ring.getResponseSequence() < sequence) {
+			waitForHost(start);
+		}
+
+		ring.readOutput(slot, 0, output, BLOCK_SIZE);
+		return ring.getStatus(slot);
+	}
+
+	private int command(long sequence, int command, int argument1, int argument2) {
+
+		ring.postCommand(sequence, command, argument1, argument2);
+		long start = System.nanoTime();
+
+		while (ring.getCommandAck() != sequence) {
+			waitForHost(start);
+		}
+
+		return ring.getCommandStatus();
+	}
+
+	private static void waitForHost(long start) {
+		assertTrue("No answer of the sandbox host", System.nanoTime() - start < TIMEOUT);
+		Thread.yield();
+	}
+
+	/**
+	 * Fills the data with values which are unique for every block.
+	 */
+	private static void fill(double[] data, long sequence, double factor) {
+
+		for (int k = 0; k < data.length; k++) {
+			data[k] = factor * (sequence + (double) k / data.length);
+		}
+	}
+
+	/**
+	 * Doubles the data of its input. Throws an exception for negative data.
+	 */
+	private static class DoublingPlugin extends SigproPlugin {
+
+		private String name = "Doubling";
+
+		volatile int sampleRate = 0;
+		volatile int resetCount = 0;
+
+		@Override
+		public LinkedList<OutputDataWrapper> putData(String input, double[] data) {
+
+			if (data[0] < 0) {
+				throw new IllegalArgumentException("Negative data");
+			}
+
+			for (int k = 0; k < data.length; k++) {
+				data[k] *= 2.0;
+			}
+
+			LinkedList<OutputDataWrapper> wrappers = new LinkedList<>();
+			wrappers.add(new OutputDataWrapper(new OutputInfoWrapper(this, "out"), data));
+			return wrappers;
+		}
+
+		@Override
+		public void prepare(int sampleRate, int maxBlockSize) {
+			this.sampleRate = sampleRate;
+		}
+
+		@Override
+		public void reset() {
+			resetCount++;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getVersion() {
+			return "1.0.0";
+		}
+
+		@Override
+		public Pane getGUI() {
+			return null;
+		}
+
+		@Override
+		public HashSet<String> getOutputConfig() {
+			return new HashSet<>(Arrays.asList("out"));
+		}
+
+		@Override
+		public HashSet<String> getInputConfig() {
+			return new HashSet<>(Arrays.asList("in"));
+		}
+
+		@Override
+		public void setPlay(boolean play) {
+
+		}
+
+		@Override
+		public int getWidth() {
+			return 0;
+		}
+
+		@Override
+		public int getHeight() {
+			return 0;
+		}
+
+		@Override
+		public double getMaxX() {
+			return 0;
+		}
+
+		@Override
+		public double getMaxY() {
+			return 0;
+		}
+	}
+}